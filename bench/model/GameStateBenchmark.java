@@ -0,0 +1,98 @@
+package model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Pomiar operacji {@link GameState} wywoływanych przy każdym ruchu
+ * (sprawdzanie ruchu na serwerze, rysowanie planszy, koniec gry).
+ * <p>
+ * {@link #makeMove} zaczyna od skopiowania pozycji, bo ruch zmienia planszę;
+ * czas samego ruchu to różnica względem {@link #copyFrom}.
+ * @author Grzegorz Dżyg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameStateBenchmark {
+
+    @Param({"MIDGAME", "KINGS"})
+    public String position;
+
+    private GameState state;
+    private final GameState work = new GameState();
+    private final MoveList generated = new MoveList();
+    private String text;
+    private Piece.Color turn;
+    private long move;
+    private int row;
+    private int col;
+
+    @Setup
+    public void setup(){
+        text = Positions.get(position);
+        state = GameState.fromString(text);
+        turn = state.getCurrentTurn();
+        MoveList moves = new MoveList();
+        MoveGenerator.generate(state, moves);
+        // najdłuższe bicie albo pierwszy ruch - pionek, który go wykonuje, sprawdza captureAgain
+        int best = 0;
+        for(int i = 1; i < moves.size(); i++){
+            if(moves.pathLength(i) > moves.pathLength(best)) best = i;
+        }
+        move = moves.get(best);
+        row = Bitboard.row(Move.from(move));
+        col = Bitboard.col(Move.from(move));
+    }
+    @Benchmark
+    public GameState makeMove(){
+        work.copyFrom(state);
+        work.makeMove(move);
+        return work;
+    }
+    @Benchmark
+    public GameState copyFrom(){
+        work.copyFrom(state);
+        return work;
+    }
+    @Benchmark
+    public boolean hasCaptureMoves(){
+        return state.hasCaptureMoves(turn);
+    }
+    @Benchmark
+    public boolean captureAgain(){
+        return state.captureAgain(row, col);
+    }
+    @Benchmark
+    public int generateMoves(){
+        return MoveGenerator.generate(state, generated);
+    }
+    @Benchmark
+    public boolean hasAnyValidMoves(){
+        return state.hasAnyValidMoves(turn);
+    }
+    @Benchmark
+    public boolean isGameOver(){
+        return state.isGameOver();
+    }
+    @Benchmark
+    public GameStatus evaluateStatus(){
+        // ocena bez pamiętanego wyniku - tyle kosztuje pierwsze pytanie o koniec gry po ruchu
+        return GameStatus.evaluate(state.getWhitePieces(), state.getBlackPieces(), state.getKings());
+    }
+    @Benchmark
+    public String toText(){
+        return state.toString();
+    }
+    @Benchmark
+    public GameState fromText(){
+        return GameState.fromString(text);
+    }
+}
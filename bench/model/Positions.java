@@ -0,0 +1,50 @@
+package model;
+
+/**
+ * Stałe pozycje używane w pomiarach JMH. Pozycje się nie zmieniają, żeby
+ * wyniki kolejnych zmian w kodzie dało się porównywać.
+ * @author Grzegorz Dżyg
+ */
+public final class Positions {
+
+    /** Środek gry: po 10 pionków, białe mają bicie. */
+    public static final String MIDGAME =
+        ".w.w.w.w\n" +
+        "w.....w.\n" +
+        "...w...w\n" +
+        "b.w...b.\n" +
+        "........\n" +
+        "b.......\n" +
+        ".b.b.b.b\n" +
+        "b.b...b.\n" +
+        "TURN:WHITE";
+    /** Końcówka z przewagą damek (długie ruchy po przekątnych). */
+    public static final String KINGS =
+        ".W......\n" +
+        "........\n" +
+        "...b....\n" +
+        "........\n" +
+        ".....B..\n" +
+        "..w.....\n" +
+        ".......W\n" +
+        "B.....b.\n" +
+        "TURN:WHITE";
+
+    private Positions(){
+    }
+    /**
+     * Zwraca pozycję o podanej nazwie.
+     * @param name {@code MIDGAME} lub {@code KINGS}
+     * @return pozycja w formacie {@link GameState#toString()}
+     */
+    public static String get(String name){
+        switch(name){
+            case "MIDGAME":
+                return MIDGAME;
+            case "KINGS":
+                return KINGS;
+            default:
+                throw new IllegalArgumentException("Nieznana pozycja: " + name);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package protocol;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import model.GameState;
+import model.MoveGenerator;
+import model.MoveList;
+import model.Positions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Pomiar kodowania i dekodowania wiadomości {@link Protocol}, które serwer
+ * wysyła przy każdym ruchu: ruchu i pełnej planszy.
+ * @author Grzegorz Dżyg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProtocolBenchmark {
+
+    @Param({"MIDGAME", "KINGS"})
+    public String position;
+
+    private String board;
+    private String move;
+    private ByteBuffer boardPayload;
+    private ByteBuffer movePayload;
+
+    @Setup
+    public void setup(){
+        board = Positions.get(position);
+        MoveList moves = new MoveList();
+        MoveGenerator.generate(GameState.fromString(board), moves);
+        move = "MOVE:" + moves.toNotation(0);
+        // decode czyta dane bez zmiany pozycji bufora, więc ramki można używać wielokrotnie
+        boardPayload = Protocol.encode(board).position(Protocol.HEADER_SIZE);
+        movePayload = Protocol.encode(move).position(Protocol.HEADER_SIZE);
+    }
+    @Benchmark
+    public ByteBuffer encodeBoard(){
+        return Protocol.encode(board);
+    }
+    @Benchmark
+    public String decodeBoard(){
+        return Protocol.decode(Protocol.SNAPSHOT, boardPayload);
+    }
+    @Benchmark
+    public ByteBuffer encodeMove(){
+        return Protocol.encode(move);
+    }
+    @Benchmark
+    public String decodeMove(){
+        return Protocol.decode(Protocol.MOVE, movePayload);
+    }
+}
@@ -0,0 +1,135 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+import model.Bitboard;
+import model.GameState;
+import model.Move;
+import model.MoveGenerator;
+import model.MoveList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Pomiar obsługi wiadomości gracza przez {@link GameSession#relay}: sprawdzenie
+ * i wykonanie ruchu, rozesłanie go graczom i widzom, czat oraz odesłanie całej
+ * planszy graczowi, którego ruch został odrzucony. Połączenia nie mają gniazd -
+ * tylko pobierają zakodowaną wiadomość, tak jak robi to kolejka wysyłania.
+ * <p>
+ * Dwie damki chodzą w kółko po czterech ruchach, więc pozycja się nie zmienia;
+ * co {@link #RESET_PLIES} ruchów zapis partii jest zerowany, żeby nie rósł.
+ * @author Grzegorz Dżyg
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RelayBenchmark {
+
+    private static final String POSITION =
+        ".W......\n" +
+        "........\n" +
+        "........\n" +
+        "........\n" +
+        "........\n" +
+        "........\n" +
+        "........\n" +
+        "B.......\n" +
+        "TURN:WHITE";
+    private static final int RESET_PLIES = 1024;
+
+    /** Połączenie bez gniazda: koduje wiadomość i liczy bajty. */
+    private static final class NullConnection implements Connection {
+        private final boolean binary;
+        private GameSession session;
+        long bytes;
+
+        NullConnection(boolean binary){
+            this.binary = binary;
+        }
+        @Override
+        public void send(SharedMessage message){
+            bytes += message.encoded(binary).remaining();
+        }
+        @Override
+        public void close(){
+        }
+        @Override
+        public GameSession getSession(){
+            return session;
+        }
+        @Override
+        public void setSession(GameSession session){
+            this.session = session;
+        }
+    }
+
+    @Param({"0", "100"})
+    public int spectators;
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private GameSession session;
+    private final NullConnection[] players = new NullConnection[2];
+    private GameState start;
+    private final String[] cycle = new String[4];
+    private int ply;
+
+    @Setup
+    public void setup(){
+        session = new GameSession(1);
+        for(int i = 0; i < players.length; i++){
+            players[i] = new NullConnection(binary);
+            session.join(players[i]);
+        }
+        for(int i = 0; i < spectators; i++){
+            session.watch(new NullConnection(binary));
+        }
+        start = GameState.fromString(POSITION);
+        session.restore(start, 0);
+        // biała damka robi krok na sąsiednie pole i wraca, czarna tak samo
+        GameState state = new GameState();
+        state.copyFrom(start);
+        MoveList moves = new MoveList();
+        for(int i = 0; i < 2; i++){
+            MoveGenerator.generate(state, moves);
+            int step = 0;
+            while(Math.abs(Bitboard.row(Move.from(moves.get(step))) - Bitboard.row(Move.to(moves.get(step)))) != 1){
+                step++;
+            }
+            long move = moves.get(step);
+            cycle[i] = "MOVE:" + moves.toNotation(step);
+            cycle[i + 2] = "MOVE:" + Move.squareName(Move.to(move)) + "-" + Move.squareName(Move.from(move));
+            state.makeMove(move);
+            state.switchTurn();
+        }
+        ply = 0;
+    }
+    @Benchmark
+    public long relayMove(){
+        if(ply == RESET_PLIES){
+            session.restore(start, 0);
+            ply = 0;
+        }
+        NullConnection sender = players[ply & 1];
+        session.relay(cycle[ply & 3], sender);
+        ply++;
+        return sender.bytes;
+    }
+    @Benchmark
+    public long relayChat(){
+        session.relay("CHAT:dobry ruch", players[0]);
+        return players[1].bytes;
+    }
+    @Benchmark
+    public long resendBoard(){
+        // ruch nie w swojej kolejce: błąd i cała plansza dla nadawcy
+        NullConnection sender = players[(ply + 1) & 1];
+        session.relay(cycle[(ply + 1) & 3], sender);
+        return sender.bytes;
+    }
+}
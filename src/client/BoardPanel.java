@@ -9,7 +9,11 @@ import java.awt.Graphics;
 
 import java.awt.event.*;
 import javax.swing.*;
+import model.Bitboard;
 import model.GameState;
+import model.Move;
+import model.MoveGenerator;
+import model.MoveList;
 import model.Piece;
 
 
@@ -30,6 +34,10 @@ public class BoardPanel extends JPanel {
     private Piece.Color myColor;
     
     boolean mustCaptureAgain = false;
+    /** Pola lądowania klikniętej dotąd części drogi bicia. */
+    private final int[] path = new int[MoveList.MAX_PATH];
+    private int pathLength = 0;
+    private final MoveList moves = new MoveList();
     
     private GameState currentState;
     private GameClientSocket connection;
@@ -46,125 +54,89 @@ public class BoardPanel extends JPanel {
     public void mousePressed(MouseEvent e) {
         int clickedCol = e.getX() / TILE_SIZE;
         int clickedRow = e.getY() / TILE_SIZE;
-        if (mustCaptureAgain) {
-            if (selectedRow == -1 || selectedCol == -1) return;
-
-            if (currentState.makeMove(selectedRow, selectedCol, clickedRow, clickedCol)) {
-                if (Math.abs(clickedRow - selectedRow) == 2 &&
-                    currentState.captureAgain(clickedRow, clickedCol)) {
-                    // kolejne bicie możliwe
-                    selectedRow = clickedRow;
-                    selectedCol = clickedCol;
-                    mustCaptureAgain = true;
-                } else {
-                    // bicie zakończone
-                    selectedRow = -1;
-                    selectedCol = -1;
-                    mustCaptureAgain = false;
-                    currentState.switchTurn();
-                    if (connection != null) {
-                         connection.send(currentState.toString());
-                    }
-                }
-            } else {
-                //️nieprawidłowy ruch w trybie bicia — kończymy turę
-                mustCaptureAgain = false;
-                selectedRow = -1;
-                selectedCol = -1;
-                currentState.switchTurn();
-                if (connection != null) {
-                    connection.send(currentState.toString());
-                }
-            }
-
-         repaint();
-            return;
-        }
         if (clickedRow >= 0 && clickedRow < 8 && clickedCol >= 0 && clickedCol < 8) {
-            if (selectedRow == -1) {
-                Piece piece = currentState.getPiece(clickedRow, clickedCol);
-                if (piece != null && piece.getColor() == currentState.getCurrentTurn() &&
-                    currentState.getCurrentTurn() == myColor) {
-                    selectedRow = clickedRow;
-                    selectedCol = clickedCol;
-                } else {
-                    selectedRow = -1;
-                    selectedCol = -1;
-                }
-            } else {
-                boolean mustCapture = currentState.hasCaptureMoves(currentState.getCurrentTurn());
-                Piece piece = currentState.getPiece(selectedRow, selectedCol);
-                boolean isCaptureAttempt = piece != null && (
-                (piece.isQueen() && Math.abs(selectedRow - clickedRow) == Math.abs(selectedCol - clickedCol)) ||
-                (!piece.isQueen() && Math.abs(selectedRow - clickedRow) == 2 && Math.abs(selectedCol - clickedCol) == 2));
-                        if(mustCapture && !isCaptureAttempt) {
-                            selectedRow = -1;
-                            selectedCol = -1;
-                            return;
-                        }
-                
-                if (currentState.makeMove(selectedRow, selectedCol, clickedRow, clickedCol)) {
-                    if (currentState.isGameOver()) {
-                        Piece.Color winner = currentState.getWinner(); // nowa metoda, patrz niżej
-                        String msg;
-                        if (winner != null) {
-                            msg = (winner == Piece.Color.WHITE ? "BIAŁE" : "CZARNE") + " WYGRYWAJĄ!";
-                            if (connection != null) {
-                                connection.send("GAME_OVER:" + (winner == Piece.Color.WHITE ? "WHITE" : "BLACK"));
-                            }
-                        } else {
-                            msg = "REMIS!";
-                            if (connection != null) {
-                                connection.send("GAME_OVER:REMIS");
-                            }
-                        }
-                        showEndScreen(msg);
-                    return;
-                    }
-
-                    if(connection != null){
-                        currentState.switchTurn();
-                        connection.send(currentState.toString());
-                    }
-                    // Sprawdzenie, czy to było bicie
-                    
-                    boolean wasCapture = piece != null && (
-                        (piece.isQueen() && Math.abs(clickedRow - selectedRow) == Math.abs(clickedCol - selectedCol)) ||
-                        (!piece.isQueen() && Math.abs(clickedRow - selectedRow) == 2));
-                        if (wasCapture) { 
-                        boolean continuedCapture = piece != null && (
-                        (piece.isQueen() && Math.abs(clickedRow - selectedRow) == Math.abs(clickedCol - selectedCol)) ||
-                        (!piece.isQueen() && Math.abs(clickedRow - selectedRow) == 2));
-
-                    if (continuedCapture && currentState.captureAgain(clickedRow, clickedCol)) {
-                            // Kolejne bicie możliwe – zostaw zaznaczenie
-                            selectedRow = clickedRow;
-                            selectedCol = clickedCol;
-                            mustCaptureAgain = true;
-                        } else {
-                            selectedRow = -1;
-                            selectedCol = -1;
-                            mustCaptureAgain = false;
-                            currentState.switchTurn();    
-                        }
-                    } else {
-                        // Zwykły ruch – resetuj zaznaczenie
-                        selectedRow = -1;
-                        selectedCol = -1;
-                        currentState.switchTurn();
-                    }
-                } else {
-                    selectedRow = -1;
-                    selectedCol = -1;
-                }
-            }
+            click(clickedRow, clickedCol);
         }
-
         repaint();
     }
 });
         
     }
+    /**
+     * Obsługuje kliknięcie pola: wybór pionka, kolejne pola drogi bicia
+     * i wysłanie gotowego ruchu do serwera. Plansza zmienia się dopiero
+     * po odebraniu ruchu zatwierdzonego przez serwer.
+     */
+    private void click(int row, int col) {
+        int square = Bitboard.square(row, col);
+        if (connection == null || myColor == null || currentState.getCurrentTurn() != myColor
+                || currentState.isGameOver() || square < 0) {
+            clearSelection();
+            return;
+        }
+        MoveGenerator.generate(currentState, moves);
+        if (selectedRow == -1) {
+            select(row, col);
+            return;
+        }
+        path[pathLength++] = square;
+        int index = findMove(true);
+        if (index < 0 && findMove(false) >= 0) {
+            // dalsza część drogi bicia - czekamy na kolejne pole
+            mustCaptureAgain = true;
+            return;
+        }
+        if (index < 0 && pathLength == 1) {
+            // samo pole końcowe, o ile jednoznacznie wskazuje ruch
+            index = moves.find(Move.squareName(Bitboard.square(selectedRow, selectedCol)) + ":" + Move.squareName(square));
+        }
+        if (index >= 0) {
+            connection.send("MOVE:" + moves.toNotation(index));
+            clearSelection();
+        } else if (pathLength == 1) {
+            select(row, col);
+        } else {
+            clearSelection();
+        }
+    }
+    /**
+     * Zaznacza pionek, jeśli ma on dozwolony ruch.
+     */
+    private void select(int row, int col) {
+        clearSelection();
+        int square = Bitboard.square(row, col);
+        for (int i = 0; i < moves.size(); i++) {
+            if (Move.from(moves.get(i)) == square) {
+                selectedRow = row;
+                selectedCol = col;
+                return;
+            }
+        }
+    }
+    /**
+     * Szuka ruchu zaznaczonego pionka, którego droga zaczyna się od klikniętych pól.
+     * @param complete true - droga musi być cała (ruch gotowy do wysłania)
+     * @return indeks ruchu lub -1
+     */
+    private int findMove(boolean complete) {
+        int from = Bitboard.square(selectedRow, selectedCol);
+        for (int i = 0; i < moves.size(); i++) {
+            if (Move.from(moves.get(i)) != from || moves.pathLength(i) < pathLength) continue;
+            if (complete && moves.pathLength(i) != pathLength) continue;
+            boolean matches = true;
+            for (int step = 0; step < pathLength && matches; step++) {
+                matches = moves.pathSquare(i, step) == path[step];
+            }
+            if (matches) return i;
+        }
+        return -1;
+    }
+    private void clearSelection() {
+        selectedRow = -1;
+        selectedCol = -1;
+        pathLength = 0;
+        mustCaptureAgain = false;
+    }
     //
     @Override
     //rysowanie planszy, pionków i zaznaczenia
@@ -176,9 +148,13 @@ public class BoardPanel extends JPanel {
                 boolean isLight = (row + col) % 2 == 0;
                 g.setColor(isLight ? new Color(222, 184, 135) : new Color(102, 51, 0));
                 g.fillRect(col*TILE_SIZE, row*TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                if (isOnPath(row, col)) {
+                    g.setColor(Color.YELLOW);
+                    g.drawRect(col*TILE_SIZE + 2, row*TILE_SIZE + 2, TILE_SIZE - 5, TILE_SIZE - 5);
+                }
                 
-                if(currentState.getPiece(row, col) != null){
-                    Piece piece = currentState.getPiece(row, col);
+                Piece piece = currentState.getPiece(row, col);
+                if(piece != null){
                     if(piece.getColor() == Piece.Color.WHITE){
                         g.setColor(Color.WHITE);
                     }
@@ -214,6 +190,14 @@ public class BoardPanel extends JPanel {
       
     } 
     
+    private boolean isOnPath(int row, int col) {
+        int square = Bitboard.square(row, col);
+        for (int step = 0; step < pathLength; step++) {
+            if (path[step] == square) return true;
+        }
+        return false;
+    }
+    
      /**
      * Ustawia połączenie sieciowe klienta.
      * @param connection obiekt połączenia z serwerem
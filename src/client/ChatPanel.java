@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import javax.swing.*;
 import model.Piece;
+import protocol.Protocol;
 
 /**
  * Panel czatu gry.
@@ -17,6 +18,8 @@ import model.Piece;
 public class ChatPanel extends JPanel {
     
     private static final String CHAT_HISTORY_FILE = "chat_history.txt"; 
+    /** Polecenie czatu, które proponuje remis albo przyjmuje propozycję przeciwnika. */
+    static final String DRAW_COMMAND = "/remis";
     
     private GameClientSocket connection;
 
@@ -113,9 +116,16 @@ public class ChatPanel extends JPanel {
     
     /**
      * Wysyła wiadomość czatu do serwera i dopisuje ją do historii.
+     * Polecenie {@value #DRAW_COMMAND} wysyła zamiast tego propozycję remisu.
      */
     private void sendChatMessage() {
         String message = inputField.getText().trim();
+        if (message.equals(DRAW_COMMAND) && connection != null) {
+            connection.send(Protocol.DRAW_OFFER);
+            inputField.setText("");
+            appendMessage("Zaproponowano remis.");
+            return;
+        }
         if (!message.isEmpty() && connection != null) {
             connection.send("CHAT:" + message);
             inputField.setText("");
@@ -9,9 +9,23 @@ package client;
 public class GameClient {
     /**
      * Metoda startowa klienta.
-     * @param args argumenty wiersza poleceń (nieużywane)
+     * @param args {@code --watch <numer_gry>} - oglądanie gry zamiast gry,
+     *             {@code --resume <numer_gry>:<WHITE|BLACK>} - powrót do przerwanej gry,
+     *             {@code --replay <numer_gry>} - przeglądanie przebiegu gry
      */
     public static void main(String[] args) {
-        GameWindow window = new GameWindow();
+        String command = null;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--watch")) {
+                command = "WATCH:" + args[++i];
+            }
+            else if (args[i].equals("--resume")) {
+                command = "RESUME:" + args[++i].toUpperCase();
+            }
+            else if (args[i].equals("--replay")) {
+                command = "HISTORY:" + args[++i];
+            }
+        }
+        GameWindow window = new GameWindow(command);
     }
 }
\ No newline at end of file
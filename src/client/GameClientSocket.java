@@ -3,24 +3,48 @@ package client;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import logging.Level;
+import logging.Logger;
 import model.GameState;
+import model.MoveList;
 import model.Piece;
+import protocol.MessageDecoder;
+import protocol.Protocol;
 
 /**
  * Wątek obsługujący połączenie klienta gry z serwerem.
  * Odpowiada za wysyłanie i odbiór wiadomości, synchronizację stanu gry oraz obsługę czatu.
+ * Stan gry prowadzi serwer: klient wysyła swój ruch ({@code MOVE:}), a wykonuje
+ * go dopiero po odebraniu ruchu zatwierdzonego przez serwer. Cała plansza
+ * przychodzi tylko po odrzuconym ruchu, żeby klient wyrównał swój stan.
  * @author Grzegorz Dżyg
  */
 public class GameClientSocket extends Thread {
     
+    private static final Logger LOG = Logger.get("client");
+    
     private GameState gameState;
     private BoardPanel boardPanel;
     private ChatPanel chatPanel;
   
     private Piece.Color myColor;
     private Socket socket;
-    private BufferedReader in;
+    private InputStream in;
+    private OutputStream output;
     private PrintWriter out;
+    /** true po potwierdzeniu protokołu binarnego - wiadomości są wysyłane jako ramki. */
+    private boolean binary;
+    private final MessageDecoder decoder = new MessageDecoder();
+    private final MoveList moves = new MoveList();
+    private final int[] squares = new int[MoveList.MAX_PATH + 1];
+    /** Linie planszy odebrane przed linią TURN: (protokół tekstowy). */
+    private final StringBuilder board = new StringBuilder();
+    /** Panel powtórki, gdy klient tylko przegląda przebieg gry (lub null). */
+    private volatile ReplayPanel replayPanel;
+    /** Ruchy z {@code HISTORY:} czekające na planszę, od której zaczyna się zapis (tryb powtórki). */
+    private String history;
     /**
      * Tworzy połączenie z serwerem gry.
      * @param host adres serwera
@@ -37,19 +61,48 @@ public class GameClientSocket extends Thread {
         
         try{
             socket = new Socket(host, port);
-            in  = new BufferedReader( new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
-            System.out.println("Polaczona z serwerem");
+            in = socket.getInputStream();
+            output = socket.getOutputStream();
+            out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
+            out.println(Protocol.REQUEST);
+            LOG.info("Połączono z serwerem {}", socket.getRemoteSocketAddress());
         }catch(IOException e){
-            e.printStackTrace();
+            LOG.error("Nie można połączyć z serwerem", e);
         }
     }
     /**
-     * Wysyła wiadomość do serwera.
+     * Przełącza klienta w tryb powtórki: po odebraniu historii gry połączenie
+     * jest zamykane, a pozostałe wiadomości serwera są pomijane.
+     * @param replayPanel panel, który dostanie historię gry
+     */
+    public void setReplayPanel(ReplayPanel replayPanel){
+        this.replayPanel = replayPanel;
+    }
+    /**
+     * Wysyła wiadomość do serwera: tekstem, dopóki serwer nie potwierdzi
+     * protokołu binarnego, a potem jako ramkę.
      * @param message wiadomość do wysłania
      */
-    public void send(String message){
-        out.println(message);
+    public synchronized void send(String message){
+        if (!binary) {
+            out.println(message);
+            return;
+        }
+        ByteBuffer frame = Protocol.encode(message);
+        try {
+            output.write(frame.array(), 0, frame.limit());
+        } catch (IOException e) {
+            LOG.info("Rozłączono: {}", e.getMessage());
+        }
+    }
+    /**
+     * Serwer potwierdził protokół binarny: odsyła potwierdzenie jako ostatnią
+     * linię tekstu, a kolejne wiadomości w obie strony są ramkami.
+     */
+    private synchronized void startBinary() {
+        decoder.setBinary(true);
+        out.println(Protocol.ACCEPT);
+        binary = true;
     }
      /**
      * Odbiera wiadomości od serwera i aktualizuje stan gry oraz czat.
@@ -57,57 +110,150 @@ public class GameClientSocket extends Thread {
    @Override
     public void run() {
         try {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null) {
-                
-                if (line.startsWith("CHAT:")) {
-                String msg = line.substring(5);
-                if (chatPanel != null) {
-                    chatPanel.appendMessage(msg);
+            decoder.readFrom(in, new MessageDecoder.Handler() {
+                @Override
+                public void line(String line) {
+                    // po potwierdzeniu serwer wysyła już tylko ramki binarne
+                    if (line.equals(Protocol.ACCEPT)) {
+                        startBinary();
+                        return;
+                    }
+                    handleLine(line);
                 }
-                continue;
-            }
-                
-                // jeśli wiadomość to COLOR:...
-                if (line.startsWith("COLOR:")) {
-                    String color = line.split(":")[1].trim();
-                    myColor = Piece.Color.valueOf(color);
-                    boardPanel.setMyColor(myColor);
-                    chatPanel.setPlayerInfo(myColor); 
-                    
-                    System.out.println("Twój kolor to: " + myColor);
-                    continue; // ← przejdź do kolejnej linii
+                @Override
+                public void frame(int type, ByteBuffer payload) {
+                    handleFrame(type, payload);
                 }
+            });
+        } catch (IOException e) {
+            LOG.info("Rozłączono: {}", e.getMessage());
+        }
+    }
+    /**
+     * Obsługuje ramkę binarną: ruch i plansza są odczytywane bez tekstu,
+     * pozostałe wiadomości jak w protokole tekstowym. Za krótka ramka jest pomijana.
+     */
+    private void handleFrame(int type, ByteBuffer payload) {
+        if (!Protocol.isValid(type, payload)) {
+            LOG.warn("Pominięto niepoprawną ramkę typu {}", type);
+            return;
+        }
+        if (replayPanel != null) {
+            handleLine(Protocol.decode(type, payload));
+            return;
+        }
+        if (type == Protocol.MOVE) {
+            int count = Protocol.readMove(payload, squares);
+            if (gameState.play(squares, count, moves) == 0) {
+                LOG.warn("Nieznany ruch od serwera ({} pól)", count);
+            }
+        } else if (type == Protocol.SNAPSHOT) {
+            Protocol.readSnapshot(payload, gameState);
+        } else {
+            handleLine(Protocol.decode(type, payload));
+            return;
+        }
+        chatPanel.updateTurn(gameState.getCurrentTurn(), myColor);
+        boardPanel.repaint();
+    }
 
-                // dodaj linię do bufora
-                sb.append(line).append("\n");
+    /**
+     * W trybie powtórki potrzebna jest tylko historia gry i plansza, od której
+     * się zaczyna (albo błąd, gdy gry nie ma). Plansza przychodzi po linii
+     * {@code HISTORY:} - linia po linii albo, z ramki binarnej, w całości.
+     */
+    private void handleReplay(String line) {
+        if (line.startsWith("HISTORY:")) {
+            history = line.substring(line.indexOf(':', "HISTORY:".length()) + 1);
+            board.setLength(0);
+        } else if (line.startsWith("ERROR:")) {
+            chatPanel.appendMessage(line.substring("ERROR:".length()));
+        } else if (history != null) {
+            board.append(line).append("\n");
+            if (!line.contains("TURN:")) {
+                return;
+            }
+            replayPanel.load(GameState.fromString(board.toString()), history);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.info("Rozłączono: {}", e.getMessage());
+            }
+        }
+    }
+    /**
+     * Obsługuje jedną wiadomość protokołu tekstowego.
+     */
+    private void handleLine(String line) {
+        if (replayPanel != null) {
+            handleReplay(line);
+            return;
+        }
+        if (line.startsWith("CHAT:")) {
+            String msg = line.substring(5);
+            if (chatPanel != null) {
+                chatPanel.appendMessage(msg);
+            }
+            return;
+        }
+        if (line.startsWith("MOVE:")) {
+            if (gameState.play(line.substring("MOVE:".length())) == 0) {
+                LOG.warn("Nieznany ruch od serwera: {}", line);
+            }
+            chatPanel.updateTurn(gameState.getCurrentTurn(), myColor);
+            boardPanel.repaint();
+            return;
+        }
+        if (line.startsWith("ERROR:")) {
+            chatPanel.appendMessage(line.substring("ERROR:".length()));
+            return;
+        }
+        if (line.equals(Protocol.DRAW_OFFER)) {
+            chatPanel.appendMessage("Przeciwnik proponuje remis. Wpisz " + ChatPanel.DRAW_COMMAND + ", aby przyjąć.");
+            return;
+        }
+        if (line.startsWith("WATCHING:")) {
+            myColor = null;
+            boardPanel.setMyColor(null);
+            chatPanel.appendMessage("Oglądasz grę " + line.substring("WATCHING:".length()) + ".");
+            return;
+        }
 
-                // jeżeli dotarliśmy do TURN, kończymy zbieranie
-                if (line.startsWith("TURN:")) {
-                    System.out.println("Odebrano:\n" + sb.toString());
-                    GameState newState = GameState.fromString(sb.toString());
-                    gameState.copyFrom(newState);
-                    chatPanel.updateTurn(gameState.getCurrentTurn(), myColor);
-                    boardPanel.repaint();
-                    sb.setLength(0); // czyść bufor
-                }
-                if (line.startsWith("GAME_OVER:")) {
-                String winnerStr = line.substring("GAME_OVER:".length());
-                String msg;
-                if (winnerStr.equals("WHITE")) {
-                    msg = "BIAŁE WYGRYWAJĄ!";
-                } else if (winnerStr.equals("BLACK")) {
-                 msg = "CZARNE WYGRYWAJĄ!";
-                } else {
-                    msg = "REMIS!";
-                }
-                boardPanel.showEndScreen(msg);
-                
-}
+        // jeśli wiadomość to COLOR:...
+        if (line.startsWith("COLOR:")) {
+            String color = line.split(":")[1].trim();
+            myColor = Piece.Color.valueOf(color);
+            boardPanel.setMyColor(myColor);
+            chatPanel.setPlayerInfo(myColor); 
+            
+            LOG.info("Twój kolor to: {}", myColor);
+            return;
+        }
+
+        // dodaj linię do bufora
+        board.append(line).append("\n");
+
+        // jeżeli dotarliśmy do TURN, kończymy zbieranie
+        if (line.startsWith("TURN:")) {
+            if (LOG.isEnabled(Level.TRACE)) {
+                LOG.trace("Odebrano planszę:\n{}", board.toString());
             }
-        } catch (IOException e) {
-            System.out.println("Rozłączono");
+            gameState.load(board.toString());
+            chatPanel.updateTurn(gameState.getCurrentTurn(), myColor);
+            boardPanel.repaint();
+            board.setLength(0); // czyść bufor
+        }
+        if (line.startsWith("GAME_OVER:")) {
+            String winnerStr = line.substring("GAME_OVER:".length());
+            String msg;
+            if (winnerStr.equals("WHITE")) {
+                msg = "BIAŁE WYGRYWAJĄ!";
+            } else if (winnerStr.equals("BLACK")) {
+                msg = "CZARNE WYGRYWAJĄ!";
+            } else {
+                msg = "REMIS!";
+            }
+            boardPanel.showEndScreen(msg);
         }
     }
     
@@ -4,6 +4,7 @@ package client;
 import java.awt.*;
 import javax.swing.*;
 import model.GameState;
+import protocol.Protocol;
 
 /**
  * Okno gry warcaby (klient Swing).
@@ -14,6 +15,15 @@ public class GameWindow extends JFrame{
      * Tworzy i wyświetla okno gry z planszą oraz czatem.
      */
     public GameWindow(){
+        this(null);
+    }
+     /**
+     * Tworzy i wyświetla okno gry; klient może zamiast nowej gry oglądać
+     * wskazaną grę, wrócić do przerwanej albo przeglądać przebieg gry.
+     * @param command pierwsze polecenie dla serwera ({@code WATCH:}, {@code RESUME:},
+     *                {@code HISTORY:} - tryb powtórki) lub null - nowa gra
+     */
+    public GameWindow(String command){
         
         setTitle("Warcaby - Grzegorz Dżyg");
         setSize(1000, 700);
@@ -33,7 +43,13 @@ public class GameWindow extends JFrame{
         GameClientSocket connection = new GameClientSocket("localhost", 8888, state, board, chat);
         board.setConnection(connection);
         chat.setConnection(connection);
+        if (command != null && command.startsWith("HISTORY:")) {
+            ReplayPanel replay = new ReplayPanel(state, board);
+            connection.setReplayPanel(replay);
+            add(replay, BorderLayout.SOUTH);
+        }
         connection.start();
+        connection.send(command != null ? command : Protocol.PLAY);
         add(board, BorderLayout.CENTER);
         add(chat, BorderLayout.EAST);
         
@@ -0,0 +1,87 @@
+package client;
+
+import java.awt.*;
+import javax.swing.*;
+import model.GameRecord;
+import model.GameState;
+
+/**
+ * Panel przeglądania partii (tryb powtórki).
+ * Ruchy partii i plansza, od której się zaczynają, przychodzą z serwera raz
+ * ({@code HISTORY:}), a przewijanie
+ * odbywa się już lokalnie: {@link GameRecord} odtwarza planszę po dowolnym
+ * ruchu od najbliższego zapamiętanego stanu, więc suwak reaguje od razu
+ * nawet przy długich partiach.
+ * @author Grzegorz Dżyg
+ */
+public class ReplayPanel extends JPanel {
+
+    private final GameState state;
+    private final BoardPanel boardPanel;
+    private GameRecord record = new GameRecord();
+
+    private final JSlider slider = new JSlider(0, 0, 0);
+    private final JLabel moveLabel = new JLabel("Wczytywanie partii...");
+
+    /**
+     * Tworzy panel sterujący planszą w trybie powtórki.
+     * @param state stan gry wyświetlany przez panel planszy
+     * @param boardPanel panel planszy
+     */
+    public ReplayPanel(GameState state, BoardPanel boardPanel) {
+        this.state = state;
+        this.boardPanel = boardPanel;
+        setLayout(new BorderLayout());
+        setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+
+        moveLabel.setFont(new Font("SansSerif", Font.BOLD, 16));
+        moveLabel.setPreferredSize(new Dimension(260, 30));
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 0));
+        buttons.add(button("|<", () -> slider.setValue(0)));
+        buttons.add(button("<", () -> slider.setValue(slider.getValue() - 1)));
+        buttons.add(button(">", () -> slider.setValue(slider.getValue() + 1)));
+        buttons.add(button(">|", () -> slider.setValue(slider.getMaximum())));
+
+        slider.setEnabled(false);
+        slider.addChangeListener(e -> show(slider.getValue()));
+
+        add(moveLabel, BorderLayout.WEST);
+        add(slider, BorderLayout.CENTER);
+        add(buttons, BorderLayout.EAST);
+    }
+    private static JButton button(String text, Runnable action) {
+        JButton button = new JButton(text);
+        button.addActionListener(e -> action.run());
+        return button;
+    }
+    /**
+     * Wczytuje ruchy partii i pokazuje pozycję końcową. Może być wywołana z dowolnego wątku.
+     * @param start pozycja przed pierwszym ruchem (dla gry odtworzonej z dziennika - nie początkowa)
+     * @param history ruchy w notacji, oddzielone spacjami
+     */
+    public void load(GameState start, String history) {
+        GameRecord loaded = new GameRecord(start, GameRecord.DEFAULT_SNAPSHOT_INTERVAL);
+        for (String notation : history.trim().split("\\s+")) {
+            if (!notation.isEmpty() && !loaded.play(notation)) {
+                break; // historia z serwera jest poprawna - to tylko zabezpieczenie
+            }
+        }
+        SwingUtilities.invokeLater(() -> {
+            record = loaded;
+            slider.setMaximum(record.size());
+            slider.setEnabled(true);
+            slider.setValue(record.size());
+            show(record.size());
+        });
+    }
+    /**
+     * Ustawia na planszy pozycję po podanej liczbie ruchów.
+     */
+    private void show(int ply) {
+        record.seek(ply, state);
+        String move = ply > 0 ? ": " + record.getNotation(ply - 1) : "";
+        moveLabel.setText("Ruch " + ply + " z " + record.size() + move);
+        boardPanel.repaint();
+    }
+}
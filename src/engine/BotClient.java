@@ -0,0 +1,339 @@
+package engine;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import logging.Level;
+import logging.Logger;
+import model.GameState;
+import model.Move;
+import model.MoveGenerator;
+import model.MoveList;
+import model.Piece;
+import protocol.MessageDecoder;
+import protocol.Protocol;
+
+/**
+ * Komputerowy przeciwnik łączący się z serwerem jak zwykły klient.
+ * Rozmawia z serwerem tym samym tekstowym protokołem co {@code client.GameClientSocket}:
+ * odbiera kolor i ruchy zatwierdzone przez serwer, a gdy jest jego kolej, wysyła swój ruch.
+ * Tak jak klient okienkowy prosi o protokół binarny ({@link Protocol}).
+ * Jeśli w katalogu roboczym jest plik {@value Tablebase#DEFAULT_FILE}, bot używa
+ * bazy końcówek w przeszukiwaniu. Gdy pozycja jest w niej remisowa, bot raz proponuje
+ * remis ({@link Protocol#DRAW_OFFER}) i gra dalej; propozycję przeciwnika przyjmuje,
+ * jeśli według bazy nie może wygrać.
+ * Podobnie plik {@value OpeningBook#DEFAULT_FILE} włącza książkę debiutową - ruchy
+ * z książki są grane od razu, bez przeszukiwania. Serwer, który uruchamia bota
+ * dla każdej gry, otwiera oba pliki raz i daje wszystkim botom wspólną tablicę
+ * transpozycji.
+ * @author Grzegorz Dżyg
+ */
+public class BotClient extends Thread {
+
+    private static final Logger LOG = Logger.get("bot");
+    /** Domyślny czas na ruch w milisekundach. */
+    public static final long DEFAULT_TIME_MILLIS = 1000;
+
+    private final GameState gameState = new GameState();
+    private final MoveList moves = new MoveList();
+    private final ParallelSearch search;
+    private final long timeMillis;
+    private final Tablebase tablebase;
+    private final OpeningBook book;
+    private final Random random = new Random();
+
+    private Piece.Color myColor;
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    private final MessageDecoder decoder = new MessageDecoder();
+    /** true po potwierdzeniu protokołu binarnego - wiadomości są wysyłane jako ramki. */
+    private boolean binary;
+    private final int[] squares = new int[MoveList.MAX_PATH + 1];
+    /** Linie planszy odebrane przed linią TURN: (protokół tekstowy). */
+    private final StringBuilder board = new StringBuilder();
+    private volatile boolean finished;
+    /** Czy bot zaproponował już remis w tej grze. */
+    private boolean drawOffered;
+    /**
+     * Tworzy połączenie bota z serwerem gry.
+     * @param host adres serwera
+     * @param port port serwera
+     * @param timeMillis czas na jeden ruch w milisekundach
+     */
+    public BotClient(String host, int port, long timeMillis){
+        this(host, port, timeMillis, TranspositionTable.DEFAULT_SIZE_MB, 1);
+    }
+    /**
+     * Tworzy połączenie bota z serwerem gry.
+     * @param host adres serwera
+     * @param port port serwera
+     * @param timeMillis czas na jeden ruch w milisekundach
+     * @param hashMB rozmiar tablicy transpozycji w megabajtach
+     * @param threads liczba wątków przeszukiwania
+     */
+    public BotClient(String host, int port, long timeMillis, int hashMB, int threads){
+        this(host, port, timeMillis, new ParallelSearch(threads, hashMB), openTablebase(), openBook());
+    }
+    /**
+     * Tworzy jednowątkowego bota, który korzysta z zasobów wspólnych dla wielu
+     * botów (np. wszystkich gier na serwerze).
+     * @param host adres serwera
+     * @param port port serwera
+     * @param timeMillis czas na jeden ruch w milisekundach
+     * @param table wspólna tablica transpozycji
+     * @param tablebase baza końcówek lub null
+     * @param book książka debiutowa lub null
+     */
+    public BotClient(String host, int port, long timeMillis, TranspositionTable table, Tablebase tablebase, OpeningBook book){
+        this(host, port, timeMillis, new ParallelSearch(1, table), tablebase, book);
+    }
+    private BotClient(String host, int port, long timeMillis, ParallelSearch search, Tablebase tablebase, OpeningBook book){
+        this.timeMillis = timeMillis;
+        this.host = host;
+        this.port = port;
+        this.search = search;
+        this.tablebase = tablebase;
+        this.book = book;
+        setName("bot");
+        setDaemon(true);
+        if(tablebase != null) search.setTablebase(tablebase);
+        // port jest znany przed połączeniem, więc serwer może zarezerwować botowi miejsce
+        try{
+            socket = new Socket();
+            socket.bind(new InetSocketAddress(0));
+        }catch(IOException e){
+            LOG.error("Nie można otworzyć gniazda bota", e);
+            socket = null;
+        }
+    }
+    /**
+     * Otwiera bazę końcówek {@value Tablebase#DEFAULT_FILE} z katalogu roboczego.
+     * @return baza końcówek lub null, jeśli pliku nie ma albo nie można go wczytać
+     */
+    public static Tablebase openTablebase(){
+        Path file = Paths.get(Tablebase.DEFAULT_FILE);
+        if(!Files.exists(file)) return null;
+        try{
+            Tablebase tablebase = Tablebase.open(file);
+            LOG.info("Baza końcówek do {} pionków", tablebase.getMaxPieces());
+            return tablebase;
+        }catch(IOException e){
+            LOG.error("Nie można wczytać bazy końcówek", e);
+            return null;
+        }
+    }
+    /**
+     * Otwiera książkę debiutową {@value OpeningBook#DEFAULT_FILE} z katalogu roboczego.
+     * @return książka debiutowa lub null, jeśli pliku nie ma albo nie można go wczytać
+     */
+    public static OpeningBook openBook(){
+        Path file = Paths.get(OpeningBook.DEFAULT_FILE);
+        if(!Files.exists(file)) return null;
+        try{
+            OpeningBook book = OpeningBook.open(file);
+            LOG.info("Książka debiutowa, ruchów: {}", book.size());
+            return book;
+        }catch(IOException e){
+            LOG.error("Nie można wczytać książki debiutowej", e);
+            return null;
+        }
+    }
+    /**
+     * Zwraca lokalny port połączenia bota (serwer rozpoznaje po nim bota).
+     * Port jest przydzielany w konstruktorze, przed połączeniem z serwerem.
+     * @return numer portu lub -1, jeśli nie udało się otworzyć gniazda
+     */
+    public int getLocalPort(){
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+    /**
+     * Łączy się z serwerem, prosi o grę, a potem odbiera wiadomości i odpowiada
+     * ruchem, gdy bot jest na ruchu. Bota, któremu serwer zarezerwował miejsce,
+     * prośba o grę nie przesadza do innej rozgrywki.
+     */
+    @Override
+    public void run(){
+        if(socket == null) return;
+        try{
+            socket.connect(new InetSocketAddress(host, port));
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+            writeLine(Protocol.REQUEST);
+            writeLine(Protocol.PLAY);
+        }catch(IOException e){
+            LOG.error("Nie można połączyć się z serwerem", e);
+            search.shutdown();
+            return;
+        }
+        try{
+            decoder.readFrom(in, new MessageDecoder.Handler(){
+                @Override
+                public void line(String line){
+                    if(line.equals(Protocol.ACCEPT)){
+                        // ostatnia linia tekstu - od teraz ramki w obie strony
+                        writeLine(Protocol.ACCEPT);
+                        decoder.setBinary(true);
+                        binary = true;
+                        return;
+                    }
+                    handleLine(line);
+                }
+                @Override
+                public void frame(int type, ByteBuffer payload){
+                    if(!Protocol.isValid(type, payload)){
+                        LOG.warn("Pominięto niepoprawną ramkę typu {}", type);
+                        return;
+                    }
+                    if(type == Protocol.MOVE){
+                        gameState.play(squares, Protocol.readMove(payload, squares), moves);
+                        playIfMyTurn();
+                    }
+                    else if(type == Protocol.SNAPSHOT){
+                        Protocol.readSnapshot(payload, gameState);
+                        playIfMyTurn();
+                    }
+                    else{
+                        handleLine(Protocol.decode(type, payload));
+                    }
+                }
+            });
+        }catch(IOException e){
+            if(!finished) LOG.info("Bot rozłączony");
+        }
+        search.shutdown();
+    }
+    /**
+     * Obsługuje wiadomość protokołu tekstowego.
+     */
+    private void handleLine(String line){
+        if(line.startsWith("CHAT:")) return;
+        if(line.equals(Protocol.DRAW_OFFER)){
+            int result = tablebaseResult();
+            if(result == Tablebase.DRAW || result == Tablebase.LOSS){
+                LOG.debug("Przyjmuję remis");
+                send(Protocol.DRAW_OFFER);
+            }
+            return;
+        }
+        if(line.startsWith("GAME_OVER:")){
+            finished = true;
+            try{
+                socket.close();
+            }catch(IOException e){
+                // połączenie i tak się kończy
+            }
+            return;
+        }
+        if(line.startsWith("COLOR:")){
+            myColor = Piece.Color.valueOf(line.substring("COLOR:".length()).trim());
+            LOG.debug("Bot gra kolorem: {}", myColor);
+            playIfMyTurn();
+            return;
+        }
+        if(line.startsWith("MOVE:")){
+            gameState.play(line.substring("MOVE:".length()));
+            playIfMyTurn();
+            return;
+        }
+        if(line.startsWith("ERROR:")){
+            LOG.warn("Serwer odrzucił ruch: {}", line.substring("ERROR:".length()));
+            return;
+        }
+        board.append(line).append("\n");
+        if(line.startsWith("TURN:")){
+            gameState.load(board.toString());
+            board.setLength(0);
+            playIfMyTurn();
+        }
+    }
+    /**
+     * Wysyła wiadomość: tekstem, dopóki serwer nie potwierdzi protokołu binarnego.
+     */
+    private void send(String message){
+        if(!binary){
+            writeLine(message);
+            return;
+        }
+        ByteBuffer frame = Protocol.encode(message);
+        try{
+            out.write(frame.array(), 0, frame.limit());
+        }catch(IOException e){
+            LOG.info("Bot rozłączony");
+        }
+    }
+    private void writeLine(String line){
+        try{
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }catch(IOException e){
+            LOG.info("Bot rozłączony");
+        }
+    }
+    /**
+     * Wybiera ruch, jeśli jest kolej bota, i wysyła go do serwera. Ruch jest
+     * wykonywany na planszy bota dopiero, gdy serwer roześle go obu graczom.
+     */
+    private void playIfMyTurn(){
+        if(myColor == null || gameState.getCurrentTurn() != myColor || gameState.isGameOver()) return;
+        if(!drawOffered && tablebaseResult() == Tablebase.DRAW){
+            LOG.debug("Remis według bazy końcówek - proponuję remis");
+            drawOffered = true;
+            send(Protocol.DRAW_OFFER);
+        }
+        long start = System.nanoTime();
+        long move = book != null ? book.choose(gameState, random) : 0;
+        if(move != 0){
+            if(LOG.isEnabled(Level.DEBUG)){
+                LOG.debug("Ruch {}", Move.toString(move) + " (książka debiutowa, "
+                        + (System.nanoTime() - start) / 1000 + " µs)");
+            }
+        }
+        else{
+            move = search.findBestMove(gameState, timeMillis, Search.MAX_DEPTH);
+            if(move == 0) return;
+            if(LOG.isEnabled(Level.DEBUG)){
+                LOG.debug("Ruch {}", Move.toString(move) + " (wątki " + search.getThreads()
+                        + ", głębokość " + search.getCompletedDepth()
+                        + ", ocena " + search.getScore() + ", węzły " + search.getNodes()
+                        + ", " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+            }
+        }
+        MoveGenerator.generate(gameState, moves);
+        send("MOVE:" + moves.toNotation(moves.indexOf(move)));
+    }
+    /**
+     * Sprawdza bieżącą pozycję w bazie końcówek.
+     * @return wynik z punktu widzenia bota ({@link Tablebase#WIN}, {@link Tablebase#LOSS},
+     *         {@link Tablebase#DRAW}) lub {@link Tablebase#NOT_FOUND}
+     */
+    private int tablebaseResult(){
+        if(tablebase == null || myColor == null) return Tablebase.NOT_FOUND;
+        int value = tablebase.probe(gameState);
+        if(value == Tablebase.NOT_FOUND) return Tablebase.NOT_FOUND;
+        int result = Tablebase.result(value);
+        if(result == Tablebase.DRAW || gameState.getCurrentTurn() == myColor) return result;
+        return result == Tablebase.WIN ? Tablebase.LOSS : Tablebase.WIN;
+    }
+    /**
+     * Uruchamia bota łączącego się z działającym serwerem.
+     * @param args opcjonalnie: adres, port, czas na ruch w milisekundach,
+     *             rozmiar tablicy transpozycji w MB, liczba wątków
+     */
+    public static void main(String[] args){
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8888;
+        long time = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_TIME_MILLIS;
+        int hashMB = args.length > 3 ? Integer.parseInt(args[3]) : TranspositionTable.DEFAULT_SIZE_MB;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        BotClient bot = new BotClient(host, port, time, hashMB, threads);
+        bot.setDaemon(false);
+        bot.start();
+    }
+}
@@ -0,0 +1,60 @@
+package engine;
+
+import model.GameState;
+import model.Piece;
+
+/**
+ * Statyczna ocena pozycji dla silnika gry.
+ * Liczy materiał, zaawansowanie pionków, kontrolę centrum oraz obronę
+ * ostatniego wiersza. Ocena działa wyłącznie na bitboardach, bez alokacji.
+ * @author Grzegorz Dżyg
+ */
+public final class Evaluator {
+
+    /** Wartość zwykłego pionka. */
+    public static final int MAN = 100;
+    /** Wartość damki (bije z dystansu, więc jest warta kilka pionków). */
+    public static final int KING = 300;
+
+    /** Premia za pionka w danym wierszu, licząc od własnej strony planszy. */
+    private static final int[] ADVANCE = {0, 2, 4, 7, 11, 16, 22, 0};
+    /** Cztery środkowe pola wierszy 3 i 4. */
+    private static final int CENTER = 0x00066000;
+    private static final int CENTER_BONUS = 6;
+    /** Premia za pionka stojącego w wierszu przemiany przeciwnika. */
+    private static final int BACK_ROW_BONUS = 8;
+
+    private Evaluator(){
+    }
+    /**
+     * Ocenia pozycję z punktu widzenia gracza, który jest na ruchu.
+     * @param state stan gry
+     * @return ocena w setnych częściach pionka (dodatnia - lepiej dla gracza na ruchu)
+     */
+    public static int evaluate(GameState state){
+        int score = evaluateWhite(state.getWhitePieces(), state.getBlackPieces(), state.getKings());
+        return state.getCurrentTurn() == Piece.Color.WHITE ? score : -score;
+    }
+    /**
+     * Ocenia pozycję z punktu widzenia białych.
+     * @param white białe pionki
+     * @param black czarne pionki
+     * @param kings damki
+     * @return ocena (dodatnia - lepiej dla białych)
+     */
+    static int evaluateWhite(int white, int black, int kings){
+        int whiteMen = white & ~kings;
+        int blackMen = black & ~kings;
+        int score = MAN * (Integer.bitCount(whiteMen) - Integer.bitCount(blackMen))
+                + KING * (Integer.bitCount(white & kings) - Integer.bitCount(black & kings));
+        for(int row = 1; row < 7; row++){
+            int mask = 0xF << (row << 2);
+            // białe idą w stronę wiersza 7, czarne w stronę wiersza 0
+            score += ADVANCE[row] * Integer.bitCount(whiteMen & mask)
+                    - ADVANCE[7 - row] * Integer.bitCount(blackMen & mask);
+        }
+        score += CENTER_BONUS * (Integer.bitCount(white & CENTER) - Integer.bitCount(black & CENTER));
+        score += BACK_ROW_BONUS * (Integer.bitCount(whiteMen & 0x0000000F) - Integer.bitCount(blackMen & 0xF0000000));
+        return score;
+    }
+}
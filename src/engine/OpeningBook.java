@@ -0,0 +1,153 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import model.GameState;
+import model.MoveGenerator;
+import model.MoveList;
+
+/**
+ * Książka debiutowa: statystyki ruchów zagranych w pozycjach z początku partii.
+ * <p>
+ * Plik tworzy {@link OpeningBookBuilder}. Zawiera nagłówek {@code "WOB1"} z liczbą
+ * rekordów i rekordy posortowane po haszu pozycji (a potem po ruchu):
+ * hasz (8 bajtów), ruch (8 bajtów, patrz {@link model.Move}), liczba partii (4 bajty)
+ * i zdobyte przez gracza na ruchu punkty (4 bajty, wygrana 2, remis 1).
+ * Plik jest mapowany do pamięci, a rekordy pozycji są wyszukiwane binarnie,
+ * więc odpowiedź z książki zajmuje mikrosekundy.
+ * @author Grzegorz Dżyg
+ */
+public class OpeningBook {
+
+    /** Domyślna nazwa pliku książki debiutowej. */
+    public static final String DEFAULT_FILE = "book.wob";
+
+    static final int MAGIC = 0x574F4231; // "WOB1"
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 24;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final MoveList moves = new MoveList();
+
+    private OpeningBook(MappedByteBuffer buffer, int size){
+        this.buffer = buffer;
+        this.size = size;
+    }
+    /**
+     * Otwiera plik książki i mapuje go do pamięci.
+     * @param file plik utworzony przez {@link OpeningBookBuilder}
+     * @return książka debiutowa
+     * @throws IOException błąd odczytu lub nieprawidłowy format pliku
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC){
+                throw new IOException("To nie jest plik książki debiutowej: " + file);
+            }
+            int size = buffer.getInt(4);
+            if((long) HEADER_SIZE + (long) size * RECORD_SIZE > buffer.limit()){
+                throw new IOException("Uszkodzony plik książki debiutowej: " + file);
+            }
+            return new OpeningBook(buffer, size);
+        }
+    }
+    /**
+     * Zwraca liczbę rekordów (par pozycja - ruch) w książce.
+     * @return liczba rekordów
+     */
+    public int size(){
+        return size;
+    }
+    /**
+     * Wybiera ruch z książki - losowo, z prawdopodobieństwem proporcjonalnym
+     * do liczby partii, w których go zagrano. Ruchy, które w tej pozycji nie są
+     * dozwolone (kolizja haszy), są pomijane.
+     * Metoda jest synchronizowana (używa wspólnej listy ruchów), więc książkę
+     * może dzielić wielu botów.
+     * @param state pozycja
+     * @param random źródło losowości
+     * @return ruch lub 0, jeśli pozycji nie ma w książce
+     */
+    public synchronized long choose(GameState state, Random random){
+        int first = find(state.getHash());
+        if(first < 0) return 0;
+        int count = MoveGenerator.generate(state, moves);
+        if(count == 0) return 0;
+        long total = 0;
+        int last = first;
+        for(; last < size && hash(last) == state.getHash(); last++){
+            if(moves.indexOf(move(last)) >= 0) total += games(last);
+        }
+        if(total == 0) return 0;
+        long pick = (long) (random.nextDouble() * total);
+        for(int i = first; i < last; i++){
+            if(moves.indexOf(move(i)) < 0) continue;
+            pick -= games(i);
+            if(pick < 0) return move(i);
+        }
+        return 0;
+    }
+    /**
+     * Zwraca indeks pierwszego rekordu pozycji o podanym haszu.
+     * @param hash hasz pozycji
+     * @return indeks rekordu lub -1, jeśli pozycji nie ma w książce
+     */
+    public int find(long hash){
+        int low = 0;
+        int high = size;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(hash(middle) < hash) low = middle + 1;
+            else high = middle;
+        }
+        return low < size && hash(low) == hash ? low : -1;
+    }
+    /**
+     * Zwraca hasz pozycji rekordu.
+     * @param index indeks rekordu
+     * @return hasz pozycji
+     */
+    public long hash(int index){
+        return buffer.getLong(offset(index));
+    }
+    /**
+     * Zwraca ruch rekordu.
+     * @param index indeks rekordu
+     * @return zakodowany ruch
+     */
+    public long move(int index){
+        return buffer.getLong(offset(index) + 8);
+    }
+    /**
+     * Zwraca liczbę partii, w których zagrano ruch rekordu.
+     * @param index indeks rekordu
+     * @return liczba partii
+     */
+    public int games(int index){
+        return buffer.getInt(offset(index) + 16);
+    }
+    /**
+     * Zwraca punkty zdobyte po tym ruchu przez gracza, który go wykonał (wygrana 2, remis 1).
+     * @param index indeks rekordu
+     * @return suma punktów
+     */
+    public int points(int index){
+        return buffer.getInt(offset(index) + 20);
+    }
+    private static int offset(int index){
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+    /**
+     * Zapisuje rekordy do bufora w formacie pliku książki (używane przez {@link OpeningBookBuilder}).
+     */
+    static void writeRecord(ByteBuffer out, long hash, long move, int games, int points){
+        out.putLong(hash).putLong(move).putInt(games).putInt(points);
+    }
+}
@@ -0,0 +1,249 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import model.GameState;
+import model.MoveGenerator;
+import model.MoveList;
+import model.Piece;
+
+/**
+ * Tworzy książkę debiutową ({@link OpeningBook}) z zapisanych partii.
+ * <p>
+ * Obsługiwane są dwa formaty wejścia:
+ * <ul>
+ * <li>PDN (plik {@code .pdn}) - znaczniki {@code [Result "2-0"]}, numery ruchów,
+ * komentarze w nawiasach klamrowych, warianty w nawiasach okrągłych i wynik na końcu partii;</li>
+ * <li>listy ruchów (każdy inny plik) - jedna partia w wierszu, ruchy oddzielone
+ * spacjami, opcjonalnie wynik na końcu.</li>
+ * </ul>
+ * Ruchy są zapisane w notacji {@link MoveList#toNotation(int)} ({@code c3-d4},
+ * {@code c3:e5:c7}, zamiast dwukropka może być {@code x}). Każda partia jest
+ * rozgrywana od pozycji początkowej; partia z niedozwolonym ruchem jest uwzględniana
+ * tylko do tego ruchu. Wyniki: {@code 2-0}/{@code 1-0} wygrana białych,
+ * {@code 0-2}/{@code 0-1} wygrana czarnych, {@code 1-1}/{@code 1/2-1/2} remis,
+ * {@code *} wynik nieznany (liczony jak remis).
+ * <p>
+ * Użycie: {@code java engine.OpeningBookBuilder [--plies 10] [--min 1] [--out book.wob] pliki...}
+ * @author Grzegorz Dżyg
+ */
+public class OpeningBookBuilder {
+
+    /** Domyślna liczba półruchów partii zapisywana w książce. */
+    public static final int DEFAULT_PLIES = 10;
+
+    private static final int WHITE_WON = 1;
+    private static final int DRAW = 0;
+    private static final int BLACK_WON = -1;
+    private static final GameState START = new GameState();
+
+    private final int plies;
+    /** hasz pozycji -> ruch -> {liczba partii, punkty gracza na ruchu} */
+    private final Map<Long, Map<Long, int[]>> positions = new HashMap<>();
+    private final GameState state = new GameState();
+    private final MoveList moves = new MoveList();
+    private int games;
+    private int rejected;
+
+    /**
+     * Tworzy pustą książkę.
+     * @param plies liczba początkowych półruchów każdej partii, które trafiają do książki
+     */
+    public OpeningBookBuilder(int plies){
+        this.plies = plies;
+    }
+    /**
+     * Wczytuje partie z pliku (PDN lub listy ruchów - patrz opis klasy).
+     * @param file plik z partiami
+     * @throws IOException błąd odczytu
+     */
+    public void read(Path file) throws IOException {
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        if(file.getFileName().toString().toLowerCase().endsWith(".pdn")){
+            readPdn(text);
+        }
+        else{
+            for(String line : text.split("\r?\n")){
+                List<String> game = new ArrayList<>();
+                int result = DRAW;
+                for(String token : line.trim().split("\\s+")){
+                    if(token.isEmpty()) continue;
+                    if(isResult(token)) result = parseResult(token);
+                    else game.add(token);
+                }
+                if(!game.isEmpty()) addGame(game, result);
+            }
+        }
+    }
+    /**
+     * Czyta partie w formacie PDN.
+     */
+    private void readPdn(String text){
+        List<String> game = new ArrayList<>();
+        int result = DRAW;
+        int i = 0;
+        while(i < text.length()){
+            char ch = text.charAt(i);
+            if(ch == '['){
+                // nowy nagłówek po ruchach zaczyna następną partię
+                if(!game.isEmpty()){
+                    addGame(game, result);
+                    game.clear();
+                    result = DRAW;
+                }
+                int end = text.indexOf(']', i);
+                if(end < 0) break;
+                String tag = text.substring(i + 1, end).trim();
+                if(tag.startsWith("Result")){
+                    int quote = tag.indexOf('"');
+                    if(quote >= 0) result = parseResult(tag.substring(quote + 1, tag.lastIndexOf('"')));
+                }
+                i = end + 1;
+            }
+            else if(ch == '{'){
+                int end = text.indexOf('}', i);
+                i = end < 0 ? text.length() : end + 1;
+            }
+            else if(ch == '('){
+                int depth = 0;
+                do{
+                    if(text.charAt(i) == '(') depth++;
+                    else if(text.charAt(i) == ')') depth--;
+                    i++;
+                }while(depth > 0 && i < text.length());
+            }
+            else if(Character.isWhitespace(ch)){
+                i++;
+            }
+            else{
+                int end = i;
+                while(end < text.length() && !Character.isWhitespace(text.charAt(end))
+                        && "[{(".indexOf(text.charAt(end)) < 0){
+                    end++;
+                }
+                String token = text.substring(i, end).replaceFirst("^\\d+\\.+", "");
+                i = end;
+                if(token.isEmpty()) continue;
+                if(isResult(token)){
+                    result = parseResult(token);
+                    if(!game.isEmpty()) addGame(game, result);
+                    game.clear();
+                    result = DRAW;
+                }
+                else{
+                    game.add(token.replaceAll("[!?]+$", ""));
+                }
+            }
+        }
+        if(!game.isEmpty()) addGame(game, result);
+    }
+    private static boolean isResult(String token){
+        switch(token){
+            case "2-0": case "1-0": case "0-2": case "0-1": case "1-1": case "1/2-1/2": case "*":
+                return true;
+            default:
+                return false;
+        }
+    }
+    private static int parseResult(String token){
+        switch(token){
+            case "2-0": case "1-0": return WHITE_WON;
+            case "0-2": case "0-1": return BLACK_WON;
+            default: return DRAW;
+        }
+    }
+    /**
+     * Rozgrywa początek partii i dopisuje jej ruchy do statystyk.
+     * @param game ruchy partii w notacji tekstowej
+     * @param result wynik z punktu widzenia białych (1, 0, -1)
+     */
+    private void addGame(List<String> game, int result){
+        games++;
+        state.copyFrom(START);
+        for(int ply = 0; ply < Math.min(plies, game.size()); ply++){
+            MoveGenerator.generate(state, moves);
+            int index = moves.find(game.get(ply));
+            if(index < 0){
+                rejected++;
+                return;
+            }
+            long move = moves.get(index);
+            int sign = state.getCurrentTurn() == Piece.Color.WHITE ? 1 : -1;
+            int[] stats = positions.computeIfAbsent(state.getHash(), hash -> new HashMap<>())
+                    .computeIfAbsent(move, key -> new int[2]);
+            stats[0]++;
+            stats[1] += 1 + result * sign;
+            state.apply(move);
+        }
+    }
+    /**
+     * Zapisuje książkę do pliku. Pomijane są ruchy zagrane w mniej niż {@code minGames} partiach.
+     * @param file plik wynikowy
+     * @param minGames minimalna liczba partii z danym ruchem
+     * @return liczba zapisanych rekordów
+     * @throws IOException błąd zapisu
+     */
+    public int write(Path file, int minGames) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        for(Map.Entry<Long, Map<Long, int[]>> position : positions.entrySet()){
+            for(Map.Entry<Long, int[]> move : position.getValue().entrySet()){
+                int[] stats = move.getValue();
+                if(stats[0] < minGames) continue;
+                records.add(new long[]{position.getKey(), move.getKey(), stats[0], stats[1]});
+            }
+        }
+        records.sort(Comparator.<long[]>comparingLong(record -> record[0]).thenComparingLong(record -> record[1]));
+        ByteBuffer out = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + records.size() * OpeningBook.RECORD_SIZE);
+        out.putInt(OpeningBook.MAGIC).putInt(records.size());
+        for(long[] record : records){
+            OpeningBook.writeRecord(out, record[0], record[1], (int) record[2], (int) record[3]);
+        }
+        out.flip();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            while(out.hasRemaining()) channel.write(out);
+        }
+        return records.size();
+    }
+    /**
+     * Buduje książkę z podanych plików z partiami.
+     * @param args opcje {@code --plies}, {@code --min}, {@code --out} i pliki wejściowe
+     * @throws IOException błąd odczytu lub zapisu
+     */
+    public static void main(String[] args) throws IOException {
+        int plies = DEFAULT_PLIES;
+        int minGames = 1;
+        Path out = Paths.get(OpeningBook.DEFAULT_FILE);
+        List<Path> inputs = new ArrayList<>();
+        for(int i = 0; i < args.length; i++){
+            switch(args[i]){
+                case "--plies": plies = Integer.parseInt(args[++i]); break;
+                case "--min": minGames = Integer.parseInt(args[++i]); break;
+                case "--out": out = Paths.get(args[++i]); break;
+                default: inputs.add(Paths.get(args[i]));
+            }
+        }
+        if(inputs.isEmpty()){
+            System.out.println("Użycie: java engine.OpeningBookBuilder [--plies 10] [--min 1] [--out book.wob] pliki...");
+            return;
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies);
+        for(Path input : inputs){
+            builder.read(input);
+        }
+        int records = builder.write(out, minGames);
+        System.out.println("Partie: " + builder.games + " (z błędnym ruchem: " + builder.rejected + "), pozycje: "
+                + builder.positions.size() + ", zapisane rekordy: " + records + " -> " + out);
+    }
+}
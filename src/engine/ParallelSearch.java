@@ -0,0 +1,158 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ExecutionException;
+import logging.Logger;
+import model.GameState;
+
+/**
+ * Wielowątkowe przeszukiwanie metodą Lazy SMP.
+ * Wszystkie wątki przeszukują tę samą pozycję, a wyniki wymieniają tylko przez
+ * wspólną tablicę transpozycji. Każdy wątek ma własny obiekt {@link Search}
+ * (własną planszę, stos cofania, bufory ruchów, ruchy "killer" i historię).
+ * Co drugi wątek pomocniczy szuka o półruch głębiej, żeby wątki nie powtarzały
+ * dokładnie tej samej pracy. Wynikiem jest ruch znaleziony przez wątek główny.
+ * @author Grzegorz Dżyg
+ */
+public class ParallelSearch {
+
+    private static final Logger LOG = Logger.get("search");
+    private final TranspositionTable table;
+    private final Search main;
+    private final Search[] helpers;
+    private final ExecutorService pool;
+
+    /**
+     * Tworzy przeszukiwanie wielowątkowe.
+     * @param threads liczba wątków (co najmniej 1; 1 oznacza zwykłe przeszukiwanie)
+     * @param hashMB rozmiar wspólnej tablicy transpozycji w megabajtach
+     */
+    public ParallelSearch(int threads, int hashMB){
+        this(threads, new TranspositionTable(hashMB));
+    }
+    /**
+     * Tworzy przeszukiwanie wielowątkowe z podaną tablicą transpozycji, którą
+     * może dzielić z innymi przeszukiwaniami (tablica nie używa blokad).
+     * @param threads liczba wątków (co najmniej 1; 1 oznacza zwykłe przeszukiwanie)
+     * @param table tablica transpozycji
+     */
+    public ParallelSearch(int threads, TranspositionTable table){
+        this.table = table;
+        main = new Search(table);
+        helpers = new Search[Math.max(0, threads - 1)];
+        for(int i = 0; i < helpers.length; i++){
+            helpers[i] = new Search(table);
+            helpers[i].setDepthOffset(i & 1);
+        }
+        pool = helpers.length == 0 ? null : Executors.newFixedThreadPool(helpers.length, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    /**
+     * Szuka najlepszego ruchu we wszystkich wątkach jednocześnie. Tablica
+     * transpozycji jest postarzana raz, przed uruchomieniem wątków.
+     * @param position pozycja (nie jest modyfikowana)
+     * @param timeMillis limit czasu w milisekundach
+     * @param maxDepth maksymalna głębokość wątku głównego
+     * @return najlepszy ruch lub 0 jeśli gracz nie ma ruchów
+     */
+    public long findBestMove(GameState position, long timeMillis, int maxDepth){
+        table.newSearch();
+        List<Future<?>> running = new ArrayList<>(helpers.length);
+        for(Search helper : helpers){
+            running.add(pool.submit(() -> helper.search(position, timeMillis, Search.MAX_DEPTH)));
+        }
+        long move = main.search(position, timeMillis, maxDepth);
+        stopHelpers(running);
+        return move;
+    }
+    /**
+     * Ustawia bazę końcówek we wszystkich wątkach.
+     * @param tablebase baza końcówek lub null
+     */
+    public void setTablebase(Tablebase tablebase){
+        main.setTablebase(tablebase);
+        for(Search helper : helpers){
+            helper.setTablebase(tablebase);
+        }
+    }
+    /**
+     * Zatrzymuje wątki pomocnicze i czeka na ich zakończenie. Wątek, który
+     * wystartował dopiero po wywołaniu stop(), jest zatrzymywany ponownie.
+     */
+    private void stopHelpers(List<Future<?>> running){
+        for(int i = 0; i < running.size(); i++){
+            while(true){
+                helpers[i].stop();
+                try{
+                    running.get(i).get(1, TimeUnit.MILLISECONDS);
+                    break;
+                }
+                catch(TimeoutException e){
+                    // wątek jeszcze pracuje - spróbuj ponownie
+                }
+                catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                catch(ExecutionException e){
+                    LOG.error("Błąd w wątku pomocniczym przeszukiwania", e.getCause());
+                    break;
+                }
+            }
+        }
+    }
+    /**
+     * Zwraca łączną liczbę węzłów odwiedzonych przez wszystkie wątki w ostatnim przeszukiwaniu.
+     * @return liczba węzłów
+     */
+    public long getNodes(){
+        long nodes = main.getNodes();
+        for(Search helper : helpers){
+            nodes += helper.getNodes();
+        }
+        return nodes;
+    }
+    /**
+     * Zwraca ocenę najlepszego ruchu (z wątku głównego).
+     * @return ocena z punktu widzenia gracza na ruchu
+     */
+    public int getScore(){
+        return main.getScore();
+    }
+    /**
+     * Zwraca głębokość ostatniej ukończonej iteracji wątku głównego.
+     * @return głębokość w półruchach
+     */
+    public int getCompletedDepth(){
+        return main.getCompletedDepth();
+    }
+    /**
+     * Zwraca liczbę wątków przeszukiwania.
+     * @return liczba wątków
+     */
+    public int getThreads(){
+        return helpers.length + 1;
+    }
+    /**
+     * Zwraca wspólną tablicę transpozycji.
+     * @return tablica transpozycji
+     */
+    public TranspositionTable getTable(){
+        return table;
+    }
+    /**
+     * Kończy wątki pomocnicze. Po wywołaniu obiekt nie może być dalej używany.
+     */
+    public void shutdown(){
+        if(pool != null) pool.shutdownNow();
+    }
+}
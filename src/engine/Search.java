@@ -0,0 +1,356 @@
+package engine;
+
+import java.util.Arrays;
+import model.GameState;
+import model.MoveGenerator;
+import model.MoveList;
+import model.Move;
+import model.Piece;
+
+/**
+ * Przeszukiwanie alfa-beta (negamax) z iteracyjnym pogłębianiem.
+ * Ruchy są porządkowane: najpierw najlepszy ruch z poprzedniej iteracji,
+ * potem bicia (więcej zbitych - wcześniej), ruchy "killer" i historia.
+ * Wyniki są zapisywane w tablicy transpozycji, która może być wspólna dla wielu obiektów Search.
+ * Gdy gracz na ruchu ma bicie, głębokość nie maleje do zera (bicia są
+ * wymuszone, więc ocena statyczna w środku wymiany byłaby błędna).
+ * Jeden obiekt Search służy jednemu wątkowi i nie alokuje pamięci w trakcie szukania.
+ * @author Grzegorz Dżyg
+ */
+public class Search {
+
+    /** Ocena wygranej (pomniejszana o liczbę półruchów do jej osiągnięcia). */
+    public static final int WIN = 30000;
+    /** Oceny powyżej tego progu oznaczają wymuszoną wygraną. */
+    public static final int WIN_THRESHOLD = WIN - 1000;
+    private static final int INFINITY = 32000;
+    /** Maksymalna liczba półruchów w ścieżce przeszukiwania. */
+    public static final int MAX_PLY = 128;
+    /** Maksymalna głębokość iteracyjnego pogłębiania. */
+    public static final int MAX_DEPTH = 64;
+
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 28;
+    private static final int KILLER_SCORE = 1 << 27;
+
+    private final TranspositionTable table;
+    private final GameState state = new GameState();
+    private final MoveList[] lists = new MoveList[MAX_PLY + 1];
+    private final int[][] orderScores = new int[MAX_PLY + 1][];
+    private final long[][] killers = new long[MAX_PLY + 1][2];
+    private final int[][] history = new int[32][32];
+    /** Hasze pozycji na bieżącej ścieżce (wykrywanie powtórzeń). */
+    private final long[] pathHashes = new long[MAX_PLY + 1];
+
+    private long deadline;
+    private volatile boolean stopped;
+    private long nodes;
+    private long rootBestMove;
+    private int rootBestScore;
+    private int completedDepth;
+    /** Przesunięcie głębokości kolejnych iteracji (pomocnicze wątki szukają nieco głębiej). */
+    private int depthOffset;
+    /** Baza końcówek lub null. */
+    private Tablebase tablebase;
+
+    /**
+     * Tworzy nowy obiekt przeszukiwania z własną tablicą transpozycji o domyślnym rozmiarze.
+     */
+    public Search(){
+        this(new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB));
+    }
+    /**
+     * Tworzy nowy obiekt przeszukiwania z buforami na wszystkie poziomy.
+     * @param table tablica transpozycji (może być współdzielona)
+     */
+    public Search(TranspositionTable table){
+        this.table = table;
+        for(int ply = 0; ply <= MAX_PLY; ply++){
+            lists[ply] = new MoveList();
+            orderScores[ply] = new int[256];
+        }
+    }
+    /**
+     * Szuka najlepszego ruchu w podanej pozycji.
+     * @param position pozycja (nie jest modyfikowana)
+     * @param timeMillis limit czasu w milisekundach
+     * @param maxDepth maksymalna głębokość (w półruchach)
+     * @return najlepszy ruch (patrz {@link Move}) lub 0 jeśli gracz nie ma ruchów
+     */
+    public long findBestMove(GameState position, long timeMillis, int maxDepth){
+        table.newSearch();
+        return search(position, timeMillis, maxDepth);
+    }
+    /**
+     * Szuka najlepszego ruchu bez postarzania tablicy transpozycji. Gdy tablicę
+     * dzieli kilka wątków, {@link ParallelSearch} postarza ją raz na cały ruch.
+     * @param position pozycja (nie jest modyfikowana)
+     * @param timeMillis limit czasu w milisekundach
+     * @param maxDepth maksymalna głębokość (w półruchach)
+     * @return najlepszy ruch lub 0 jeśli gracz nie ma ruchów
+     */
+    long search(GameState position, long timeMillis, int maxDepth){
+        state.copyFrom(position);
+        stopped = false;
+        nodes = 0;
+        completedDepth = 0;
+        deadline = System.nanoTime() + timeMillis * 1_000_000L;
+        for(long[] slots : killers){
+            slots[0] = 0;
+            slots[1] = 0;
+        }
+        for(int[] row : history){
+            Arrays.fill(row, 0);
+        }
+
+        MoveList root = lists[0];
+        int count = MoveGenerator.generate(state, root);
+        rootBestMove = count > 0 ? root.get(0) : 0;
+        rootBestScore = 0;
+        if(count <= 1) return rootBestMove;
+
+        for(int depth = 1; depth <= Math.min(maxDepth, MAX_DEPTH); depth++){
+            int score = searchRoot(Math.min(depth + depthOffset, MAX_DEPTH));
+            if(stopped) break;
+            rootBestScore = score;
+            completedDepth = depth;
+            // wygrana znaleziona - głębsze szukanie jej nie poprawi
+            if(Math.abs(score) >= WIN_THRESHOLD) break;
+        }
+        return rootBestMove;
+    }
+    /**
+     * Ustawia przesunięcie głębokości iteracji. Używane przez {@link ParallelSearch},
+     * aby wątki pomocnicze nie przeszukiwały dokładnie tych samych drzew.
+     * @param depthOffset liczba półruchów dodawana do głębokości każdej iteracji
+     */
+    void setDepthOffset(int depthOffset){
+        this.depthOffset = depthOffset;
+    }
+    /**
+     * Ustawia bazę końcówek. Pozycje, które w niej są, nie są dalej przeszukiwane -
+     * ich ocena to dokładny wynik z bazy.
+     * @param tablebase baza końcówek lub null
+     */
+    public void setTablebase(Tablebase tablebase){
+        this.tablebase = tablebase;
+    }
+    /**
+     * Przerywa trwające przeszukiwanie (może być wywołane z innego wątku).
+     */
+    public void stop(){
+        stopped = true;
+    }
+    /**
+     * Zwraca liczbę odwiedzonych węzłów w ostatnim przeszukiwaniu.
+     * @return liczba węzłów
+     */
+    public long getNodes(){
+        return nodes;
+    }
+    /**
+     * Zwraca ocenę najlepszego ruchu z ostatniej ukończonej iteracji.
+     * @return ocena z punktu widzenia gracza na ruchu
+     */
+    public int getScore(){
+        return rootBestScore;
+    }
+    /**
+     * Zwraca tablicę transpozycji używaną przez to przeszukiwanie.
+     * @return tablica transpozycji
+     */
+    public TranspositionTable getTable(){
+        return table;
+    }
+    /**
+     * Zwraca głębokość ostatniej ukończonej iteracji.
+     * @return głębokość w półruchach
+     */
+    public int getCompletedDepth(){
+        return completedDepth;
+    }
+
+    private int searchRoot(int depth){
+        MoveList moves = lists[0];
+        int count = moves.size();
+        // najlepszy ruch z poprzedniej iteracji idzie na początek
+        int bestIndex = moves.indexOf(rootBestMove);
+        if(bestIndex > 0) moves.swap(0, bestIndex);
+        pathHashes[0] = state.getHash();
+
+        int alpha = -INFINITY;
+        long best = moves.get(0);
+        for(int i = 0; i < count; i++){
+            long move = moves.get(i);
+            state.apply(move);
+            int score;
+            if(i == 0){
+                score = -search(depth - 1, 1, -INFINITY, -alpha);
+            }
+            else{
+                score = -search(depth - 1, 1, -alpha - 1, -alpha);
+                if(score > alpha && !stopped){
+                    score = -search(depth - 1, 1, -INFINITY, -alpha);
+                }
+            }
+            state.undo(move);
+            if(stopped) break;
+            if(score > alpha){
+                alpha = score;
+                best = move;
+            }
+        }
+        if(!stopped) rootBestMove = best;
+        return alpha;
+    }
+
+    private int search(int depth, int ply, int alpha, int beta){
+        if((++nodes & 1023) == 0 && System.nanoTime() > deadline){
+            stopped = true;
+        }
+        if(stopped) return 0;
+
+        long hash = state.getHash();
+        pathHashes[ply] = hash;
+        // powtórzenie pozycji na ścieżce traktujemy jak remis
+        for(int i = ply - 2; i >= 0; i -= 2){
+            if(pathHashes[i] == hash) return 0;
+        }
+        if(tablebase != null
+                && Integer.bitCount(state.getWhitePieces() | state.getBlackPieces()) <= tablebase.getMaxPieces()){
+            int value = tablebase.probe(state);
+            if(value != Tablebase.NOT_FOUND) return tablebaseScore(value, ply);
+        }
+
+        int originalAlpha = alpha;
+        long entry = table.probe(hash);
+        int hashMoveKey = 0;
+        if(entry != 0){
+            hashMoveKey = TranspositionTable.moveKey(entry);
+            if(TranspositionTable.depth(entry) >= depth){
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if(bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)){
+                    return score;
+                }
+            }
+        }
+
+        MoveList moves = lists[ply];
+        int count = MoveGenerator.generate(state, moves);
+        Piece.Color opponent = state.getCurrentTurn() == Piece.Color.WHITE ? Piece.Color.BLACK : Piece.Color.WHITE;
+        // koniec gry: któryś z graczy nie ma ruchu (jak w GameState.isGameOver/getWinner)
+        boolean opponentCanMove = state.hasAnyValidMoves(opponent);
+        if(count == 0) return opponentCanMove ? -(WIN - ply) : 0;
+        if(!opponentCanMove) return WIN - ply;
+
+        boolean captures = Move.isCapture(moves.get(0));
+        if(ply >= MAX_PLY - 1 || (depth <= 0 && !captures)){
+            return Evaluator.evaluate(state);
+        }
+
+        scoreMoves(moves, count, ply, hashMoveKey);
+        long best = 0;
+        for(int i = 0; i < count; i++){
+            long move = pickNext(moves, count, i, ply);
+            state.apply(move);
+            int score = -search(depth - 1, ply + 1, -beta, -alpha);
+            state.undo(move);
+            if(stopped) return 0;
+            if(score > alpha){
+                alpha = score;
+                best = move;
+                if(alpha >= beta){
+                    if(!Move.isCapture(move)){
+                        storeKiller(ply, move);
+                        history[Move.from(move)][Move.to(move)] += depth * depth;
+                    }
+                    table.store(hash, depth, TranspositionTable.LOWER, toTable(alpha, ply), move);
+                    return alpha;
+                }
+            }
+        }
+        table.store(hash, depth, alpha > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER,
+                toTable(alpha, ply), best);
+        return alpha;
+    }
+    /**
+     * Zamienia wartość z bazy końcówek na ocenę: wygrana za n półruchów
+     * jest oceniana tak samo jak wygrana znaleziona przeszukiwaniem.
+     */
+    private static int tablebaseScore(int value, int ply){
+        int score = Math.max(WIN - ply - Tablebase.distance(value), WIN_THRESHOLD + 1);
+        switch(Tablebase.result(value)){
+            case Tablebase.WIN: return score;
+            case Tablebase.LOSS: return -score;
+            default: return 0;
+        }
+    }
+    /**
+     * Zamienia ocenę wygranej na odległość od bieżącej pozycji (niezależną od ścieżki).
+     */
+    private static int toTable(int score, int ply){
+        if(score >= WIN_THRESHOLD) return score + ply;
+        if(score <= -WIN_THRESHOLD) return score - ply;
+        return score;
+    }
+    private static int fromTable(int score, int ply){
+        if(score >= WIN_THRESHOLD) return score - ply;
+        if(score <= -WIN_THRESHOLD) return score + ply;
+        return score;
+    }
+
+    /**
+     * Liczy oceny porządkujące dla wszystkich ruchów na danym poziomie.
+     */
+    private void scoreMoves(MoveList moves, int count, int ply, int hashMoveKey){
+        if(orderScores[ply].length < count){
+            orderScores[ply] = new int[count * 2];
+        }
+        int[] scores = orderScores[ply];
+        for(int i = 0; i < count; i++){
+            long move = moves.get(i);
+            int score;
+            if(hashMoveKey != 0 && TranspositionTable.fingerprint(move) == hashMoveKey){
+                score = HASH_MOVE_SCORE;
+            }
+            else if(Move.isCapture(move)){
+                int captured = Move.captured(move);
+                score = CAPTURE_SCORE + Integer.bitCount(captured) * 16 + (Move.isPromotion(move) ? 8 : 0);
+            }
+            else if(move == killers[ply][0] || move == killers[ply][1]){
+                score = KILLER_SCORE;
+            }
+            else{
+                score = Math.min(history[Move.from(move)][Move.to(move)], KILLER_SCORE - 1)
+                        + (Move.isPromotion(move) ? KILLER_SCORE / 2 : 0);
+            }
+            scores[i] = score;
+        }
+    }
+    /**
+     * Przenosi na pozycję {@code index} ruch o najwyższej ocenie spośród pozostałych.
+     */
+    private long pickNext(MoveList moves, int count, int index, int ply){
+        int[] scores = orderScores[ply];
+        int best = index;
+        for(int i = index + 1; i < count; i++){
+            if(scores[i] > scores[best]) best = i;
+        }
+        if(best != index){
+            moves.swap(index, best);
+            int score = scores[index];
+            scores[index] = scores[best];
+            scores[best] = score;
+        }
+        return moves.get(index);
+    }
+    private void storeKiller(int ply, long move){
+        if(killers[ply][0] != move){
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+}
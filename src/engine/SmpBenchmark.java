@@ -0,0 +1,122 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import model.GameState;
+
+/**
+ * Pomiar skalowania przeszukiwania wielowątkowego ({@link ParallelSearch}).
+ * Dla każdej liczby wątków przeszukuje zestaw pozycji do stałej głębokości
+ * i wypisuje czas dojścia do tej głębokości, liczbę węzłów na sekundę
+ * oraz przyspieszenie względem jednego wątku.
+ * <p>
+ * Przed pomiarem nieliczone przebiegi rozgrzewają JIT - inaczej pierwsza
+ * liczba wątków płaci za kompilację i zaniża przyspieszenie pozostałych.
+ * Przeszukiwanie wielowątkowe nie jest powtarzalne, więc każda liczba wątków
+ * jest mierzona {@link #RUNS} razy, a wypisywany jest przebieg o medianie czasu.
+ * <p>
+ * Użycie: {@code java engine.SmpBenchmark [głębokość] [wątki...]},
+ * domyślnie głębokość 16 i wątki 1 2 4 8.
+ * @author Grzegorz Dżyg
+ */
+public class SmpBenchmark {
+
+    private static final String[] POSITIONS = {
+        // pozycja początkowa
+        ".w.w.w.w\n" +
+        "w.w.w.w.\n" +
+        ".w.w.w.w\n" +
+        "........\n" +
+        "........\n" +
+        "b.b.b.b.\n" +
+        ".b.b.b.b\n" +
+        "b.b.b.b.\n" +
+        "TURN:WHITE",
+        // środek gry
+        ".w.w.w.w\n" +
+        "w.w...w.\n" +
+        ".w...w.w\n" +
+        "..w.....\n" +
+        ".b.b....\n" +
+        "b...b.b.\n" +
+        ".b.b...b\n" +
+        "b.b.b.b.\n" +
+        "TURN:WHITE",
+        // środek gry, mniej pionków
+        ".w.w.w..\n" +
+        "........\n" +
+        ".....w.b\n" +
+        "w.w.....\n" +
+        ".......b\n" +
+        "..b.....\n" +
+        "........\n" +
+        "..b.b.b.\n" +
+        "TURN:WHITE",
+    };
+    private static final int HASH_MB = 64;
+    private static final long NO_TIME_LIMIT = 3_600_000;
+    /** Liczba nieliczonych przebiegów (jednym wątkiem i największą liczbą wątków) przed pomiarem. */
+    private static final int WARMUP_RUNS = 2;
+    /** Liczba pomiarów każdej liczby wątków. */
+    private static final int RUNS = 5;
+
+    /**
+     * Uruchamia pomiar.
+     * @param args głębokość i lista liczby wątków
+     */
+    public static void main(String[] args){
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int[] threadCounts = {1, 2, 4, 8};
+        if(args.length > 1){
+            threadCounts = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++){
+                threadCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("Procesory: " + Runtime.getRuntime().availableProcessors() + ", głębokość: " + depth
+                + ", pomiary: " + RUNS + " (mediana)");
+        int maxThreads = Arrays.stream(threadCounts).max().getAsInt();
+        for(int i = 0; i < WARMUP_RUNS; i++){
+            searchAll(1, depth);
+            searchAll(maxThreads, depth);
+        }
+        long[] base = measure(1, depth);
+        System.out.println("wątki  czas[ms]       węzły    węzły/s  przyspieszenie");
+        for(int threads : threadCounts){
+            long[] result = threads == 1 ? base : measure(threads, depth);
+            System.out.printf("%5d %9.0f %11d %10.0f %14.2fx%n", threads, result[0] / 1e6, result[1],
+                    result[1] / (result[0] / 1e9), (double) base[0] / result[0]);
+        }
+    }
+    /**
+     * Mierzy {@link #RUNS} przebiegów.
+     * @return czas w nanosekundach i liczba węzłów przebiegu o medianie czasu
+     */
+    private static long[] measure(int threads, int depth){
+        long[][] runs = new long[RUNS][];
+        for(int i = 0; i < RUNS; i++){
+            runs[i] = searchAll(threads, depth);
+        }
+        Arrays.sort(runs, Comparator.comparingLong(run -> run[0]));
+        return runs[RUNS / 2];
+    }
+    /**
+     * Przeszukuje wszystkie pozycje nowym {@link ParallelSearch}, od pustej tablicy transpozycji.
+     * @return łączny czas w nanosekundach i liczba węzłów
+     */
+    private static long[] searchAll(int threads, int depth){
+        ParallelSearch search = new ParallelSearch(threads, HASH_MB);
+        long totalNanos = 0;
+        long totalNodes = 0;
+        for(String text : POSITIONS){
+            search.getTable().clear();
+            GameState position = GameState.fromString(text);
+            long start = System.nanoTime();
+            search.findBestMove(position, NO_TIME_LIMIT, depth);
+            totalNanos += System.nanoTime() - start;
+            totalNodes += search.getNodes();
+        }
+        search.shutdown();
+        return new long[]{totalNanos, totalNodes};
+    }
+}
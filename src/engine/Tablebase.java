@@ -0,0 +1,218 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import model.Bitboard;
+import model.GameState;
+import model.Piece;
+
+/**
+ * Baza końcówek: dla każdej pozycji z najwyżej {@link #getMaxPieces()} pionkami
+ * zawiera wynik (wygrana, przegrana, remis) z punktu widzenia gracza na ruchu
+ * oraz liczbę półruchów do końca gry przy najlepszej grze obu stron.
+ * <p>
+ * Plik tworzy {@link TablebaseGenerator}. Tablice są mapowane do pamięci
+ * ({@link MappedByteBuffer}), więc odczyt nie kopiuje danych na stertę,
+ * a system operacyjny wczytuje tylko używane strony pliku.
+ * Odczyty nie zmieniają stanu bufora, więc jeden obiekt może być używany przez wiele wątków.
+ * <p>
+ * Pozycja jest zawsze sprowadzana do "białe na ruchu": gdy ruch mają czarne,
+ * plansza jest obracana o 180 stopni (pole s przechodzi na 31 - s) i kolory się zamieniają.
+ * Tablica jest wybierana przez sygnaturę (pionki i damki gracza na ruchu oraz
+ * przeciwnika), a indeks w tablicy to numer kombinacji pól każdej z czterech grup.
+ * <p>
+ * Format pliku: {@code "WTB1"}, liczba pionków, liczba tablic, katalog
+ * (sygnatura, położenie, liczba wpisów) i dane - po 16 bitów na pozycję:
+ * bity 14-15 wynik, bity 0-13 odległość. Wartość 0 oznacza pozycję niemożliwą.
+ * @author Grzegorz Dżyg
+ */
+public class Tablebase {
+
+    /** Domyślna nazwa pliku bazy końcówek. */
+    public static final String DEFAULT_FILE = "tablebase.wtb";
+
+    /** Gracz na ruchu wygrywa. */
+    public static final int WIN = 1;
+    /** Gracz na ruchu przegrywa. */
+    public static final int LOSS = 2;
+    /** Pozycja remisowa. */
+    public static final int DRAW = 3;
+    /** Pozycji nie ma w bazie (za dużo pionków lub pozycja niemożliwa). */
+    public static final int NOT_FOUND = -1;
+
+    static final int MAGIC = 0x57544231; // "WTB1"
+    static final int HEADER_SIZE = 12;
+    static final int DIRECTORY_ENTRY_SIZE = 20;
+    static final int MAX_DISTANCE = 0x3FFF;
+    private static final int RESULT_SHIFT = 14;
+
+    /** Symbol Newtona C(n, k) dla n = 0..32. */
+    private static final long[][] BINOMIAL = new long[Bitboard.SQUARES + 1][Bitboard.SQUARES + 1];
+    static {
+        for(int n = 0; n <= Bitboard.SQUARES; n++){
+            BINOMIAL[n][0] = 1;
+            for(int k = 1; k <= n; k++){
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    private final int maxPieces;
+    /** Numer tablicy dla sygnatury lub -1. */
+    private final int[] tableBySignature = new int[1 << 16];
+    private final MappedByteBuffer[] tables;
+
+    private Tablebase(int maxPieces, MappedByteBuffer[] tables){
+        this.maxPieces = maxPieces;
+        this.tables = tables;
+    }
+    /**
+     * Otwiera plik bazy końcówek i mapuje jego tablice do pamięci.
+     * @param file plik utworzony przez {@link TablebaseGenerator}
+     * @return baza końcówek
+     * @throws IOException błąd odczytu lub nieprawidłowy format pliku
+     */
+    public static Tablebase open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if(header.remaining() < HEADER_SIZE || header.getInt() != MAGIC){
+                throw new IOException("To nie jest plik bazy końcówek: " + file);
+            }
+            int maxPieces = header.getInt();
+            int count = header.getInt();
+            ByteBuffer directory = ByteBuffer.allocate(count * DIRECTORY_ENTRY_SIZE);
+            channel.read(directory, HEADER_SIZE);
+            directory.flip();
+            Tablebase tablebase = new Tablebase(maxPieces, new MappedByteBuffer[count]);
+            Arrays.fill(tablebase.tableBySignature, -1);
+            for(int i = 0; i < count; i++){
+                int signature = directory.getInt();
+                long offset = directory.getLong();
+                long entries = directory.getLong();
+                tablebase.tableBySignature[signature & 0xFFFF] = i;
+                tablebase.tables[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, entries * 2);
+            }
+            return tablebase;
+        }
+    }
+    /**
+     * Zwraca największą liczbę pionków na planszy, dla której baza zawiera pozycje.
+     * @return liczba pionków obu graczy
+     */
+    public int getMaxPieces(){
+        return maxPieces;
+    }
+    /**
+     * Odczytuje wartość pozycji.
+     * @param state pozycja
+     * @return wartość (patrz {@link #result(int)} i {@link #distance(int)}) lub {@link #NOT_FOUND}
+     */
+    public int probe(GameState state){
+        int white = state.getWhitePieces();
+        int black = state.getBlackPieces();
+        int kings = state.getKings();
+        if(state.getCurrentTurn() == Piece.Color.WHITE){
+            return probe(white, black, kings);
+        }
+        return probe(Integer.reverse(black), Integer.reverse(white), Integer.reverse(kings));
+    }
+    /**
+     * Odczytuje wartość pozycji sprowadzonej do "białe na ruchu".
+     */
+    int probe(int own, int opponent, int kings){
+        if(own == 0 || opponent == 0 || Integer.bitCount(own | opponent) > maxPieces) return NOT_FOUND;
+        int table = tableBySignature[signature(own, opponent, kings)];
+        if(table < 0) return NOT_FOUND;
+        int value = tables[table].getChar((int) index(own, opponent, kings) * 2);
+        return value == 0 ? NOT_FOUND : value;
+    }
+    /**
+     * Zwraca wynik zapisany w wartości pozycji.
+     * @param value wartość z {@link #probe(GameState)}
+     * @return {@link #WIN}, {@link #LOSS} lub {@link #DRAW}
+     */
+    public static int result(int value){
+        return value >>> RESULT_SHIFT;
+    }
+    /**
+     * Zwraca liczbę półruchów do końca gry (dla remisu 0).
+     * @param value wartość z {@link #probe(GameState)}
+     * @return liczba półruchów
+     */
+    public static int distance(int value){
+        return value & MAX_DISTANCE;
+    }
+    static char value(int result, int distance){
+        return (char) (result << RESULT_SHIFT | Math.min(distance, MAX_DISTANCE));
+    }
+
+    /**
+     * Sygnatura tablicy: po 4 bity na liczbę pionków i damek gracza na ruchu,
+     * a potem pionków i damek przeciwnika.
+     */
+    static int signature(int ownMen, int ownKings, int opponentMen, int opponentKings){
+        return ownMen | ownKings << 4 | opponentMen << 8 | opponentKings << 12;
+    }
+    static int signature(int own, int opponent, int kings){
+        return signature(Integer.bitCount(own & ~kings), Integer.bitCount(own & kings),
+                Integer.bitCount(opponent & ~kings), Integer.bitCount(opponent & kings));
+    }
+    /**
+     * Zwraca liczbę wpisów tablicy o podanej sygnaturze.
+     */
+    static long size(int signature){
+        long size = 1;
+        for(int shift = 0; shift < 16; shift += 4){
+            size *= BINOMIAL[Bitboard.SQUARES][(signature >>> shift) & 0xF];
+        }
+        return size;
+    }
+    /**
+     * Zwraca indeks pozycji w jej tablicy.
+     */
+    static long index(int own, int opponent, int kings){
+        long index = rank(own & ~kings);
+        index = index * BINOMIAL[Bitboard.SQUARES][Integer.bitCount(own & kings)] + rank(own & kings);
+        index = index * BINOMIAL[Bitboard.SQUARES][Integer.bitCount(opponent & ~kings)] + rank(opponent & ~kings);
+        index = index * BINOMIAL[Bitboard.SQUARES][Integer.bitCount(opponent & kings)] + rank(opponent & kings);
+        return index;
+    }
+    /**
+     * Liczba kombinacji pól danej grupy (kolejność kolex).
+     */
+    static long combinations(int count){
+        return BINOMIAL[Bitboard.SQUARES][count];
+    }
+    /**
+     * Numer zbioru pól wśród wszystkich zbiorów tej samej wielkości.
+     */
+    static long rank(int bits){
+        long rank = 0;
+        for(int k = 1; bits != 0; k++){
+            rank += BINOMIAL[Integer.numberOfTrailingZeros(bits)][k];
+            bits &= bits - 1;
+        }
+        return rank;
+    }
+    /**
+     * Zbiór pól o podanym numerze - odwrotność {@link #rank(int)}.
+     */
+    static int unrank(long rank, int count){
+        int bits = 0;
+        int square = Bitboard.SQUARES - 1;
+        for(int k = count; k > 0; k--){
+            while(BINOMIAL[square][k] > rank) square--;
+            rank -= BINOMIAL[square][k];
+            bits |= 1 << square;
+            square--;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,278 @@
+package engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import model.Bitboard;
+import model.GameState;
+import model.MoveGenerator;
+import model.MoveList;
+import model.Piece;
+
+/**
+ * Generator bazy końcówek metodą analizy wstecznej.
+ * <p>
+ * Tablice są liczone od najmniejszej liczby pionków, a przy tej samej liczbie -
+ * od najmniejszej liczby zwykłych pionków, bo bicie zmniejsza liczbę pionków,
+ * a promocja zamienia pionek w damkę. Dzięki temu każdy ruch prowadzi albo do
+ * tablicy już policzonej, albo do tej samej pary tablic (sygnatura i sygnatura
+ * z zamienionymi stronami), którą liczymy razem.
+ * <p>
+ * W obrębie pary powtarzamy przebiegi po wszystkich pozycjach aż do braku zmian:
+ * pozycja jest wygrana, gdy któryś ruch prowadzi do przegranej przeciwnika
+ * (najkrótsza), a przegrana, gdy wszystkie ruchy prowadzą do wygranej przeciwnika
+ * (najdłuższa). Pozycje nierozstrzygnięte po ostatnim przebiegu są remisowe.
+ * Koniec gry jest rozstrzygany tak jak w {@link GameState#isGameOver()} i
+ * {@link GameState#getWinner()}: przegrywa gracz bez ruchu, jeśli przeciwnik
+ * ruch ma, a gdy obaj go nie mają - remis.
+ * <p>
+ * Użycie: {@code java engine.TablebaseGenerator [liczba_pionków=4] [plik]}
+ * @author Grzegorz Dżyg
+ */
+public class TablebaseGenerator {
+
+    /** Największa obsługiwana liczba pionków (rozmiar tablicy musi zmieścić się w int). */
+    public static final int MAX_PIECES = 6;
+
+    private final int maxPieces;
+    /** Wartości pozycji dla każdej sygnatury (null - tablica jeszcze nie liczona). */
+    private final char[][] values = new char[1 << 16][];
+    private final List<Integer> signatures = new ArrayList<>();
+    private final GameState state = new GameState();
+    private final MoveList moves = new MoveList();
+
+    /**
+     * Tworzy generator bazy dla pozycji z najwyżej podaną liczbą pionków.
+     * @param maxPieces liczba pionków obu graczy (2 - {@link #MAX_PIECES})
+     */
+    public TablebaseGenerator(int maxPieces){
+        if(maxPieces < 2 || maxPieces > MAX_PIECES){
+            throw new IllegalArgumentException("Liczba pionków musi być z zakresu 2-" + MAX_PIECES);
+        }
+        this.maxPieces = maxPieces;
+    }
+    /**
+     * Liczy wszystkie tablice i wypisuje ich statystyki.
+     */
+    public void generate(){
+        for(int total = 2; total <= maxPieces; total++){
+            for(int men = 0; men <= total; men++){
+                for(int ownMen = 0; ownMen <= men; ownMen++){
+                    for(int ownKings = 0; ownKings <= total - men; ownKings++){
+                        int opponentMen = men - ownMen;
+                        int opponentKings = total - men - ownKings;
+                        if(ownMen + ownKings == 0 || opponentMen + opponentKings == 0) continue;
+                        int signature = Tablebase.signature(ownMen, ownKings, opponentMen, opponentKings);
+                        if(values[signature] != null) continue;
+                        int swapped = Tablebase.signature(opponentMen, opponentKings, ownMen, ownKings);
+                        solve(signature, swapped);
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * Liczy parę tablic, między którymi przechodzą ruchy bez bicia i promocji.
+     */
+    private void solve(int signature, int swapped){
+        long start = System.currentTimeMillis();
+        int[] group = signature == swapped ? new int[]{signature} : new int[]{signature, swapped};
+        for(int s : group){
+            long size = Tablebase.size(s);
+            if(size > Integer.MAX_VALUE / 2){
+                throw new IllegalStateException("Tablica " + name(s) + " jest za duża: " + size);
+            }
+            values[s] = new char[(int) size];
+            signatures.add(s);
+        }
+        int passes = 0;
+        boolean changed = true;
+        while(changed){
+            changed = false;
+            for(int s : group){
+                changed |= pass(s, false);
+            }
+            passes++;
+        }
+        for(int s : group){
+            pass(s, true);
+            printStatistics(s, passes, System.currentTimeMillis() - start);
+        }
+    }
+    /**
+     * Jeden przebieg po wszystkich możliwych pozycjach tablicy.
+     * @param finish true - nierozstrzygnięte pozycje zostają oznaczone jako remis
+     * @return true jeśli zmieniła się wartość którejkolwiek pozycji
+     */
+    private boolean pass(int signature, boolean finish){
+        char[] table = values[signature];
+        int ownMenCount = signature & 0xF;
+        int ownKingsCount = (signature >>> 4) & 0xF;
+        int opponentMenCount = (signature >>> 8) & 0xF;
+        int opponentKingsCount = (signature >>> 12) & 0xF;
+        long n0 = Tablebase.combinations(ownMenCount);
+        long n1 = Tablebase.combinations(ownKingsCount);
+        long n2 = Tablebase.combinations(opponentMenCount);
+        long n3 = Tablebase.combinations(opponentKingsCount);
+        boolean changed = false;
+        int index = 0;
+        for(long r0 = 0; r0 < n0; r0++){
+            int ownMen = Tablebase.unrank(r0, ownMenCount);
+            // pionek białych na ostatnim wierszu byłby już damką
+            if((ownMen & Bitboard.LAST_ROW) != 0){
+                index += (int) (n1 * n2 * n3);
+                continue;
+            }
+            for(long r1 = 0; r1 < n1; r1++){
+                int ownKings = Tablebase.unrank(r1, ownKingsCount);
+                if((ownKings & ownMen) != 0){
+                    index += (int) (n2 * n3);
+                    continue;
+                }
+                int own = ownMen | ownKings;
+                for(long r2 = 0; r2 < n2; r2++){
+                    int opponentMen = Tablebase.unrank(r2, opponentMenCount);
+                    if((opponentMen & own) != 0 || (opponentMen & Bitboard.FIRST_ROW) != 0){
+                        index += (int) n3;
+                        continue;
+                    }
+                    for(long r3 = 0; r3 < n3; r3++, index++){
+                        int opponentKings = Tablebase.unrank(r3, opponentKingsCount);
+                        if((opponentKings & (own | opponentMen)) != 0) continue;
+                        if(finish){
+                            if(table[index] == 0) table[index] = Tablebase.value(Tablebase.DRAW, 0);
+                            continue;
+                        }
+                        char value = evaluate(own, opponentMen | opponentKings, ownKings | opponentKings);
+                        if(value != table[index]){
+                            table[index] = value;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+    /**
+     * Wylicza wartość pozycji (białe na ruchu) z wartości pozycji po każdym ruchu.
+     * @return wartość lub 0, jeśli pozycja nie jest jeszcze rozstrzygnięta
+     */
+    private char evaluate(int own, int opponent, int kings){
+        state.setPosition(own, opponent, kings, Piece.Color.WHITE);
+        int count = MoveGenerator.generate(state, moves);
+        boolean opponentCanMove = state.hasAnyValidMoves(Piece.Color.BLACK);
+        if(count == 0) return Tablebase.value(opponentCanMove ? Tablebase.LOSS : Tablebase.DRAW, 0);
+        if(!opponentCanMove) return Tablebase.value(Tablebase.WIN, 0);
+
+        int shortestWin = Integer.MAX_VALUE;
+        int longestLoss = 0;
+        boolean allLost = true;
+        for(int i = 0; i < count; i++){
+            long move = moves.get(i);
+            state.apply(move);
+            int child = childValue();
+            state.undo(move);
+            int result = Tablebase.result(child);
+            if(result == Tablebase.LOSS){
+                shortestWin = Math.min(shortestWin, Tablebase.distance(child));
+            }
+            else if(result == Tablebase.WIN){
+                longestLoss = Math.max(longestLoss, Tablebase.distance(child));
+            }
+            else{
+                allLost = false; // remis albo jeszcze nieznana
+            }
+        }
+        if(shortestWin != Integer.MAX_VALUE) return Tablebase.value(Tablebase.WIN, shortestWin + 1);
+        if(allLost) return Tablebase.value(Tablebase.LOSS, longestLoss + 1);
+        return 0;
+    }
+    /**
+     * Zwraca wartość pozycji po ruchu białych (czarne na ruchu) z punktu widzenia czarnych.
+     */
+    private int childValue(){
+        int own = Integer.reverse(state.getBlackPieces());
+        int opponent = Integer.reverse(state.getWhitePieces());
+        int kings = Integer.reverse(state.getKings());
+        if(own == 0){
+            // czarne nie mają pionków, więc nie mają ruchu
+            return Tablebase.value(state.hasAnyValidMoves(Piece.Color.WHITE) ? Tablebase.LOSS : Tablebase.DRAW, 0);
+        }
+        return values[Tablebase.signature(own, opponent, kings)][(int) Tablebase.index(own, opponent, kings)];
+    }
+    private void printStatistics(int signature, int passes, long millis){
+        char[] table = values[signature];
+        long positions = 0, wins = 0, losses = 0, draws = 0;
+        int longest = 0;
+        for(char value : table){
+            if(value == 0) continue;
+            positions++;
+            switch(Tablebase.result(value)){
+                case Tablebase.WIN:
+                    wins++;
+                    longest = Math.max(longest, Tablebase.distance(value));
+                    break;
+                case Tablebase.LOSS:
+                    losses++;
+                    longest = Math.max(longest, Tablebase.distance(value));
+                    break;
+                default:
+                    draws++;
+            }
+        }
+        System.out.printf("%-12s pozycje %10d  wygrane %10d  przegrane %10d  remisy %10d  najdłuższa %4d  przebiegi %3d  %6d ms%n",
+                name(signature), positions, wins, losses, draws, longest, passes, millis);
+    }
+    /**
+     * Opis sygnatury, np. "mK-k": pionki (m) i damki (K) gracza na ruchu oraz przeciwnika.
+     */
+    private static String name(int signature){
+        return "m".repeat(signature & 0xF) + "K".repeat((signature >>> 4) & 0xF) + "-"
+                + "m".repeat((signature >>> 8) & 0xF) + "K".repeat((signature >>> 12) & 0xF);
+    }
+    /**
+     * Zapisuje policzone tablice do pliku (format opisany w {@link Tablebase}).
+     * @param file plik wynikowy
+     * @throws IOException błąd zapisu
+     */
+    public void write(Path file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))){
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(maxPieces);
+            out.writeInt(signatures.size());
+            long offset = Tablebase.HEADER_SIZE + (long) signatures.size() * Tablebase.DIRECTORY_ENTRY_SIZE;
+            for(int signature : signatures){
+                out.writeInt(signature);
+                out.writeLong(offset);
+                out.writeLong(values[signature].length);
+                offset += values[signature].length * 2L;
+            }
+            for(int signature : signatures){
+                for(char value : values[signature]){
+                    out.writeChar(value);
+                }
+            }
+        }
+    }
+    /**
+     * Generuje bazę końcówek i zapisuje ją do pliku.
+     * @param args liczba pionków (domyślnie 4) i nazwa pliku (domyślnie {@value Tablebase#DEFAULT_FILE})
+     * @throws IOException błąd zapisu
+     */
+    public static void main(String[] args) throws IOException {
+        int pieces = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        Path file = Paths.get(args.length > 1 ? args[1] : Tablebase.DEFAULT_FILE);
+        long start = System.currentTimeMillis();
+        TablebaseGenerator generator = new TablebaseGenerator(pieces);
+        generator.generate();
+        generator.write(file);
+        System.out.println("Zapisano " + file + " (" + Files.size(file) / 1024 + " KB) w "
+                + (System.currentTimeMillis() - start) / 1000 + " s");
+    }
+}
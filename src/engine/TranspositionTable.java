@@ -0,0 +1,197 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tablica transpozycji o stałym rozmiarze, indeksowana haszem pozycji.
+ * Każdy wpis to dwie liczby long w jednej tablicy: {@code hasz ^ dane} oraz {@code dane}.
+ * Wpis jest uznawany za poprawny tylko wtedy, gdy XOR obu słów daje hasz pozycji,
+ * dzięki czemu wiele wątków może jednocześnie czytać i zapisywać tablicę bez
+ * blokad - rozerwany zapis (połowa starego i połowa nowego wpisu) po prostu nie przejdzie
+ * weryfikacji.
+ * <p>
+ * Słowo danych: bity 0-15 ocena, 16-22 głębokość, 23-24 rodzaj oceny (granica),
+ * 25-30 wiek (numer wyszukiwania), 32-63 skrót najlepszego ruchu.
+ * Wpis jest zastępowany, gdy dotyczy tej samej pozycji, pochodzi ze starszego
+ * wyszukiwania lub nowy wynik ma co najmniej taką samą głębokość.
+ * @author Grzegorz Dżyg
+ */
+public class TranspositionTable {
+
+    /** Dokładna ocena. */
+    public static final int EXACT = 3;
+    /** Ocena jest dolnym ograniczeniem (odcięcie beta). */
+    public static final int LOWER = 2;
+    /** Ocena jest górnym ograniczeniem (żaden ruch nie poprawił alfy). */
+    public static final int UPPER = 1;
+
+    /** Domyślny rozmiar tablicy w megabajtach. */
+    public static final int DEFAULT_SIZE_MB = 32;
+
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 23;
+    private static final int AGE_SHIFT = 25;
+    private static final int MAX_DEPTH = 0x7F;
+    private static final int AGE_MASK = 0x3F;
+
+    private final long[] table;
+    private final int mask;
+    private volatile int age;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Tworzy tablicę o podanym rozmiarze (zaokrąglonym w dół do potęgi dwójki wpisów).
+     * @param sizeMB rozmiar w megabajtach (co najmniej 1)
+     */
+    public TranspositionTable(int sizeMB){
+        long bytes = Math.max(1, sizeMB) * 1024L * 1024L;
+        int entries = Integer.highestOneBit((int) Math.min(bytes / 16, 1 << 29));
+        table = new long[entries * 2];
+        mask = entries - 1;
+    }
+    /**
+     * Zwraca liczbę wpisów w tablicy.
+     * @return liczba wpisów
+     */
+    public int capacity(){
+        return mask + 1;
+    }
+    /**
+     * Czyści tablicę i liczniki.
+     */
+    public void clear(){
+        Arrays.fill(table, 0L);
+        probes.reset();
+        hits.reset();
+        collisions.reset();
+        stores.reset();
+    }
+    /**
+     * Oznacza początek nowego wyszukiwania - starsze wpisy będą chętniej zastępowane.
+     */
+    public void newSearch(){
+        age = (age + 1) & AGE_MASK;
+    }
+    /**
+     * Odczytuje wpis dla pozycji.
+     * @param hash hasz pozycji
+     * @return słowo danych lub 0, jeśli w tablicy nie ma tej pozycji
+     */
+    public long probe(long hash){
+        probes.increment();
+        int index = ((int) hash & mask) << 1;
+        long check = table[index];
+        long data = table[index + 1];
+        if((check ^ data) == hash && data != 0){
+            hits.increment();
+            return data;
+        }
+        if(data != 0){
+            collisions.increment();
+        }
+        return 0;
+    }
+    /**
+     * Zapisuje wynik przeszukiwania pozycji.
+     * @param hash hasz pozycji
+     * @param depth głębokość przeszukiwania
+     * @param bound rodzaj oceny (EXACT, LOWER, UPPER)
+     * @param score ocena
+     * @param move najlepszy ruch lub 0
+     */
+    public void store(long hash, int depth, int bound, int score, long move){
+        int index = ((int) hash & mask) << 1;
+        long oldData = table[index + 1];
+        if(oldData != 0 && (table[index] ^ oldData) != hash
+                && ((int) (oldData >>> AGE_SHIFT) & AGE_MASK) == age
+                && depth(oldData) > depth){
+            return; // głębszy wpis z bieżącego wyszukiwania zostaje
+        }
+        int moveKey = fingerprint(move);
+        if(move == 0 && oldData != 0 && (table[index] ^ oldData) == hash){
+            moveKey = moveKey(oldData); // zachowaj poprzedni najlepszy ruch tej pozycji
+        }
+        long data = (score & 0xFFFFL)
+                | ((long) Math.max(0, Math.min(depth, MAX_DEPTH)) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) age << AGE_SHIFT)
+                | ((long) moveKey << 32);
+        table[index] = hash ^ data;
+        table[index + 1] = data;
+        stores.increment();
+    }
+    /**
+     * Zwraca ocenę zapisaną we wpisie.
+     * @param data słowo danych
+     * @return ocena
+     */
+    public static int score(long data){
+        return (short) data;
+    }
+    /**
+     * Zwraca głębokość zapisaną we wpisie.
+     * @param data słowo danych
+     * @return głębokość
+     */
+    public static int depth(long data){
+        return (int) (data >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+    /**
+     * Zwraca rodzaj oceny zapisanej we wpisie.
+     * @param data słowo danych
+     * @return EXACT, LOWER lub UPPER
+     */
+    public static int bound(long data){
+        return (int) (data >>> BOUND_SHIFT) & 3;
+    }
+    /**
+     * Zwraca skrót najlepszego ruchu zapisanego we wpisie.
+     * @param data słowo danych
+     * @return skrót ruchu (porównywany z {@link #fingerprint(long)}) lub 0
+     */
+    public static int moveKey(long data){
+        return (int) (data >>> 32);
+    }
+    /**
+     * Zamienia ruch na 32-bitowy skrót: pola startowe i docelowe, przemiana
+     * oraz wymieszany zbiór zbitych pionków.
+     * @param move zakodowany ruch
+     * @return skrót ruchu (0 dla braku ruchu)
+     */
+    public static int fingerprint(long move){
+        if(move == 0) return 0;
+        int captured = (int) (move >>> 32);
+        int mixed = (captured * 0x9E3779B1) >>> 12;
+        return ((int) move & 0x7FF) | (mixed << 11) | 1 << 31;
+    }
+    /**
+     * Zwraca przybliżone zapełnienie tablicy w promilach (na podstawie pierwszych wpisów).
+     * @return zapełnienie (0-1000)
+     */
+    public int hashfull(){
+        int sample = Math.min(1000, capacity());
+        int used = 0;
+        for(int i = 0; i < sample; i++){
+            long data = table[i * 2 + 1];
+            if(data != 0 && ((int) (data >>> AGE_SHIFT) & AGE_MASK) == age) used++;
+        }
+        return used * 1000 / sample;
+    }
+    /**
+     * Zwraca statystyki użycia tablicy.
+     * @return opis: liczba zapytań, trafień, kolizji i zapisów
+     */
+    @Override
+    public String toString(){
+        long p = probes.sum();
+        long h = hits.sum();
+        return "TT " + (capacity() * 16L >> 20) + " MB: zapytania " + p + ", trafienia " + h
+                + (p > 0 ? " (" + (h * 100 / p) + "%)" : "") + ", kolizje " + collisions.sum()
+                + ", zapisy " + stores.sum() + ", zapełnienie " + hashfull() + "‰";
+    }
+}
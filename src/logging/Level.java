@@ -0,0 +1,34 @@
+package logging;
+
+/**
+ * Poziomy ważności wpisów dziennika, od najmniej ważnego.
+ * @author Grzegorz Dżyg
+ */
+public enum Level {
+    /** Ślad pojedynczej wiadomości (może być próbkowany). */
+    TRACE,
+    /** Szczegóły przydatne przy szukaniu błędów. */
+    DEBUG,
+    /** Zwykłe zdarzenia: połączenia, początek i koniec gry. */
+    INFO,
+    /** Sytuacje nietypowe, np. rozłączenie wolnego klienta. */
+    WARN,
+    /** Błędy. */
+    ERROR,
+    /** Wyłącza dziennik. */
+    OFF;
+
+    /**
+     * Zamienia nazwę poziomu na poziom, ignorując wielkość liter.
+     * @param name nazwa poziomu (może być null)
+     * @param fallback poziom zwracany dla pustej lub nieznanej nazwy
+     * @return poziom
+     */
+    public static Level parse(String name, Level fallback){
+        if(name == null) return fallback;
+        for(Level level : values()){
+            if(level.name().equalsIgnoreCase(name.trim())) return level;
+        }
+        return fallback;
+    }
+}
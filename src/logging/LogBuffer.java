@@ -0,0 +1,205 @@
+package logging;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bufor pierścieniowy wpisów dziennika z jednym wątkiem zapisującym.
+ * <p>
+ * Wątki zgłaszające wpisy rezerwują kolejne miejsce operacją CAS na liczniku
+ * i wypełniają gotowy obiekt wpisu, a na końcu publikują go, zapisując jego
+ * numer do pola volatile - bez blokad i bez tworzenia obiektów. Formatowanie
+ * i zapis na konsolę (lub do pliku) odbywa się w wątku {@code log-writer},
+ * który zapisuje wpisy partiami co kilkadziesiąt milisekund.
+ * Gdy bufor jest pełny, wpis jest pomijany i liczony, zamiast wstrzymywać
+ * wątek, który go zgłasza; liczba pominiętych wpisów trafia do dziennika.
+ * @author Grzegorz Dżyg
+ */
+final class LogBuffer implements Runnable {
+
+    /** Jedyny bufor procesu. */
+    static final LogBuffer INSTANCE = new LogBuffer(Integer.getInteger("warcaby.log.buffer", 8192));
+
+    /** Wpisy są zapisywane partiami; po tylu znakach partia jest wysyłana od razu. */
+    private static final int BATCH_CHARS = 8 * 1024;
+    /** Jak długo wątek zapisujący śpi, gdy bufor jest pusty lub prawie pusty. */
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final DateTimeFormatter TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    /**
+     * Miejsce w buforze. Pola zwykłe są widoczne dla wątku zapisującego dzięki
+     * temu, że numer wpisu jest zapisywany na końcu (pole volatile).
+     */
+    private static final class Entry {
+        volatile long sequence = -1;
+        long time;
+        Level level;
+        String logger;
+        String thread;
+        String message;
+        Object first;
+        Object second;
+        long number;
+        int arguments;
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+    /** Numer następnego wpisu do zarezerwowania. */
+    private final AtomicLong head = new AtomicLong();
+    /** Numer następnego wpisu do zapisania (zmienia go tylko wątek zapisujący). */
+    private volatile long tail;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean sleeping;
+    private volatile boolean closing;
+    private final Thread writer;
+    private final PrintStream out;
+    private final StringBuilder batch = new StringBuilder(BATCH_CHARS * 2);
+
+    private LogBuffer(int capacity){
+        int size = Integer.highestOneBit(Math.max(64, capacity - 1) << 1);
+        entries = new Entry[size];
+        for(int i = 0; i < size; i++){
+            entries[i] = new Entry();
+        }
+        mask = size - 1;
+        out = openOutput(System.getProperty("warcaby.log.file"));
+        writer = new Thread(this, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "log-shutdown"));
+    }
+    private static PrintStream openOutput(String file){
+        if(file != null){
+            try{
+                return new PrintStream(new FileOutputStream(file, true), false, StandardCharsets.UTF_8);
+            }
+            catch(IOException e){
+                System.err.println("Nie można otworzyć dziennika " + file + ": " + e.getMessage());
+            }
+        }
+        return System.out;
+    }
+    /**
+     * Dodaje wpis do bufora. Nie blokuje i nie tworzy obiektów.
+     * @param arguments 0 - brak, 1 - {@code first}, 2 - {@code first} i {@code second},
+     *                  3 - {@code first} i {@code number}
+     */
+    void publish(Level level, String logger, String message, Object first, Object second, long number, int arguments){
+        long sequence;
+        do{
+            sequence = head.get();
+            if(sequence - tail >= entries.length){
+                dropped.incrementAndGet();
+                return;
+            }
+        } while(!head.compareAndSet(sequence, sequence + 1));
+        Entry entry = entries[(int) sequence & mask];
+        entry.time = System.currentTimeMillis();
+        entry.level = level;
+        entry.logger = logger;
+        entry.thread = Thread.currentThread().getName();
+        entry.message = message;
+        entry.first = first;
+        entry.second = second;
+        entry.number = number;
+        entry.arguments = arguments;
+        entry.sequence = sequence;
+        // budzenie kosztuje wywołanie systemowe, więc wątek zapisujący jest budzony
+        // dopiero przy zapełnionym w połowie buforze, a poza tym sam budzi się co chwilę
+        if(sleeping && sequence - tail >= entries.length / 2) LockSupport.unpark(writer);
+    }
+    /**
+     * Pętla wątku zapisującego: formatuje opublikowane wpisy, a gdy bufor jest
+     * pusty, wysyła zebraną partię i zasypia na {@link #FLUSH_INTERVAL_NANOS}.
+     */
+    @Override
+    public void run(){
+        long next = tail;
+        while(true){
+            Entry entry = entries[(int) next & mask];
+            if(entry.sequence == next){
+                format(entry);
+                entry.first = null;
+                entry.second = null;
+                tail = ++next;
+                if(batch.length() >= BATCH_CHARS) writeBatch();
+                continue;
+            }
+            writeBatch();
+            if(head.get() > next) continue; // wpis zarezerwowany, ale jeszcze nie opublikowany
+            if(closing) return;
+            sleeping = true;
+            if(head.get() == next && !closing) LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+            sleeping = false;
+        }
+    }
+    private void format(Entry entry){
+        long lost = dropped.getAndSet(0);
+        if(lost > 0){
+            batch.append(TIME.format(Instant.ofEpochMilli(entry.time))).append(" WARN  log: pominięto ")
+                    .append(lost).append(" wpisów (pełny bufor)").append(System.lineSeparator());
+        }
+        batch.append(TIME.format(Instant.ofEpochMilli(entry.time))).append(' ');
+        batch.append(entry.level);
+        for(int i = entry.level.name().length(); i < 6; i++) batch.append(' ');
+        batch.append(entry.logger).append(" [").append(entry.thread).append("] ");
+        Throwable thrown = null;
+        int argument = 0;
+        String message = entry.message;
+        int start = 0;
+        int placeholder;
+        while(argument < entry.arguments && (placeholder = message.indexOf("{}", start)) >= 0){
+            batch.append(message, start, placeholder);
+            appendArgument(entry, argument++);
+            start = placeholder + 2;
+        }
+        batch.append(message, start, message.length());
+        if(entry.first instanceof Throwable) thrown = (Throwable) entry.first;
+        if(entry.second instanceof Throwable) thrown = (Throwable) entry.second;
+        batch.append(System.lineSeparator());
+        if(thrown != null){
+            writeBatch();
+            thrown.printStackTrace(out);
+        }
+    }
+    private void appendArgument(Entry entry, int index){
+        if(index == 0){
+            batch.append(entry.first);
+        }
+        else if(entry.arguments == 3){
+            batch.append(entry.number);
+        }
+        else{
+            batch.append(entry.second);
+        }
+    }
+    private void writeBatch(){
+        if(batch.length() == 0) return;
+        out.print(batch);
+        out.flush();
+        batch.setLength(0);
+    }
+    /**
+     * Zapisuje wszystkie wpisy z bufora i kończy wątek zapisujący (przy zamykaniu procesu).
+     */
+    void close(){
+        closing = true;
+        LockSupport.unpark(writer);
+        try{
+            writer.join(TimeUnit.SECONDS.toMillis(2));
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dziennik zdarzeń jednej części programu (np. {@code server}, {@code client}).
+ * <p>
+ * Wpisy trafiają do wspólnego bufora pierścieniowego, a na konsolę zapisuje je
+ * osobny wątek, więc zgłoszenie wpisu nie czeka na wyjście. Treść jest składana
+ * dopiero w wątku zapisującym: w komunikacie kolejne {@code {}} są zastępowane
+ * argumentami. Gdy poziom jest wyłączony, wywołanie nie tworzy żadnych obiektów -
+ * liczby przekazuje się jako {@code long}, a nie przez sklejanie tekstu.
+ * <p>
+ * Ustawienia (właściwości systemowe): {@code warcaby.log.level} - najniższy
+ * zapisywany poziom (domyślnie {@code INFO}), {@code warcaby.log.sample} - zapisywany
+ * jest co n-ty wpis {@link Level#TRACE} każdego dziennika (domyślnie każdy),
+ * {@code warcaby.log.file} - plik zamiast konsoli, {@code warcaby.log.buffer} -
+ * pojemność bufora.
+ * @author Grzegorz Dżyg
+ */
+public final class Logger {
+
+    private static final int NO_ARGUMENTS = 0;
+    private static final int ONE_ARGUMENT = 1;
+    private static final int TWO_ARGUMENTS = 2;
+    private static final int ARGUMENT_AND_NUMBER = 3;
+
+    private static volatile Level level = Level.parse(System.getProperty("warcaby.log.level"), Level.INFO);
+    private static volatile int sampling = Math.max(1, Integer.getInteger("warcaby.log.sample", 1));
+
+    private final String name;
+    private final AtomicLong traces = new AtomicLong();
+
+    private Logger(String name){
+        this.name = name;
+    }
+    /**
+     * Tworzy dziennik o podanej nazwie (zwykle zapisywany w polu statycznym klasy).
+     * @param name nazwa wypisywana przy każdym wpisie
+     * @return dziennik
+     */
+    public static Logger get(String name){
+        return new Logger(name);
+    }
+    /**
+     * Ustawia najniższy zapisywany poziom dla wszystkich dzienników.
+     * @param minimum poziom ({@link Level#OFF} wyłącza dziennik)
+     */
+    public static void setLevel(Level minimum){
+        level = minimum;
+    }
+    /**
+     * Zwraca najniższy zapisywany poziom.
+     * @return poziom
+     */
+    public static Level getLevel(){
+        return level;
+    }
+    /**
+     * Ustawia próbkowanie wpisów {@link Level#TRACE}: zapisywany jest co n-ty.
+     * @param everyNth co który wpis zapisywać (1 - każdy)
+     */
+    public static void setTraceSampling(int everyNth){
+        sampling = Math.max(1, everyNth);
+    }
+    /**
+     * Sprawdza, czy wpisy danego poziomu są zapisywane.
+     * @param candidate poziom
+     * @return true, jeśli poziom jest włączony
+     */
+    public boolean isEnabled(Level candidate){
+        return candidate.compareTo(level) >= 0 && candidate != Level.OFF;
+    }
+    /**
+     * Zapisuje ślad pojedynczej wiadomości, z uwzględnieniem próbkowania.
+     * @param message komunikat z miejscem {@code {}} na argument
+     * @param argument argument
+     */
+    public void trace(String message, Object argument){
+        if(!isEnabled(Level.TRACE)) return;
+        int every = sampling;
+        if(every > 1 && traces.incrementAndGet() % every != 0) return;
+        LogBuffer.INSTANCE.publish(Level.TRACE, name, message, argument, null, 0, ONE_ARGUMENT);
+    }
+    /**
+     * Zapisuje ślad pojedynczej wiadomości, z uwzględnieniem próbkowania.
+     * @param message komunikat z miejscami {@code {}} na argumenty
+     * @param first pierwszy argument
+     * @param second drugi argument
+     */
+    public void trace(String message, Object first, Object second){
+        if(!isEnabled(Level.TRACE)) return;
+        int every = sampling;
+        if(every > 1 && traces.incrementAndGet() % every != 0) return;
+        LogBuffer.INSTANCE.publish(Level.TRACE, name, message, first, second, 0, TWO_ARGUMENTS);
+    }
+    /**
+     * Zapisuje wpis {@link Level#DEBUG}.
+     * @param message komunikat
+     */
+    public void debug(String message){
+        log(Level.DEBUG, message, null, null, 0, NO_ARGUMENTS);
+    }
+    /**
+     * Zapisuje wpis {@link Level#DEBUG}.
+     * @param message komunikat z miejscem {@code {}} na argument
+     * @param argument argument
+     */
+    public void debug(String message, Object argument){
+        log(Level.DEBUG, message, argument, null, 0, ONE_ARGUMENT);
+    }
+    /**
+     * Zapisuje wpis {@link Level#INFO}.
+     * @param message komunikat
+     */
+    public void info(String message){
+        log(Level.INFO, message, null, null, 0, NO_ARGUMENTS);
+    }
+    /**
+     * Zapisuje wpis {@link Level#INFO}.
+     * @param message komunikat z miejscem {@code {}} na argument
+     * @param argument argument
+     */
+    public void info(String message, Object argument){
+        log(Level.INFO, message, argument, null, 0, ONE_ARGUMENT);
+    }
+    /**
+     * Zapisuje wpis {@link Level#INFO}.
+     * @param message komunikat z miejscami {@code {}} na argument i liczbę
+     * @param argument argument
+     * @param number liczba (bez pakowania w obiekt)
+     */
+    public void info(String message, Object argument, long number){
+        log(Level.INFO, message, argument, null, number, ARGUMENT_AND_NUMBER);
+    }
+    /**
+     * Zapisuje wpis {@link Level#WARN}.
+     * @param message komunikat z miejscem {@code {}} na argument
+     * @param argument argument
+     */
+    public void warn(String message, Object argument){
+        log(Level.WARN, message, argument, null, 0, ONE_ARGUMENT);
+    }
+    /**
+     * Zapisuje wpis {@link Level#ERROR}; wyjątek jest wypisywany ze śladem stosu.
+     * @param message komunikat
+     * @param thrown wyjątek
+     */
+    public void error(String message, Throwable thrown){
+        log(Level.ERROR, message, thrown, null, 0, ONE_ARGUMENT);
+    }
+    private void log(Level entryLevel, String message, Object first, Object second, long number, int arguments){
+        if(!isEnabled(entryLevel)) return;
+        LogBuffer.INSTANCE.publish(entryLevel, name, message, first, second, number, arguments);
+    }
+}
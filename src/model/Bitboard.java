@@ -0,0 +1,268 @@
+package model;
+
+/**
+ * Operacje na 32-polowych bitboardach planszy do warcabów.
+ * Bit {@code i} odpowiada i-temu ciemnemu polu: wiersz {@code i / 4},
+ * kolejne pola w wierszu od lewej do prawej. Białe poruszają się w stronę
+ * rosnących numerów pól (w dół planszy), czarne w stronę malejących.
+ * @author Grzegorz Dżyg
+ */
+public final class Bitboard {
+
+    /** Liczba grywalnych (ciemnych) pól planszy. */
+    public static final int SQUARES = 32;
+
+    /** Kierunek: wiersz -1, kolumna -1. */
+    public static final int UP_LEFT = 0;
+    /** Kierunek: wiersz -1, kolumna +1. */
+    public static final int UP_RIGHT = 1;
+    /** Kierunek: wiersz +1, kolumna -1. */
+    public static final int DOWN_LEFT = 2;
+    /** Kierunek: wiersz +1, kolumna +1. */
+    public static final int DOWN_RIGHT = 3;
+
+    /** Pola pierwszego wiersza (przemiana czarnych w damkę). */
+    public static final int FIRST_ROW = 0x0000000F;
+    /** Pola ostatniego wiersza (przemiana białych w damkę). */
+    public static final int LAST_ROW = 0xF0000000;
+
+    /** Wiersze parzyste (0, 2, 4, 6) - pola w kolumnach nieparzystych. */
+    private static final int EVEN_ROWS = 0x0F0F0F0F;
+    /** Wiersze parzyste bez pól w kolumnie 7. */
+    private static final int EVEN_ROWS_NOT_RIGHT = 0x07070707;
+    /** Wiersze nieparzyste (1, 3, 5, 7) - pola w kolumnach parzystych. */
+    private static final int ODD_ROWS = 0xF0F0F0F0;
+    /** Wiersze nieparzyste bez pól w kolumnie 0. */
+    private static final int ODD_ROWS_NOT_LEFT = 0xE0E0E0E0;
+
+    /*
+     * Tablice dla pojedynczych pól, liczone raz przy ładowaniu klasy.
+     * Indeks to kierunek * 32 + pole; -1 oznacza brak pola (krawędź planszy).
+     */
+    /** Sąsiednie pole w danym kierunku. */
+    private static final int[] NEIGHBORS = new int[4 * SQUARES];
+    /** Pole lądowania przy krótkim biciu w danym kierunku (za sąsiednim polem). */
+    private static final int[] JUMPS = new int[4 * SQUARES];
+    /** Wszystkie pola w danym kierunku aż do krawędzi (bez pola startowego). */
+    private static final int[] RAYS = new int[4 * SQUARES];
+
+    static {
+        int[] rowSteps = {-1, -1, 1, 1};
+        int[] colSteps = {-1, 1, -1, 1};
+        for(int dir = 0; dir < 4; dir++){
+            for(int from = 0; from < SQUARES; from++){
+                int index = dir * SQUARES + from;
+                int ray = 0;
+                int row = row(from) + rowSteps[dir];
+                int col = col(from) + colSteps[dir];
+                for(int target; (target = square(row, col)) >= 0; row += rowSteps[dir], col += colSteps[dir]){
+                    ray |= 1 << target;
+                }
+                RAYS[index] = ray;
+                NEIGHBORS[index] = square(row(from) + rowSteps[dir], col(from) + colSteps[dir]);
+                JUMPS[index] = square(row(from) + 2 * rowSteps[dir], col(from) + 2 * colSteps[dir]);
+            }
+        }
+    }
+
+    private Bitboard(){
+    }
+    /**
+     * Zamienia współrzędne planszy na numer pola.
+     * @param row numer wiersza (0-7)
+     * @param col numer kolumny (0-7)
+     * @return numer pola (0-31) lub -1 jeśli pole jest jasne albo poza planszą
+     */
+    public static int square(int row, int col){
+        if(row < 0 || row > 7 || col < 0 || col > 7 || ((row + col) & 1) == 0) return -1;
+        return (row << 2) | (col >> 1);
+    }
+    /**
+     * Zwraca wiersz podanego pola.
+     * @param square numer pola (0-31)
+     * @return numer wiersza (0-7)
+     */
+    public static int row(int square){
+        return square >>> 2;
+    }
+    /**
+     * Zwraca kolumnę podanego pola.
+     * @param square numer pola (0-31)
+     * @return numer kolumny (0-7)
+     */
+    public static int col(int square){
+        return ((square & 3) << 1) | (~(square >>> 2) & 1);
+    }
+    /**
+     * Zwraca sąsiednie pole w podanym kierunku.
+     * @param square numer pola (0-31)
+     * @param direction kierunek (UP_LEFT, UP_RIGHT, DOWN_LEFT, DOWN_RIGHT)
+     * @return numer pola lub -1 na krawędzi planszy
+     */
+    public static int neighbor(int square, int direction){
+        return NEIGHBORS[direction << 5 | square];
+    }
+    /**
+     * Zwraca pole lądowania krótkiego bicia (dwa pola dalej w podanym kierunku).
+     * @param square numer pola (0-31)
+     * @param direction kierunek (UP_LEFT, UP_RIGHT, DOWN_LEFT, DOWN_RIGHT)
+     * @return numer pola lub -1, jeśli bicie wychodzi poza planszę
+     */
+    public static int jump(int square, int direction){
+        return JUMPS[direction << 5 | square];
+    }
+    /**
+     * Zwraca wszystkie pola w podanym kierunku aż do krawędzi planszy.
+     * @param square numer pola (0-31)
+     * @param direction kierunek (UP_LEFT, UP_RIGHT, DOWN_LEFT, DOWN_RIGHT)
+     * @return zbiór pól (bez pola startowego)
+     */
+    public static int ray(int square, int direction){
+        return RAYS[direction << 5 | square];
+    }
+    /**
+     * Zwraca najbliższe zajęte pole w podanym kierunku. Kierunki w górę
+     * prowadzą ku mniejszym numerom pól, więc najbliższe jest pole o najwyższym
+     * numerze, a w dół - o najniższym.
+     * @param square numer pola (0-31)
+     * @param direction kierunek (UP_LEFT, UP_RIGHT, DOWN_LEFT, DOWN_RIGHT)
+     * @param occupied pola zajęte
+     * @return numer pola lub -1, jeśli droga jest wolna aż do krawędzi
+     */
+    public static int nearest(int square, int direction, int occupied){
+        int blockers = RAYS[direction << 5 | square] & occupied;
+        if(blockers == 0) return -1;
+        return direction >= DOWN_LEFT ? Integer.numberOfTrailingZeros(blockers) : 31 - Integer.numberOfLeadingZeros(blockers);
+    }
+    /**
+     * Zwraca wolne pola w podanym kierunku aż do pierwszego zajętego pola
+     * (bez niego) - pola, na które może przejść albo wylądować damka.
+     * @param square numer pola (0-31)
+     * @param direction kierunek (UP_LEFT, UP_RIGHT, DOWN_LEFT, DOWN_RIGHT)
+     * @param occupied pola zajęte
+     * @return zbiór pól
+     */
+    public static int reach(int square, int direction, int occupied){
+        int ray = RAYS[direction << 5 | square];
+        int blocker = nearest(square, direction, occupied);
+        return blocker < 0 ? ray : ray & ~(RAYS[direction << 5 | blocker] | 1 << blocker);
+    }
+    /**
+     * Przesuwa wszystkie zapalone bity o jedno pole w podanym kierunku.
+     * Bity, które wypadłyby poza planszę, są gubione.
+     * @param bits zbiór pól
+     * @param direction kierunek (UP_LEFT, UP_RIGHT, DOWN_LEFT, DOWN_RIGHT)
+     * @return przesunięty zbiór pól
+     */
+    public static int shift(int bits, int direction){
+        switch(direction){
+            case UP_LEFT:
+                return upLeft(bits);
+            case UP_RIGHT:
+                return upRight(bits);
+            case DOWN_LEFT:
+                return downLeft(bits);
+            default:
+                return downRight(bits);
+        }
+    }
+    /**
+     * Przesunięcie o pole w górę i w lewo.
+     * @param bits zbiór pól
+     * @return przesunięty zbiór pól
+     */
+    public static int upLeft(int bits){
+        return ((bits & EVEN_ROWS) >>> 4) | ((bits & ODD_ROWS_NOT_LEFT) >>> 5);
+    }
+    /**
+     * Przesunięcie o pole w górę i w prawo.
+     * @param bits zbiór pól
+     * @return przesunięty zbiór pól
+     */
+    public static int upRight(int bits){
+        return ((bits & EVEN_ROWS_NOT_RIGHT) >>> 3) | ((bits & ODD_ROWS) >>> 4);
+    }
+    /**
+     * Przesunięcie o pole w dół i w lewo.
+     * @param bits zbiór pól
+     * @return przesunięty zbiór pól
+     */
+    public static int downLeft(int bits){
+        return ((bits & EVEN_ROWS) << 4) | ((bits & ODD_ROWS_NOT_LEFT) << 3);
+    }
+    /**
+     * Przesunięcie o pole w dół i w prawo.
+     * @param bits zbiór pól
+     * @return przesunięty zbiór pól
+     */
+    public static int downRight(int bits){
+        return ((bits & EVEN_ROWS_NOT_RIGHT) << 5) | ((bits & ODD_ROWS) << 4);
+    }
+    /**
+     * Sprawdza, czy któryś z pionków może wykonać krótkie bicie
+     * (przeskok o dwa pola, także do tyłu).
+     * @param men zbiór bijących pionków
+     * @param enemy pionki przeciwnika
+     * @param empty wolne pola
+     * @return true jeśli istnieje bicie
+     */
+    public static boolean canJump(int men, int enemy, int empty){
+        if(men == 0) return false;
+        for(int dir = 0; dir < 4; dir++){
+            if((shift(shift(men, dir) & enemy, dir) & empty) != 0) return true;
+        }
+        return false;
+    }
+    /**
+     * Sprawdza, czy pionek na podanym polu może wykonać krótkie bicie (także do tyłu).
+     * @param square pole pionka
+     * @param enemy pionki przeciwnika
+     * @param occupied pola zajęte
+     * @return true jeśli istnieje bicie
+     */
+    public static boolean canJumpFrom(int square, int enemy, int occupied){
+        for(int dir = 0; dir < 4; dir++){
+            int landing = JUMPS[dir << 5 | square];
+            if(landing >= 0 && (enemy & 1 << NEIGHBORS[dir << 5 | square]) != 0 && (occupied & 1 << landing) == 0){
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Sprawdza, czy damka na podanym polu może wykonać bicie z dowolnej odległości:
+     * najbliższy pionek na przekątnej należy do przeciwnika, a pole za nim jest wolne.
+     * @param square pole damki
+     * @param enemy pionki przeciwnika
+     * @param occupied pola zajęte
+     * @return true jeśli istnieje bicie
+     */
+    public static boolean canFlyingJumpFrom(int square, int enemy, int occupied){
+        for(int dir = 0; dir < 4; dir++){
+            int victim = nearest(square, dir, occupied);
+            if(victim < 0 || (enemy & 1 << victim) == 0) continue;
+            int landing = NEIGHBORS[dir << 5 | victim];
+            if(landing >= 0 && (occupied & 1 << landing) == 0) return true;
+        }
+        return false;
+    }
+    /**
+     * Sprawdza, czy któraś z damek może wykonać bicie z dowolnej odległości.
+     * Promienie wszystkich damek są przesuwane jednocześnie po wolnych polach.
+     * @param queens zbiór bijących damek
+     * @param enemy pionki przeciwnika
+     * @param empty wolne pola
+     * @return true jeśli istnieje bicie
+     */
+    public static boolean canFlyingJump(int queens, int enemy, int empty){
+        if(queens == 0) return false;
+        for(int dir = 0; dir < 4; dir++){
+            int frontier = shift(queens, dir);
+            while(frontier != 0){
+                if((shift(frontier & enemy, dir) & empty) != 0) return true;
+                frontier = shift(frontier & empty, dir);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,138 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Zapis partii: kolejne ruchy od pozycji początkowej i stany planszy zapamiętane
+ * co {@code interval} ruchów. Pozycję po dowolnym ruchu ({@link #seek}) odtwarza
+ * się od najbliższego wcześniejszego zapamiętanego stanu, więc kosztuje ona
+ * najwyżej {@code interval - 1} wykonań ruchu, niezależnie od długości partii.
+ * @author Grzegorz Dżyg
+ */
+public class GameRecord {
+
+    /** Domyślny odstęp (w ruchach) między zapamiętanymi stanami planszy. */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 16;
+    private static final int DEFAULT_CAPACITY = 64;
+    /** Stan planszy zajmuje w tablicy: białe, czarne, damki, kolor na ruchu. */
+    private static final int SNAPSHOT_FIELDS = 4;
+
+    private final int interval;
+    private long[] moves = new long[DEFAULT_CAPACITY];
+    private String[] notations = new String[DEFAULT_CAPACITY];
+    private int size;
+    /** Stany planszy po ruchach 0, interval, 2 * interval... */
+    private int[] snapshots;
+    /** Pozycja po ostatnim ruchu. */
+    private final GameState last = new GameState();
+    private final MoveList generated = new MoveList();
+
+    /**
+     * Tworzy pusty zapis partii od pozycji początkowej.
+     */
+    public GameRecord(){
+        this(new GameState(), DEFAULT_SNAPSHOT_INTERVAL);
+    }
+    /**
+     * Tworzy pusty zapis partii od podanej pozycji (np. gry odtworzonej w połowie).
+     * @param start pozycja przed pierwszym ruchem zapisu
+     * @param interval co ile ruchów zapamiętywać stan planszy
+     */
+    public GameRecord(GameState start, int interval){
+        if(interval < 1) throw new IllegalArgumentException("Odstęp musi być dodatni: " + interval);
+        this.interval = interval;
+        last.copyFrom(start);
+        snapshots = new int[SNAPSHOT_FIELDS * (DEFAULT_CAPACITY / interval + 1)];
+        saveSnapshot(0);
+    }
+    /**
+     * Zwraca liczbę ruchów w zapisie.
+     * @return liczba ruchów
+     */
+    public int size(){
+        return size;
+    }
+    /**
+     * Zwraca ruch o podanym numerze.
+     * @param index numer ruchu (od 0)
+     * @return zakodowany ruch (patrz {@link Move})
+     */
+    public long getMove(int index){
+        return moves[index];
+    }
+    /**
+     * Zwraca notację ruchu o podanym numerze (np. {@code c3-d4}, {@code c3:e5:c7}).
+     * @param index numer ruchu (od 0)
+     * @return notacja ruchu
+     */
+    public String getNotation(int index){
+        return notations[index];
+    }
+    /**
+     * Zwraca pozycję po ostatnim ruchu. Obiektu nie należy zmieniać.
+     * @return bieżąca pozycja
+     */
+    public GameState getPosition(){
+        return last;
+    }
+    /**
+     * Dopisuje ruch wykonany w bieżącej pozycji (ruch nie jest ponownie sprawdzany).
+     * @param move zakodowany ruch
+     * @param notation notacja ruchu
+     */
+    public void add(long move, String notation){
+        if(size == moves.length){
+            moves = Arrays.copyOf(moves, size * 2);
+            notations = Arrays.copyOf(notations, size * 2);
+        }
+        moves[size] = move;
+        notations[size] = notation;
+        size++;
+        last.makeMove(move);
+        if(!last.isGameOver()) last.switchTurn();
+        if(size % interval == 0) saveSnapshot(size / interval);
+    }
+    /**
+     * Sprawdza i dopisuje ruch podany w notacji (np. przy wczytywaniu historii partii).
+     * @param notation notacja ruchu
+     * @return false, jeśli ruch jest niedozwolony w bieżącej pozycji
+     */
+    public boolean play(String notation){
+        MoveGenerator.generate(last, generated);
+        int index = generated.find(notation);
+        if(index < 0) return false;
+        add(generated.get(index), generated.toNotation(index));
+        return true;
+    }
+    /**
+     * Ustawia w {@code target} pozycję po podanej liczbie ruchów.
+     * @param ply liczba ruchów od początku zapisu (0 - pozycja przed pierwszym ruchem zapisu, {@link #size()} - bieżąca)
+     * @param target stan gry do nadpisania
+     */
+    public void seek(int ply, GameState target){
+        if(ply < 0 || ply > size) throw new IndexOutOfBoundsException("Ruch " + ply + " z " + size);
+        if(ply == size){
+            target.copyFrom(last);
+            return;
+        }
+        int snapshot = ply / interval;
+        int offset = snapshot * SNAPSHOT_FIELDS;
+        target.setPosition(snapshots[offset], snapshots[offset + 1], snapshots[offset + 2],
+                Piece.Color.values()[snapshots[offset + 3]]);
+        // przed ostatnim ruchem zapisu gra się toczyła, więc po każdym ruchu zmienia się kolej
+        for(int i = snapshot * interval; i < ply; i++){
+            target.makeMove(moves[i]);
+            target.switchTurn();
+        }
+    }
+    private void saveSnapshot(int snapshot){
+        int offset = snapshot * SNAPSHOT_FIELDS;
+        if(offset + SNAPSHOT_FIELDS > snapshots.length){
+            snapshots = Arrays.copyOf(snapshots, snapshots.length * 2);
+        }
+        snapshots[offset] = last.getWhitePieces();
+        snapshots[offset + 1] = last.getBlackPieces();
+        snapshots[offset + 2] = last.getKings();
+        snapshots[offset + 3] = last.getCurrentTurn().ordinal();
+    }
+}
@@ -0,0 +1,122 @@
+package model;
+
+/**
+ * Niezmienny obraz pozycji po danym ruchu: trzy bitboardy, kolor na ruchu
+ * i numer ruchu. Powstaje po każdym ruchu ({@link #of}) kosztem jednego
+ * małego obiektu, bez kopiowania planszy pole po polu.
+ * <p>
+ * Pola pozycji są finalne, więc obraz przekazany innemu wątkowi (np. przez
+ * pole volatile) można czytać bez blokady i bez kopiowania - także wtedy, gdy
+ * właściciel gry wykonuje już kolejne ruchy na swoim {@link GameState}.
+ * Wyjątkiem są {@code text} i {@code status}: to zwykłe (niefinalne) pola
+ * z wynikiem liczonym przy pierwszym użyciu. Dwa wątki mogą je policzyć
+ * jednocześnie albo nie zobaczyć wyniku drugiego, ale zawsze dostają równą
+ * wartość, a {@link String} i {@link GameStatus} mają tylko pola finalne,
+ * więc są bezpieczne także przekazane bez synchronizacji.
+ * @author Grzegorz Dżyg
+ */
+public final class GameSnapshot {
+
+    private final int whitePieces;
+    private final int blackPieces;
+    private final int kings;
+    private final Piece.Color currentTurn;
+    private final long hash;
+    private final int plies;
+    /** Plansza w formacie {@link GameState#toString()} (tworzona przy pierwszym użyciu). */
+    private String text;
+    /** Ocena pozycji (tworzona przy pierwszym użyciu). */
+    private GameStatus status;
+
+    private GameSnapshot(GameState state, int plies){
+        whitePieces = state.getWhitePieces();
+        blackPieces = state.getBlackPieces();
+        kings = state.getKings();
+        currentTurn = state.getCurrentTurn();
+        hash = state.getHash();
+        this.plies = plies;
+    }
+    /**
+     * Zapamiętuje bieżącą pozycję gry.
+     * @param state stan gry
+     * @param plies liczba wykonanych ruchów
+     * @return obraz pozycji
+     */
+    public static GameSnapshot of(GameState state, int plies){
+        return new GameSnapshot(state, plies);
+    }
+    /**
+     * Zwraca bitboard pól zajętych przez białe.
+     * @return zbiór pól białych pionków i damek
+     */
+    public int getWhitePieces(){
+        return whitePieces;
+    }
+    /**
+     * Zwraca bitboard pól zajętych przez czarne.
+     * @return zbiór pól czarnych pionków i damek
+     */
+    public int getBlackPieces(){
+        return blackPieces;
+    }
+    /**
+     * Zwraca bitboard pól zajętych przez damki obu kolorów.
+     * @return zbiór pól z damkami
+     */
+    public int getKings(){
+        return kings;
+    }
+    /**
+     * Zwraca kolor gracza, który jest na ruchu.
+     * @return kolor gracza
+     */
+    public Piece.Color getCurrentTurn(){
+        return currentTurn;
+    }
+    /**
+     * Zwraca hasz Zobrista pozycji (jak {@link GameState#getHash()}).
+     * @return hasz pozycji
+     */
+    public long getHash(){
+        return hash;
+    }
+    /**
+     * Zwraca liczbę ruchów wykonanych do tej pozycji.
+     * @return liczba ruchów
+     */
+    public int getPlies(){
+        return plies;
+    }
+    /**
+     * Zwraca ocenę pozycji (koniec gry, zwycięzca).
+     * @return ocena pozycji
+     */
+    public GameStatus getStatus(){
+        GameStatus current = status;
+        if(current == null){
+            current = status = GameStatus.evaluate(whitePieces, blackPieces, kings);
+        }
+        return current;
+    }
+    /**
+     * Ustawia pozycję w podanym stanie gry (np. do analizy, która zmienia planszę).
+     * @param target stan gry do nadpisania
+     */
+    public void copyTo(GameState target){
+        target.setPosition(whitePieces, blackPieces, kings, currentTurn);
+    }
+    /**
+     * Zwraca planszę w formacie tekstowym {@link GameState#toString()}.
+     * @return stan planszy
+     */
+    @Override
+    public String toString(){
+        String current = text;
+        if(current == null){
+            GameState state = new GameState();
+            copyTo(state);
+            current = text = state.toString();
+        }
+        return current;
+    }
+}
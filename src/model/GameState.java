@@ -1,38 +1,47 @@
-
 package model;
+
+import java.util.Arrays;
 /**
  * Klasa reprezentująca stan gry w warcaby.
  * Przechowuje aktualne położenie pionków, kolej gracza oraz udostępnia metody obsługi logiki gry.
+ * Plansza zapisana jest w trzech 32-bitowych bitboardach (patrz {@link Bitboard}),
+ * dzięki czemu sprawdzanie ruchów i bić sprowadza się do kilku przesunięć i masek.
  * @author Grzegorz Dżyg
  */
 public class GameState {
-    
+
     private final int NUMBER_OF_ROWS = 8;
     private final int NUMBER_OF_COLUMNS = 8;
+    /** Pola zajmowane na początku gry przez białe (wiersze 0-2). */
+    private static final int WHITE_START = 0x00000FFF;
+    /** Pola zajmowane na początku gry przez czarne (wiersze 5-7). */
+    private static final int BLACK_START = 0xFFF00000;
     /** Kolor gracza, który wykonuje aktualnie ruch.
      * Białe zaczynają*/
     private Piece.Color currentTurn = Piece.Color.WHITE;
-    /** Dwuwymiarowa tablica przechowująca stan planszy. */
-    private final Piece[][] gameState = new Piece[NUMBER_OF_ROWS][NUMBER_OF_COLUMNS];
+    /** Pola zajęte przez białe pionki i damki. */
+    private int whitePieces;
+    /** Pola zajęte przez czarne pionki i damki. */
+    private int blackPieces;
+    /** Pola zajęte przez damki (obu kolorów). */
+    private int kings;
+    /** Hasz Zobrista pozycji, aktualizowany przy każdym ruchu. */
+    private long hash;
+    /** Stos cofania: zbite damki dla kolejnych ruchów wykonanych przez {@link #apply(long)}. */
+    private int[] undoStack = new int[64];
+    /** Stos cofania: hasze pozycji sprzed kolejnych ruchów. */
+    private long[] undoHashes = new long[64];
+    private int undoSize;
+    /** Ocena pozycji (koniec gry, zwycięzca) lub null, jeśli plansza zmieniła się od ostatniej oceny. */
+    private GameStatus status;
     /**
      * Tworzy nowy, początkowy stan gry (rozstawienie pionków).
      */
     public GameState(){
-        
-        for(int row = 0; row < 3; row++){
-            for(int col = 0; col < NUMBER_OF_COLUMNS; col++){
-                if((row + col) % 2 != 0){
-                    gameState[row][col] = new Piece(Piece.Color.WHITE);
-                }
-            }
-        }
-        for(int row = 5; row < 8; row++){
-            for(int col = 0; col < NUMBER_OF_COLUMNS; col++){
-                if((row + col) % 2 != 0){
-                    gameState[row][col] = new Piece(Piece.Color.BLACK);
-                }
-            }
-        }
+        whitePieces = WHITE_START;
+        blackPieces = BLACK_START;
+        kings = 0;
+        hash = Zobrist.hash(whitePieces, blackPieces, kings, false);
     }
     /**
      * Zwraca kolor gracza wykonującego ruch.
@@ -46,15 +55,70 @@ public class GameState {
      */
     public void switchTurn(){
         currentTurn = (currentTurn == Piece.Color.WHITE) ? Piece.Color.BLACK : Piece.Color.WHITE;
+        hash ^= Zobrist.BLACK_TO_MOVE;
+    }
+    /**
+     * Zwraca 64-bitowy hasz Zobrista pozycji (ułożenie pionków, damki i kolej gracza).
+     * Równe pozycje mają równe hasze; hasz jest aktualizowany przyrostowo.
+     * @return hasz pozycji
+     */
+    public long getHash(){
+        return hash;
+    }
+    /**
+     * Zwraca bitboard pól zajętych przez białe.
+     * @return zbiór pól białych pionków i damek
+     */
+    public int getWhitePieces(){
+        return whitePieces;
     }
     /**
-     * Zwraca pionek na danym polu planszy.
+     * Zwraca bitboard pól zajętych przez czarne.
+     * @return zbiór pól czarnych pionków i damek
+     */
+    public int getBlackPieces(){
+        return blackPieces;
+    }
+    /**
+     * Zwraca bitboard pól zajętych przez damki obu kolorów.
+     * @return zbiór pól z damkami
+     */
+    public int getKings(){
+        return kings;
+    }
+    /**
+     * Zwraca bitboard pól zajętych przez gracza o podanym kolorze.
+     * @param color kolor gracza
+     * @return zbiór pól gracza
+     */
+    public int getPieces(Piece.Color color){
+        return color == Piece.Color.WHITE ? whitePieces : blackPieces;
+    }
+    /**
+     * Zwraca pionek na danym polu planszy. Pionki są wspólnymi, niezmiennymi
+     * obiektami ({@link Piece#WHITE_MAN} itd.), więc wywołanie nic nie tworzy.
      * @param row numer wiersza (0-7)
      * @param col numer kolumny (0-7)
      * @return pionek lub null jeśli pole jest puste
      */
     public Piece getPiece(int row, int col){
-        return gameState[row][col];
+        int square = Bitboard.square(row, col);
+        if(square < 0) return null;
+        return Piece.fromCode(getSquare(square));
+    }
+    /**
+     * Zwraca kod zawartości pola ({@link Piece#EMPTY}, {@link Piece#WHITE_MAN_CODE},
+     * {@link Piece#BLACK_MAN_CODE}, {@link Piece#WHITE_KING_CODE}, {@link Piece#BLACK_KING_CODE}).
+     * @param square numer pola (0-31)
+     * @return kod pola
+     */
+    public byte getSquare(int square){
+        int bit = 1 << square;
+        // kod damki to kod pionka tego samego koloru + 2
+        int king = (kings & bit) != 0 ? 2 : 0;
+        if((whitePieces & bit) != 0) return (byte) (Piece.WHITE_MAN_CODE + king);
+        if((blackPieces & bit) != 0) return (byte) (Piece.BLACK_MAN_CODE + king);
+        return Piece.EMPTY;
     }
     /**
      * Sprawdza, czy dany pionek może wykonać kolejne bicie.
@@ -63,64 +127,24 @@ public class GameState {
      * @return true jeśli możliwe jest kolejne bicie, false w przeciwnym razie
      */
     public boolean captureAgain(int row, int col){
-        
-        Piece selected = getPiece(row, col);
-        if(selected == null) return false;
-        
-        int[][] directions = {
-            {-2, 2},
-            {-2, -2},
-            {2, -2},
-            {2, 2}
-        };
-        
-        if (selected.isQueen()) {
-            for (int stepRow = -1; stepRow <= 1; stepRow += 2) {
-                for (int stepCol = -1; stepCol <= 1; stepCol += 2) {
-                    int r = row + stepRow;
-                    int c = col + stepCol;
-                    boolean enemyFound = false;
-
-                    while (r >= 0 && r < 8 && c >= 0 && c < 8) {
-                        Piece p = getPiece(r, c);
-                
-                        if (p == null) {
-                            if (enemyFound) {
-                                // przeciwnik był, a to wolne pole – można tu wylądować po biciu
-                                return true;
-                            }
-                        } else if (p.getColor() != selected.getColor()) {
-                            if (enemyFound) break; // już był jeden wróg – nie można dwóch
-                            enemyFound = true;
-                        } else {
-                            break; // własny pionek – blokuje
-                        }
-
-                        r += stepRow;
-                        c += stepCol;
-                    }
-                }
-            }
+        int square = Bitboard.square(row, col);
+        if(square < 0) return false;
+        int bit = 1 << square;
+        int enemy;
+        if((whitePieces & bit) != 0){
+            enemy = blackPieces;
         }
-        
-        for(int[] dir : directions){
-            
-            int toRow = row + dir[0];
-            int toCol = col + dir[1];
-            
-            if(toRow >= 0 && toRow < 8 && toCol >= 0 && toCol < 8){
-                int midRow = (row + toRow) / 2;
-                int midCol = (col + toCol) / 2;
-                
-                Piece middle = getPiece(midRow, midCol);
-                Piece destination = getPiece(toRow, toCol);
-                
-                if(middle != null && middle.getColor() != selected.getColor() && destination == null){
-                    return true;
-                }
-            }
+        else if((blackPieces & bit) != 0){
+            enemy = whitePieces;
+        }
+        else{
+            return false;
         }
-        return false;
+        int occupied = whitePieces | blackPieces;
+        if((kings & bit) != 0){
+            return Bitboard.canFlyingJumpFrom(square, enemy, occupied);
+        }
+        return Bitboard.canJumpFrom(square, enemy, occupied);
     }
     /**
      * Sprawdza, czy gracz o podanym kolorze ma dostępne bicie.
@@ -128,66 +152,13 @@ public class GameState {
      * @return true jeśli istnieje możliwe bicie, false w przeciwnym razie
      */
     public boolean hasCaptureMoves(Piece.Color playerColor) {
-    int[][] directions = {
-        {-2, 2},
-        {-2, -2},
-        {2, -2},
-        {2, 2}
-    };
-
-    for (int i = 0; i < 8; i++) {
-        for (int j = 0; j < 8; j++) {
-            Piece piece = getPiece(i, j);
-            if (piece == null || piece.getColor() != playerColor) continue;
-
-            if (!piece.isQueen()) {
-                for (int[] dir : directions) {
-                    int toRow = i + dir[0];
-                    int toCol = j + dir[1];
-                    int midRow = (i + toRow) / 2;
-                    int midCol = (j + toCol) / 2;
-
-                    if (toRow >= 0 && toRow < 8 && toCol >= 0 && toCol < 8 &&
-                        midRow >= 0 && midRow < 8 && midCol >= 0 && midCol < 8) {
-                        Piece destination = getPiece(toRow, toCol);
-                        Piece middle = getPiece(midRow, midCol);
-                        if (destination == null && middle != null && middle.getColor() != playerColor) {
-                            return true;
-                        }
-                    }
-                }
-            }
-
-            
-            if (piece.isQueen()) {
-                for (int stepRow = -1; stepRow <= 1; stepRow += 2) {
-                    for (int stepCol = -1; stepCol <= 1; stepCol += 2) {
-                        int r = i + stepRow;
-                        int c = j + stepCol;
-                        boolean enemyFound = false;
-
-                        while (r >= 0 && r < 8 && c >= 0 && c < 8) {
-                            Piece p = getPiece(r, c);
-                            if (p == null) {
-                                if (enemyFound) return true; // po przeciwniku puste pole
-                            } else if (p.getColor() != playerColor) {
-                                if (enemyFound) break; // już jeden wróg był – nie można więcej
-                                enemyFound = true;
-                            } else {
-                                break; // własny pionek – koniec
-                            }
-                            r += stepRow;
-                            c += stepCol;
-                        }
-                    }
-                }
-            }
-        }
+        int own = getPieces(playerColor);
+        int enemy = (playerColor == Piece.Color.WHITE) ? blackPieces : whitePieces;
+        int empty = ~(whitePieces | blackPieces);
+        return Bitboard.canJump(own & ~kings, enemy, empty)
+                || Bitboard.canFlyingJump(own & kings, enemy, empty);
     }
 
-    return false;
-}
-    
    /**
      * Obsługuje wykonanie ruchu na planszy.
      * @param fromRow początkowy wiersz
@@ -196,199 +167,168 @@ public class GameState {
      * @param toCol docelowa kolumna
      * @return true jeśli ruch był poprawny, false w przeciwnym razie
      */
-   public boolean makeMove(int fromRow, int fromCol, int toRow, int toCol) {
-    Piece selectedPiece = gameState[fromRow][fromCol];
-    if (selectedPiece == null || selectedPiece.getColor() != getCurrentTurn()) return false;
-
-    boolean moveIsCapture = false;
-
-    
-    if (selectedPiece.isQueen()) {
+    public boolean makeMove(int fromRow, int fromCol, int toRow, int toCol) {
+        int from = Bitboard.square(fromRow, fromCol);
+        int to = Bitboard.square(toRow, toCol);
+        if (from < 0 || to < 0) return false;
+
+        boolean white = currentTurn == Piece.Color.WHITE;
+        int own = white ? whitePieces : blackPieces;
+        int enemy = white ? blackPieces : whitePieces;
+        int fromBit = 1 << from;
+        int toBit = 1 << to;
+        if ((own & fromBit) == 0 || ((own | enemy) & toBit) != 0) return false;
+
+        boolean isQueen = (kings & fromBit) != 0;
         int rowDiff = toRow - fromRow;
         int colDiff = toCol - fromCol;
+        int captured = 0;
 
-        if (Math.abs(rowDiff) == Math.abs(colDiff)) {
+        if (isQueen) {
+            //Damka - dowolna odległość po przekątnej, co najwyżej jeden przeciwnik po drodze
+            if (rowDiff == 0 || Math.abs(rowDiff) != Math.abs(colDiff)) return false;
             int stepRow = rowDiff > 0 ? 1 : -1;
             int stepCol = colDiff > 0 ? 1 : -1;
-            int r = fromRow + stepRow;
-            int c = fromCol + stepCol;
-            boolean enemyFound = false;
-
-            while (r != toRow && c != toCol) {
-                Piece p = gameState[r][c];
-                if (p != null) {
-                    if (p.getColor() == selectedPiece.getColor()) break;
-                    if (enemyFound) break;
-                    enemyFound = true;
+            for (int r = fromRow + stepRow, c = fromCol + stepCol; r != toRow; r += stepRow, c += stepCol) {
+                int bit = 1 << Bitboard.square(r, c);
+                if ((own & bit) != 0) return false;
+                if ((enemy & bit) != 0) {
+                    if (captured != 0) return false; // już jeden wróg był – nie można dwóch
+                    captured = bit;
                 }
-                r += stepRow;
-                c += stepCol;
             }
-
-            if (enemyFound && gameState[toRow][toCol] == null) {
-                moveIsCapture = true;
+        } else {
+            int dir = white ? 1 : -1;
+            if (Math.abs(rowDiff) == 2 && Math.abs(colDiff) == 2) {
+                // bicie (także do tyłu)
+                captured = 1 << Bitboard.square(fromRow + rowDiff / 2, fromCol + colDiff / 2);
+                if ((enemy & captured) == 0) return false;
+            } else if (rowDiff != dir || Math.abs(colDiff) != 1) {
+                return false;
             }
         }
-    } else if (Math.abs(toRow - fromRow) == 2 && Math.abs(toCol - fromCol) == 2) {
-        int midRow = (fromRow + toRow) / 2;
-        int midCol = (fromCol + toCol) / 2;
-        Piece middle = getPiece(midRow, midCol);
-        if (middle != null && middle.getColor() != selectedPiece.getColor()) {
-            moveIsCapture = true;
-        }
-    }
 
-    //Jeśli bicie jest dostępne, a ten ruch to nie bicie — zabroń
-    if (hasCaptureMoves(getCurrentTurn()) && !moveIsCapture) {
-        return false;
-    }
+        //Jeśli bicie jest dostępne, a ten ruch to nie bicie — zabroń
+        if (captured == 0 && hasCaptureMoves(currentTurn)) return false;
 
-    //Obsługa ruchu damki
-    if (selectedPiece.isQueen()) {
-        int rowDiff = toRow - fromRow;
-        int colDiff = toCol - fromCol;
-
-        if (Math.abs(rowDiff) == Math.abs(colDiff)) {
-            int stepRow = rowDiff > 0 ? 1 : -1;
-            int stepCol = colDiff > 0 ? 1 : -1;
-            int r = fromRow + stepRow;
-            int c = fromCol + stepCol;
-
-            boolean enemyFound = false;
-            int enemyRow = -1;
-            int enemyCol = -1;
-
-            while (r != toRow && c != toCol) {
-                Piece p = gameState[r][c];
-                if (p != null) {
-                    if (p.getColor() == getCurrentTurn()) return false;
-                    if (enemyFound) return false;
-                    enemyFound = true;
-                    enemyRow = r;
-                    enemyCol = c;
-                }
-                r += stepRow;
-                c += stepCol;
-            }
-
-            if (gameState[toRow][toCol] == null) {
-                gameState[toRow][toCol] = selectedPiece;
-                gameState[fromRow][fromCol] = null;
-                if (enemyFound) {
-                    gameState[enemyRow][enemyCol] = null; // zbicie
-                }
-                return true;
-            }
-        }
-
-        return false;
+        boolean promotion = !isQueen && (toBit & (white ? Bitboard.LAST_ROW : Bitboard.FIRST_ROW)) != 0;
+        makeMove(Move.capture(from, to, captured, promotion));
+        return true;
     }
-
-    //Zwykły ruch pionka
-    if (!selectedPiece.isQueen()) {
-        int dir = (selectedPiece.getColor() == Piece.Color.WHITE) ? 1 : -1;
-
-        // zwykły ruch
-        if (toRow == fromRow + dir && Math.abs(toCol - fromCol) == 1 && gameState[toRow][toCol] == null) {
-            gameState[toRow][toCol] = selectedPiece;
-            gameState[fromRow][fromCol] = null;
-            if ((toRow == 0 && selectedPiece.getColor() == Piece.Color.BLACK) ||
-                (toRow == 7 && selectedPiece.getColor() == Piece.Color.WHITE)) {
-                selectedPiece.makeQueen();
-            }
-            return true;
+    /**
+     * Wykonuje ruch wygenerowany przez {@link MoveGenerator} (cała sekwencja bić naraz).
+     * Ruch nie jest ponownie sprawdzany, a kolej gracza nie jest przełączana.
+     * @param move zakodowany ruch (patrz {@link Move})
+     */
+    public void makeMove(long move) {
+        int fromBit = 1 << Move.from(move);
+        int toBit = 1 << Move.to(move);
+        int captured = Move.captured(move);
+        boolean white = currentTurn == Piece.Color.WHITE;
+        boolean isQueen = (kings & fromBit) != 0;
+        int capturedKings = kings & captured;
+        hash ^= Zobrist.key(Zobrist.type(white, isQueen), Move.from(move))
+                ^ Zobrist.key(Zobrist.type(white, isQueen || Move.isPromotion(move)), Move.to(move))
+                ^ Zobrist.keys(Zobrist.type(!white, false), captured & ~capturedKings)
+                ^ Zobrist.keys(Zobrist.type(!white, true), capturedKings);
+        if (white) {
+            whitePieces = (whitePieces & ~fromBit) | toBit;
+            blackPieces &= ~captured;
+        } else {
+            blackPieces = (blackPieces & ~fromBit) | toBit;
+            whitePieces &= ~captured;
         }
-
-        // bicie
-        if (Math.abs(toRow - fromRow) == 2 && Math.abs(toCol - fromCol) == 2) {
-            int midRow = (fromRow + toRow) / 2;
-            int midCol = (fromCol + toCol) / 2;
-            Piece middle = getPiece(midRow, midCol);
-            if (middle != null && middle.getColor() != getCurrentTurn() && gameState[toRow][toCol] == null) {
-                gameState[toRow][toCol] = selectedPiece;
-                gameState[fromRow][fromCol] = null;
-                gameState[midRow][midCol] = null;
-                if ((toRow == 0 && selectedPiece.getColor() == Piece.Color.BLACK) ||
-                    (toRow == 7 && selectedPiece.getColor() == Piece.Color.WHITE)) {
-                    selectedPiece.makeQueen();
-                }
-                return true;
-            }
+        kings &= ~(captured | fromBit);
+        if (isQueen || Move.isPromotion(move)) {
+            kings |= toBit;
         }
+        status = null;
+    }
+    /**
+     * Wykonuje ruch zapisany w notacji (np. {@code c3-d4} albo {@code c3:e5:c7}),
+     * o ile jest dozwolony, i przekazuje ruch przeciwnikowi - chyba że gra się
+     * zakończyła. Tak klient i bot odtwarzają ruchy rozesłane przez serwer.
+     * @param notation notacja ruchu (jak w {@link MoveList#find(String)})
+     * @return wykonany ruch lub 0, jeśli ruch jest niedozwolony
+     */
+    public long play(String notation){
+        MoveList moves = new MoveList();
+        MoveGenerator.generate(this, moves);
+        return play(moves, moves.find(notation));
+    }
+    /**
+     * Wykonuje ruch podany jako kolejne pola (startowe i pola lądowania),
+     * o ile jest dozwolony - jak {@link #play(String)}, ale bez parsowania tekstu.
+     * @param squares numery pól (0-31)
+     * @param count liczba pól w tablicy
+     * @param moves bufor na wygenerowane ruchy
+     * @return wykonany ruch lub 0, jeśli ruch jest niedozwolony
+     */
+    public long play(int[] squares, int count, MoveList moves){
+        MoveGenerator.generate(this, moves);
+        return play(moves, moves.find(squares, count));
+    }
+    private long play(MoveList moves, int index){
+        if(index < 0) return 0;
+        long move = moves.get(index);
+        makeMove(move);
+        if(!isGameOver()) switchTurn();
+        return move;
     }
-
-    return false;
-}
     /**
      * Sprawdza, czy gracz ma jakikolwiek możliwy ruch.
      * @param color kolor gracza
      * @return true jeśli istnieje możliwy ruch, false w przeciwnym razie
      */
     public boolean hasAnyValidMoves(Piece.Color color) {
-    for (int row = 0; row < 8; row++) {
-        for (int col = 0; col < 8; col++) {
-            Piece piece = getPiece(row, col);
-            if (piece != null && piece.getColor() == color) {
-                //Jeśli ma bicie — ma ruch
-                if (captureAgain(row, col)) {
-                    return true;
-                }
-
-                //Zwykły pionek – sprawdzamy tylko możliwe kroki
-                if (!piece.isQueen()) {
-                    int dir = (color == Piece.Color.WHITE) ? 1 : -1;
-                    for (int dcol = -1; dcol <= 1; dcol += 2) {
-                        int newRow = row + dir;
-                        int newCol = col + dcol;
-                        if (newRow >= 0 && newRow < 8 && newCol >= 0 && newCol < 8) {
-                            if (getPiece(newRow, newCol) == null) {
-                                return true;
-                            }
-                        }
-                    }
-                }
-
-                //Damka – sprawdzamy ruchy w każdą stronę
-                if (piece.isQueen()) {
-                    for (int drow = -1; drow <= 1; drow += 2) {
-                        for (int dcol = -1; dcol <= 1; dcol += 2) {
-                            int r = row + drow;
-                            int c = col + dcol;
-                            while (r >= 0 && r < 8 && c >= 0 && c < 8) {
-                                if (getPiece(r, c) == null) return true;
-                                else break;
-
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        boolean white = color == Piece.Color.WHITE;
+        return canMove(white ? whitePieces : blackPieces, white ? blackPieces : whitePieces,
+                kings, ~(whitePieces | blackPieces), white);
+    }
+    /**
+     * Sprawdza, czy gracz ma jakikolwiek ruch. Najpierw sprawdzane są zwykłe
+     * kroki (tanie), a bicia dopiero wtedy, gdy żaden pionek nie może się ruszyć.
+     * @param own pola gracza
+     * @param enemy pola przeciwnika
+     * @param kings pola damek obu kolorów
+     * @param empty pola puste
+     * @param white true - gracz biały (pionki idą w dół planszy)
+     * @return true jeśli gracz ma ruch
+     */
+    static boolean canMove(int own, int enemy, int kings, int empty, boolean white) {
+        if (own == 0) return false;
+
+        //Zwykły pionek – kroki tylko do przodu, damka – w każdą stronę
+        int men = own & ~kings;
+        int queens = own & kings;
+        int steps = (white
+                ? Bitboard.downLeft(men) | Bitboard.downRight(men)
+                : Bitboard.upLeft(men) | Bitboard.upRight(men))
+                | Bitboard.upLeft(queens) | Bitboard.upRight(queens)
+                | Bitboard.downLeft(queens) | Bitboard.downRight(queens);
+        if ((steps & empty) != 0) return true;
+
+        //Bez wolnego pola obok zostaje tylko bicie
+        return Bitboard.canJump(men, enemy, empty) || Bitboard.canFlyingJump(queens, enemy, empty);
     }
-    return false;
+    /**
+     * Zwraca ocenę pozycji (liczba pionków, ruchy obu graczy, wynik).
+     * Ocena jest liczona raz i pamiętana do następnej zmiany planszy.
+     * @return ocena pozycji
+     */
+    public GameStatus getStatus() {
+        GameStatus current = status;
+        if (current == null) {
+            current = status = GameStatus.evaluate(whitePieces, blackPieces, kings);
+        }
+        return current;
     }
     /**
      * Sprawdza, czy gra się zakończyła (brak możliwych ruchów).
      * @return true jeśli gra zakończona, false w przeciwnym razie
      */
     public boolean isGameOver() {
-    boolean whiteHasPieces = false;
-    boolean blackHasPieces = false;
-
-    for (int i = 0; i < 8; i++) {
-        for (int j = 0; j < 8; j++) {
-            Piece piece = getPiece(i, j);
-            if (piece != null) {
-                if (piece.getColor() == Piece.Color.WHITE) whiteHasPieces = true;
-                if (piece.getColor() == Piece.Color.BLACK) blackHasPieces = true;
-            }
-        }
-    }
-
-    if (!whiteHasPieces || !hasAnyValidMoves(Piece.Color.WHITE)) return true;
-    if (!blackHasPieces || !hasAnyValidMoves(Piece.Color.BLACK)) return true;
-
-    return false;
+        return getStatus().isGameOver();
     }
     /**
      * Zwraca tekstową reprezentację stanu gry.
@@ -396,92 +336,162 @@ public class GameState {
      */
     @Override
     public String toString(){
-        StringBuilder sb = new StringBuilder();
-        for(int row = 0; row < 8; row++){
-            for(int col = 0; col < 8; col++){
-                Piece p = getPiece(row, col);
-                if(p == null){
-                    sb.append(".");
+        StringBuilder sb = new StringBuilder(NUMBER_OF_ROWS * (NUMBER_OF_COLUMNS + 1) + 10);
+        for(int row = 0; row < NUMBER_OF_ROWS; row++){
+            for(int col = 0; col < NUMBER_OF_COLUMNS; col++){
+                int square = Bitboard.square(row, col);
+                int bit = square < 0 ? 0 : 1 << square;
+                char symbol;
+                if((whitePieces & bit) != 0){
+                    symbol = 'w';
+                }
+                else if((blackPieces & bit) != 0){
+                    symbol = 'b';
                 }
                 else{
-                    String symbol = p.getColor() == Piece.Color.WHITE ? "w" : "b";
-                    if(p.isQueen()) symbol = symbol.toUpperCase();
-                    sb.append(symbol);
+                    sb.append('.');
+                    continue;
                 }
+                if((kings & bit) != 0) symbol = Character.toUpperCase(symbol);
+                sb.append(symbol);
             }
-            sb.append("\n");
+            sb.append('\n');
         }
         sb.append("TURN:").append(currentTurn);
         return sb.toString();
     }
     /**
      * Tworzy nowy obiekt GameState na podstawie tekstowej reprezentacji.
+     * Znaki na jasnych polach są pomijane.
      * @param data tekstowa reprezentacja stanu gry
      * @return nowy obiekt GameState
      */
     public static GameState fromString(String data){
         GameState state = new GameState();
-        String[] lines = data.split("\n");
-        for(int row = 0; row < 8; row++){
-            for (int col = 0; col < 8; col++){
-                char ch = lines[row].charAt(col);
-                if(ch == '.'){
-                    state.gameState[row][col] = null;
+        state.load(data);
+        return state;
+    }
+    /**
+     * Wczytuje w miejscu stan gry z tekstowej reprezentacji, bez tworzenia
+     * pośrednich obiektów. Historia ruchów do cofnięcia jest czyszczona.
+     * @param data tekstowa reprezentacja stanu gry (jak w {@link #toString()})
+     */
+    public void load(String data){
+        int white = 0;
+        int black = 0;
+        int queens = 0;
+        int index = 0;
+        for(int row = 0; row < NUMBER_OF_ROWS; row++){
+            for(int col = 0; col < NUMBER_OF_COLUMNS; col++){
+                char ch = data.charAt(index++);
+                int square = Bitboard.square(row, col);
+                if(ch == '.' || square < 0) continue;
+                int bit = 1 << square;
+                if(Character.toLowerCase(ch) == 'w'){
+                    white |= bit;
                 }
                 else{
-                    Piece.Color color = Character.toLowerCase(ch) == 'w' ? Piece.Color.WHITE : Piece.Color.BLACK;
-                    boolean isQueen = Character.isUpperCase(ch);
-                    state.gameState[row][col] = new Piece(color);
-                    if(isQueen){
-                        state.gameState[row][col].makeQueen();
-                    }
+                    black |= bit;
+                }
+                if(Character.isUpperCase(ch)){
+                    queens |= bit;
                 }
             }
+            // koniec wiersza (\n lub \r\n)
+            while(data.charAt(index) != '\n') index++;
+            index++;
         }
-        state.currentTurn = Piece.Color.valueOf(lines[8].split(":")[1].trim());
-        return state;
+        int turn = data.indexOf(':', index) + 1;
+        whitePieces = white;
+        blackPieces = black;
+        kings = queens;
+        currentTurn = Piece.Color.valueOf(data.substring(turn).trim());
+        hash = Zobrist.hash(white, black, queens, currentTurn == Piece.Color.BLACK);
+        undoSize = 0;
+        status = null;
     }
-    
+
+    /**
+     * Ustawia pozycję bezpośrednio z masek bitowych (np. przy przeglądaniu
+     * wszystkich pozycji bazy końcówek). Historia ruchów do cofnięcia jest czyszczona.
+     * @param white maska białych pionków
+     * @param black maska czarnych pionków
+     * @param queens maska damek obu kolorów
+     * @param turn gracz na ruchu
+     */
+    public void setPosition(int white, int black, int queens, Piece.Color turn){
+        whitePieces = white;
+        blackPieces = black;
+        kings = queens;
+        currentTurn = turn;
+        hash = Zobrist.hash(white, black, queens, turn == Piece.Color.BLACK);
+        undoSize = 0;
+        status = null;
+    }
+
     /**
      * Kopiuje stan gry z innego obiektu GameState.
+     * Historia ruchów do cofnięcia nie jest kopiowana.
      * @param other stan gry do skopiowania
      */
     public void copyFrom(GameState other) {
-    for (int row = 0; row < 8; row++) {
-        for (int col = 0; col < 8; col++) {
-            Piece otherPiece = other.getPiece(row, col);
-            if (otherPiece == null) {
-                this.gameState[row][col] = null;
-            } else {
-                Piece copied = new Piece(otherPiece.getColor());
-                if (otherPiece.isQueen()) {
-                    copied.makeQueen();
-                }
-                this.gameState[row][col] = copied;
+        this.whitePieces = other.whitePieces;
+        this.blackPieces = other.blackPieces;
+        this.kings = other.kings;
+        this.currentTurn = other.getCurrentTurn();
+        this.hash = other.hash;
+        this.undoSize = 0;
+        this.status = other.status;
+    }
+    /**
+     * Wykonuje ruch wygenerowany przez {@link MoveGenerator} i przełącza kolej gracza.
+     * Na stosie cofania zapamiętywane są tylko zbite damki - resztę zmian
+     * opisuje sam ruch, więc {@link #undo(long)} przywraca stan bez kopiowania planszy.
+     * @param move zakodowany ruch (patrz {@link Move})
+     */
+    public void apply(long move){
+        if(undoSize == undoStack.length){
+            undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+            undoHashes = Arrays.copyOf(undoHashes, undoSize * 2);
+        }
+        undoHashes[undoSize] = hash;
+        undoStack[undoSize++] = kings & Move.captured(move);
+        makeMove(move);
+        switchTurn();
+    }
+    /**
+     * Cofa ruch wykonany ostatnio przez {@link #apply(long)}.
+     * @param move ten sam zakodowany ruch, który został wykonany
+     */
+    public void undo(long move){
+        currentTurn = (currentTurn == Piece.Color.WHITE) ? Piece.Color.BLACK : Piece.Color.WHITE;
+        int fromBit = 1 << Move.from(move);
+        int toBit = 1 << Move.to(move);
+        int captured = Move.captured(move);
+        int capturedKings = undoStack[--undoSize];
+        hash = undoHashes[undoSize];
+        if (currentTurn == Piece.Color.WHITE) {
+            whitePieces = (whitePieces & ~toBit) | fromBit;
+            blackPieces |= captured;
+        } else {
+            blackPieces = (blackPieces & ~toBit) | fromBit;
+            whitePieces |= captured;
+        }
+        if ((kings & toBit) != 0) {
+            kings &= ~toBit;
+            if (!Move.isPromotion(move)) {
+                kings |= fromBit;
             }
         }
+        kings |= capturedKings;
+        status = null;
     }
-    this.currentTurn = other.getCurrentTurn();
-}
     /**
      * Zwraca kolor zwycięzcy lub null w przypadku remisu.
      * @return kolor wygranego gracza lub null jeśli remis
      */
     public Piece.Color getWinner() {
-    boolean whiteHasMoves = hasAnyValidMoves(Piece.Color.WHITE);
-    boolean blackHasMoves = hasAnyValidMoves(Piece.Color.BLACK);
-
-    if (!whiteHasMoves && blackHasMoves) return Piece.Color.BLACK;
-    if (!blackHasMoves && whiteHasMoves) return Piece.Color.WHITE;
+        return getStatus().getWinner();
+    }
 
-    return null; 
 }
-    
-}       
-       
-            
-        
-        
-    
-    
-
@@ -0,0 +1,76 @@
+package model;
+
+/**
+ * Ocena pozycji na koniec tury: liczba pionków i to, czy każdy z graczy ma
+ * jakikolwiek ruch, a na tej podstawie - czy gra się skończyła i kto wygrał.
+ * Wszystko liczone jest naraz z bitboardów, a {@link GameState} przechowuje
+ * wynik do następnej zmiany planszy, więc kolejne pytania o koniec gry
+ * (klient, serwer, zapis partii) nic nie kosztują. Obiekt jest niezmienny.
+ * <p>
+ * Ocena nie zależy od koloru na ruchu: gra kończy się, gdy którykolwiek
+ * z graczy nie ma ruchu (tak jak dotąd w {@link GameState#isGameOver()}).
+ * @author Grzegorz Dżyg
+ */
+public final class GameStatus {
+
+    private final int whiteCount;
+    private final int blackCount;
+    private final boolean whiteCanMove;
+    private final boolean blackCanMove;
+
+    private GameStatus(int whiteCount, int blackCount, boolean whiteCanMove, boolean blackCanMove){
+        this.whiteCount = whiteCount;
+        this.blackCount = blackCount;
+        this.whiteCanMove = whiteCanMove;
+        this.blackCanMove = blackCanMove;
+    }
+    /**
+     * Ocenia pozycję zapisaną w bitboardach.
+     * @param white pola białych
+     * @param black pola czarnych
+     * @param kings pola damek obu kolorów
+     * @return ocena pozycji
+     */
+    public static GameStatus evaluate(int white, int black, int kings){
+        int empty = ~(white | black);
+        return new GameStatus(Integer.bitCount(white), Integer.bitCount(black),
+                GameState.canMove(white, black, kings, empty, true),
+                GameState.canMove(black, white, kings, empty, false));
+    }
+    /**
+     * Zwraca liczbę pionków i damek gracza.
+     * @param color kolor gracza
+     * @return liczba pionków
+     */
+    public int getPieceCount(Piece.Color color){
+        return color == Piece.Color.WHITE ? whiteCount : blackCount;
+    }
+    /**
+     * Sprawdza, czy gracz ma jakikolwiek ruch (jak {@link GameState#hasAnyValidMoves}).
+     * @param color kolor gracza
+     * @return true jeśli gracz ma ruch
+     */
+    public boolean canMove(Piece.Color color){
+        return color == Piece.Color.WHITE ? whiteCanMove : blackCanMove;
+    }
+    /**
+     * Sprawdza, czy gra się zakończyła (któryś z graczy nie ma ruchu).
+     * @return true jeśli gra zakończona
+     */
+    public boolean isGameOver(){
+        return !whiteCanMove || !blackCanMove;
+    }
+    /**
+     * Zwraca kolor zwycięzcy: wygrywa gracz, który ma ruch, gdy przeciwnik go nie ma.
+     * @return kolor zwycięzcy lub null (gra trwa albo remis)
+     */
+    public Piece.Color getWinner(){
+        if(whiteCanMove == blackCanMove) return null;
+        return whiteCanMove ? Piece.Color.WHITE : Piece.Color.BLACK;
+    }
+    @Override
+    public String toString(){
+        return "GameStatus[white=" + whiteCount + (whiteCanMove ? "" : " (bez ruchu)")
+                + ", black=" + blackCount + (blackCanMove ? "" : " (bez ruchu)") + "]";
+    }
+}
@@ -0,0 +1,111 @@
+package model;
+
+/**
+ * Kodowanie ruchu w jednej liczbie typu long, bez tworzenia obiektów.
+ * Bity 0-4 to pole startowe, bity 5-9 pole docelowe, bit 10 oznacza przemianę
+ * w damkę, a bity 32-63 zawierają zbiór zbitych pionków (bitboard).
+ * Cała sekwencja bić jest jednym ruchem - do jej odtworzenia wystarczą
+ * pole startowe, docelowe, zbite pionki i flaga przemiany.
+ * Notacja tekstowa jest algebraiczna, z punktu widzenia białych:
+ * pole (wiersz 0, kolumna 7) to a1, ruch zwykły to {@code c3-d4}, bicie {@code c3:e5:g7}.
+ * @author Grzegorz Dżyg
+ */
+public final class Move {
+
+    private static final int SQUARE_MASK = 0x1F;
+    private static final int TO_SHIFT = 5;
+    private static final long PROMOTION = 1L << 10;
+
+    private Move(){
+    }
+    /**
+     * Koduje zwykły ruch (bez bicia).
+     * @param from pole startowe (0-31)
+     * @param to pole docelowe (0-31)
+     * @param promotion czy pionek zostaje damką
+     * @return zakodowany ruch
+     */
+    public static long simple(int from, int to, boolean promotion){
+        return from | (to << TO_SHIFT) | (promotion ? PROMOTION : 0L);
+    }
+    /**
+     * Koduje ruch z biciem (pojedynczym lub wielokrotnym).
+     * @param from pole startowe (0-31)
+     * @param to pole, na którym kończy się sekwencja bić
+     * @param captured bitboard zbitych pionków
+     * @param promotion czy pionek zostaje damką w trakcie ruchu
+     * @return zakodowany ruch
+     */
+    public static long capture(int from, int to, int captured, boolean promotion){
+        return simple(from, to, promotion) | ((long) captured << 32);
+    }
+    /**
+     * Zwraca pole startowe ruchu.
+     * @param move zakodowany ruch
+     * @return numer pola (0-31)
+     */
+    public static int from(long move){
+        return (int) move & SQUARE_MASK;
+    }
+    /**
+     * Zwraca pole docelowe ruchu.
+     * @param move zakodowany ruch
+     * @return numer pola (0-31)
+     */
+    public static int to(long move){
+        return (int) (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+    /**
+     * Zwraca zbiór pionków zbitych w tym ruchu.
+     * @param move zakodowany ruch
+     * @return bitboard zbitych pionków (0 dla zwykłego ruchu)
+     */
+    public static int captured(long move){
+        return (int) (move >>> 32);
+    }
+    /**
+     * Sprawdza, czy ruch jest biciem.
+     * @param move zakodowany ruch
+     * @return true jeśli ruch zbija co najmniej jeden pionek
+     */
+    public static boolean isCapture(long move){
+        return (move >>> 32) != 0;
+    }
+    /**
+     * Sprawdza, czy w trakcie ruchu pionek zostaje damką.
+     * @param move zakodowany ruch
+     * @return true jeśli następuje przemiana
+     */
+    public static boolean isPromotion(long move){
+        return (move & PROMOTION) != 0;
+    }
+    /**
+     * Zwraca nazwę pola w notacji algebraicznej (np. {@code c3}).
+     * @param square numer pola (0-31)
+     * @return nazwa pola
+     */
+    public static String squareName(int square){
+        char file = (char) ('a' + 7 - Bitboard.col(square));
+        char rank = (char) ('1' + Bitboard.row(square));
+        return new String(new char[]{file, rank});
+    }
+    /**
+     * Zamienia nazwę pola w notacji algebraicznej na jego numer.
+     * @param name nazwa pola (np. {@code c3})
+     * @return numer pola (0-31) lub -1 jeśli nazwa jest niepoprawna
+     */
+    public static int parseSquare(String name){
+        if(name == null || name.length() != 2) return -1;
+        int col = 7 - (Character.toLowerCase(name.charAt(0)) - 'a');
+        int row = name.charAt(1) - '1';
+        return Bitboard.square(row, col);
+    }
+    /**
+     * Zwraca skróconą notację ruchu (tylko pole startowe i docelowe).
+     * @param move zakodowany ruch
+     * @return notacja ruchu, np. {@code c3-d4} lub {@code c3:g7}
+     */
+    public static String toString(long move){
+        return squareName(from(move)) + (isCapture(move) ? ":" : "-") + squareName(to(move));
+    }
+}
@@ -0,0 +1,119 @@
+package model;
+
+/**
+ * Generator wszystkich dozwolonych ruchów gracza, który jest na ruchu.
+ * Zasady są takie same jak w {@link GameState#makeMove(int, int, int, int)}
+ * i {@link GameState#captureAgain(int, int)}: bicie jest obowiązkowe, pionki
+ * biją także do tyłu, damki biją z dowolnej odległości, zbity pionek znika
+ * od razu, a pionek, który w trakcie bicia stanie na ostatnim wierszu,
+ * kontynuuje bicie jako damka.
+ * Każda pełna sekwencja bić (zakończona, gdy nie ma już kolejnego bicia)
+ * jest jednym ruchem. Generator nie tworzy obiektów - ruchy trafiają do
+ * przekazanego bufora {@link MoveList}.
+ * @author Grzegorz Dżyg
+ */
+public final class MoveGenerator {
+
+    private MoveGenerator(){
+    }
+    /**
+     * Wypełnia bufor wszystkimi dozwolonymi ruchami gracza, który jest na ruchu.
+     * @param state stan gry
+     * @param moves bufor na ruchy (jest czyszczony)
+     * @return liczba wygenerowanych ruchów
+     */
+    public static int generate(GameState state, MoveList moves){
+        moves.clear();
+        boolean white = state.getCurrentTurn() == Piece.Color.WHITE;
+        int own = white ? state.getWhitePieces() : state.getBlackPieces();
+        int enemy = white ? state.getBlackPieces() : state.getWhitePieces();
+        int kings = state.getKings();
+        if(state.hasCaptureMoves(state.getCurrentTurn())){
+            generateCaptures(own, enemy, kings, white, moves);
+        }
+        else{
+            generateSimpleMoves(own, enemy, kings, white, moves);
+        }
+        return moves.size();
+    }
+    private static void generateSimpleMoves(int own, int enemy, int kings, boolean white, MoveList moves){
+        int occupied = own | enemy;
+        int promotionRow = white ? Bitboard.LAST_ROW : Bitboard.FIRST_ROW;
+        int firstDir = white ? Bitboard.DOWN_LEFT : Bitboard.UP_LEFT;
+        for(int pieces = own; pieces != 0; pieces &= pieces - 1){
+            int from = Integer.numberOfTrailingZeros(pieces);
+            if((kings & 1 << from) == 0){
+                //Zwykły pionek – kroki do przodu
+                for(int dir = firstDir; dir <= firstDir + 1; dir++){
+                    int target = Bitboard.neighbor(from, dir);
+                    if(target >= 0 && (occupied & 1 << target) == 0){
+                        moves.add(Move.simple(from, target, (promotionRow & 1 << target) != 0));
+                    }
+                }
+            }
+            else{
+                //Damka – dowolnie daleko po wolnych polach, od najbliższego
+                for(int dir = 0; dir < 4; dir++){
+                    for(int targets = Bitboard.reach(from, dir, occupied); targets != 0; ){
+                        int target = closest(targets, dir);
+                        targets &= ~(1 << target);
+                        moves.add(Move.simple(from, target, false));
+                    }
+                }
+            }
+        }
+    }
+    private static void generateCaptures(int own, int enemy, int kings, boolean white, MoveList moves){
+        int occupied = own | enemy;
+        int promotionRow = white ? Bitboard.LAST_ROW : Bitboard.FIRST_ROW;
+        for(int pieces = own; pieces != 0; pieces &= pieces - 1){
+            int from = Integer.numberOfTrailingZeros(pieces);
+            boolean king = (kings & 1 << from) != 0;
+            // bijący pionek opuszcza pole startowe, więc nie blokuje własnej drogi
+            searchCaptures(moves, from, from, king, false, enemy, occupied & ~(1 << from), 0, 0, promotionRow);
+        }
+    }
+    /**
+     * Rekurencyjnie szuka kontynuacji bicia z podanego pola.
+     * @return true jeśli z tego pola istnieje co najmniej jedno bicie
+     */
+    private static boolean searchCaptures(MoveList moves, int from, int square, boolean king, boolean promoted,
+            int enemy, int occupied, int captured, int depth, int promotionRow){
+        boolean found = false;
+        for(int dir = 0; dir < 4; dir++){
+            int victim = king ? Bitboard.nearest(square, dir, occupied) : Bitboard.neighbor(square, dir);
+            if(victim < 0 || (enemy & 1 << victim) == 0) continue;
+            int victimBit = 1 << victim;
+            int remainingEnemy = enemy & ~victimBit;
+            int remainingOccupied = occupied & ~victimBit;
+            // pionek ląduje tylko tuż za zbitym, damka na dowolnym wolnym polu za nim
+            int landings;
+            if(king){
+                landings = Bitboard.reach(victim, dir, occupied);
+            }
+            else{
+                int landing = Bitboard.jump(square, dir);
+                landings = landing >= 0 && (occupied & 1 << landing) == 0 ? 1 << landing : 0;
+            }
+            while(landings != 0){
+                int landing = closest(landings, dir);
+                landings &= ~(1 << landing);
+                found = true;
+                boolean nowKing = king || (promotionRow & 1 << landing) != 0;
+                moves.currentPath[depth] = (byte) landing;
+                if(!searchCaptures(moves, from, landing, nowKing, promoted || nowKing != king,
+                        remainingEnemy, remainingOccupied, captured | victimBit, depth + 1, promotionRow)){
+                    moves.addCapture(Move.capture(from, landing, captured | victimBit, promoted || nowKing != king), depth + 1);
+                }
+            }
+        }
+        return found;
+    }
+    /**
+     * Zwraca pole ze zbioru najbliższe pola startowego w podanym kierunku
+     * (ruchy są generowane od najkrótszego).
+     */
+    private static int closest(int squares, int direction){
+        return direction >= Bitboard.DOWN_LEFT ? Integer.numberOfTrailingZeros(squares) : 31 - Integer.numberOfLeadingZeros(squares);
+    }
+}
@@ -0,0 +1,271 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Wielokrotnego użytku bufor ruchów wypełniany przez {@link MoveGenerator}.
+ * Ruchy przechowywane są jako liczby typu long (patrz {@link Move}),
+ * a dla każdego ruchu zapamiętywana jest też droga - kolejne pola lądowania.
+ * Tablice są alokowane raz, więc ponowne generowanie ruchów nie tworzy obiektów.
+ * @author Grzegorz Dżyg
+ */
+public class MoveList {
+
+    /** Maksymalna liczba pól lądowania w jednym ruchu (przeciwnik ma najwyżej 12 pionków). */
+    public static final int MAX_PATH = 12;
+    private static final int DEFAULT_CAPACITY = 128;
+    /** Początkowy rozmiar tablicy mieszającej bić (potęga dwójki). */
+    private static final int SEEN_CAPACITY = 256;
+
+    private long[] moves;
+    private byte[] paths;
+    private byte[] pathLengths;
+    private int size;
+    /** Bieżąca droga podczas przeszukiwania sekwencji bić. */
+    final byte[] currentPath = new byte[MAX_PATH];
+    /**
+     * Dodane bicia (adresowanie otwarte). Miejsce jest zajęte, jeśli jego znacznik
+     * równa się {@link #generation} - dzięki temu {@link #clear()} nie czyści tablicy.
+     */
+    private long[] seen = new long[SEEN_CAPACITY];
+    private int[] seenGeneration = new int[SEEN_CAPACITY];
+    private int generation = 1;
+    private int seenCount;
+
+    /**
+     * Tworzy pusty bufor ruchów.
+     */
+    public MoveList(){
+        moves = new long[DEFAULT_CAPACITY];
+        paths = new byte[DEFAULT_CAPACITY * MAX_PATH];
+        pathLengths = new byte[DEFAULT_CAPACITY];
+    }
+    /**
+     * Zwraca liczbę ruchów w buforze.
+     * @return liczba ruchów
+     */
+    public int size(){
+        return size;
+    }
+    /**
+     * Usuwa wszystkie ruchy z bufora.
+     */
+    public void clear(){
+        size = 0;
+        seenCount = 0;
+        if(++generation == 0){
+            Arrays.fill(seenGeneration, 0);
+            generation = 1;
+        }
+    }
+    /**
+     * Zwraca ruch o podanym indeksie.
+     * @param index indeks ruchu
+     * @return zakodowany ruch
+     */
+    public long get(int index){
+        return moves[index];
+    }
+    /**
+     * Zwraca liczbę pól lądowania w ruchu (1 dla zwykłego ruchu i pojedynczego bicia).
+     * @param index indeks ruchu
+     * @return długość drogi
+     */
+    public int pathLength(int index){
+        return pathLengths[index];
+    }
+    /**
+     * Zwraca kolejne pole lądowania ruchu.
+     * @param index indeks ruchu
+     * @param step numer kroku (od 0)
+     * @return numer pola (0-31)
+     */
+    public int pathSquare(int index, int step){
+        return paths[index * MAX_PATH + step];
+    }
+    /**
+     * Zamienia miejscami dwa ruchy (np. przy porządkowaniu ruchów).
+     * @param i indeks pierwszego ruchu
+     * @param j indeks drugiego ruchu
+     */
+    public void swap(int i, int j){
+        long move = moves[i];
+        moves[i] = moves[j];
+        moves[j] = move;
+        byte length = pathLengths[i];
+        pathLengths[i] = pathLengths[j];
+        pathLengths[j] = length;
+        for(int k = 0; k < MAX_PATH; k++){
+            byte square = paths[i * MAX_PATH + k];
+            paths[i * MAX_PATH + k] = paths[j * MAX_PATH + k];
+            paths[j * MAX_PATH + k] = square;
+        }
+    }
+    /**
+     * Zwraca indeks podanego ruchu w buforze.
+     * @param move zakodowany ruch
+     * @return indeks ruchu lub -1 jeśli go nie ma
+     */
+    public int indexOf(long move){
+        for(int i = 0; i < size; i++){
+            if(moves[i] == move) return i;
+        }
+        return -1;
+    }
+    /**
+     * Dodaje zwykły ruch o drodze złożonej z jednego pola.
+     * @param move zakodowany ruch
+     */
+    void add(long move){
+        ensureCapacity();
+        moves[size] = move;
+        paths[size * MAX_PATH] = (byte) Move.to(move);
+        pathLengths[size] = 1;
+        size++;
+    }
+    /**
+     * Dodaje ruch z biciem, którego droga jest zapisana w {@link #currentPath}.
+     * Sekwencje prowadzące do tego samego wyniku są dodawane tylko raz.
+     * @param move zakodowany ruch
+     * @param pathLength liczba pól lądowania
+     */
+    void addCapture(long move, int pathLength){
+        if(!remember(move)) return;
+        ensureCapacity();
+        moves[size] = move;
+        System.arraycopy(currentPath, 0, paths, size * MAX_PATH, pathLength);
+        pathLengths[size] = (byte) pathLength;
+        size++;
+    }
+    /**
+     * Zapamiętuje bicie w tablicy mieszającej.
+     * @return false, jeśli takie bicie już dodano
+     */
+    private boolean remember(long move){
+        if(2 * (seenCount + 1) > seen.length) growSeen();
+        int mask = seen.length - 1;
+        for(int slot = slot(move, mask); ; slot = (slot + 1) & mask){
+            if(seenGeneration[slot] != generation){
+                seen[slot] = move;
+                seenGeneration[slot] = generation;
+                seenCount++;
+                return true;
+            }
+            if(seen[slot] == move) return false;
+        }
+    }
+    private static int slot(long move, int mask){
+        return (Long.hashCode(move) * 0x9E3779B9 >>> 16) & mask;
+    }
+    /**
+     * Powiększa tablicę mieszającą i wpisuje do niej ruchy z bufora
+     * (w czasie generowania bić są w nim tylko bicia).
+     */
+    private void growSeen(){
+        seen = new long[seen.length * 2];
+        seenGeneration = new int[seen.length];
+        generation = 1;
+        seenCount = 0;
+        for(int i = 0; i < size; i++){
+            remember(moves[i]);
+        }
+    }
+    private void ensureCapacity(){
+        if(size < moves.length) return;
+        int capacity = moves.length * 2;
+        moves = Arrays.copyOf(moves, capacity);
+        paths = Arrays.copyOf(paths, capacity * MAX_PATH);
+        pathLengths = Arrays.copyOf(pathLengths, capacity);
+    }
+    /**
+     * Zwraca pełną notację ruchu wraz ze wszystkimi polami lądowania.
+     * @param index indeks ruchu
+     * @return notacja ruchu, np. {@code c3-d4} lub {@code c3:e5:c7}
+     */
+    public String toNotation(int index){
+        long move = moves[index];
+        StringBuilder sb = new StringBuilder(Move.squareName(Move.from(move)));
+        char separator = Move.isCapture(move) ? ':' : '-';
+        for(int step = 0; step < pathLengths[index]; step++){
+            sb.append(separator).append(Move.squareName(pathSquare(index, step)));
+        }
+        return sb.toString();
+    }
+    /**
+     * Wyszukuje ruch na podstawie notacji. Akceptowana jest pełna droga
+     * ({@code c3:e5:c7}) albo samo pole startowe i docelowe ({@code c3:c7}),
+     * o ile jednoznacznie wskazuje ruch. Bicie, do którego prowadzi kilka dróg,
+     * jest w buforze raz, z pierwszą znalezioną drogą ({@link #toNotation});
+     * inna droga jest przyjmowana, jeśli zaczyna się i kończy na tych samych
+     * polach i przeskakuje te same pionki.
+     * @param notation notacja ruchu
+     * @return indeks ruchu lub -1 jeśli ruch nie istnieje albo jest niejednoznaczny
+     */
+    public int find(String notation){
+        String[] parts = notation.trim().split("[-:x]");
+        if(parts.length < 2) return -1;
+        int[] squares = new int[parts.length];
+        for(int i = 0; i < parts.length; i++){
+            squares[i] = Move.parseSquare(parts[i]);
+            if(squares[i] < 0) return -1;
+        }
+        return find(squares, squares.length);
+    }
+    /**
+     * Wyszukuje ruch na podstawie kolejnych pól: startowego i pól lądowania
+     * (albo tylko startowego i docelowego) - jak {@link #find(String)}, ale bez
+     * parsowania tekstu, np. dla ruchu odebranego w postaci binarnej.
+     * @param squares numery pól (0-31)
+     * @param count liczba pól w tablicy (co najmniej 2)
+     * @return indeks ruchu lub -1 jeśli ruch nie istnieje albo jest niejednoznaczny
+     */
+    public int find(int[] squares, int count){
+        if(count < 2) return -1;
+        int last = count - 1;
+        int found = -1;
+        boolean ambiguous = false;
+        for(int i = 0; i < size; i++){
+            long move = moves[i];
+            if(Move.from(move) != squares[0] || Move.to(move) != squares[last]) continue;
+            if(count > 2 || pathLengths[i] == 1){
+                if(samePath(i, squares, count)) return i;
+                if(count == 2 || !Move.isCapture(move) || !sameCaptures(move, squares, count)) continue;
+            }
+            if(found >= 0) ambiguous = true;
+            found = i;
+        }
+        return ambiguous ? -1 : found;
+    }
+    /**
+     * Sprawdza drogę bicia inną niż zapamiętana: każdy skok idzie po przekątnej
+     * nad dokładnie jednym pionkiem zbitym w tym ruchu, a wszystkie skoki razem
+     * - nad każdym z nich raz.
+     */
+    private static boolean sameCaptures(long move, int[] squares, int count){
+        int captured = Move.captured(move);
+        if(count - 1 != Integer.bitCount(captured)) return false;
+        int jumped = 0;
+        for(int step = 1; step < count; step++){
+            int row = Bitboard.row(squares[step - 1]);
+            int col = Bitboard.col(squares[step - 1]);
+            int rows = Bitboard.row(squares[step]) - row;
+            int cols = Bitboard.col(squares[step]) - col;
+            if(rows == 0 || Math.abs(rows) != Math.abs(cols)) return false;
+            int victims = 0;
+            for(int i = 1; i < Math.abs(rows); i++){
+                victims |= 1 << Bitboard.square(row + i * Integer.signum(rows), col + i * Integer.signum(cols));
+            }
+            victims &= captured;
+            if(Integer.bitCount(victims) != 1 || (jumped & victims) != 0) return false;
+            jumped |= victims;
+        }
+        return jumped == captured;
+    }
+    private boolean samePath(int index, int[] squares, int count){
+        if(pathLengths[index] != count - 1) return false;
+        for(int step = 0; step < pathLengths[index]; step++){
+            if(pathSquare(index, step) != squares[step + 1]) return false;
+        }
+        return true;
+    }
+}
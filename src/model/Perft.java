@@ -0,0 +1,204 @@
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Narzędzie perft - zlicza liście drzewa ruchów do zadanej głębokości.
+ * Służy do wykrywania błędów w regułach (porównanie ze znanymi wynikami)
+ * oraz do pomiaru szybkości generowania ruchów.
+ * Pozycja bez dozwolonych ruchów nie ma potomków (liczone są tylko ruchy,
+ * bez rozstrzygania końca gry).
+ * <p>
+ * Użycie:
+ * <pre>
+ * java model.Perft &lt;głębokość&gt; [plik_z_pozycją] [--divide]
+ * java model.Perft --suite
+ * </pre>
+ * Plik z pozycją zawiera tekst w formacie {@link GameState#toString()}.
+ * @author Grzegorz Dżyg
+ */
+public class Perft {
+
+    private static final String INITIAL =
+            ".w.w.w.w\n" +
+            "w.w.w.w.\n" +
+            ".w.w.w.w\n" +
+            "........\n" +
+            "........\n" +
+            "b.b.b.b.\n" +
+            ".b.b.b.b\n" +
+            "b.b.b.b.\n" +
+            "TURN:WHITE";
+
+    /** Pozycje testowe: opis, pozycja i oczekiwane wyniki dla głębokości 1, 2, ... */
+    private static final Object[][] SUITE = {
+        {"pozycja początkowa", INITIAL,
+            new long[]{7, 49, 302, 1469, 7482, 37986, 190146, 929978}},
+        {"środek gry z biciami w obie strony",
+            ".w.w.w.w\n" +
+            "w.w...w.\n" +
+            ".w...w.w\n" +
+            "..w.....\n" +
+            ".b.b....\n" +
+            "b...b.b.\n" +
+            ".b.b...b\n" +
+            "b.b.b.b.\n" +
+            "TURN:WHITE",
+            new long[]{7, 17, 88, 458, 2640, 13490, 71813}},
+        {"damki - bicie z dystansu i wielokrotne",
+            "........\n" +
+            "..b.....\n" +
+            ".....b..\n" +
+            "w.......\n" +
+            "........\n" +
+            "..b.....\n" +
+            ".......B\n" +
+            "W.......\n" +
+            "TURN:WHITE",
+            new long[]{3, 22, 155, 1197, 9891, 89908}},
+        {"przemiana w trakcie bicia",
+            "........\n" +
+            "........\n" +
+            "........\n" +
+            "........\n" +
+            "...b.b..\n" +
+            "..w.....\n" +
+            ".b.b....\n" +
+            "b.......\n" +
+            "TURN:WHITE",
+            new long[]{2, 10, 45, 193, 886, 3803, 21026}},
+    };
+
+    private final GameState state = new GameState();
+    private final MoveList[] lists;
+
+    /**
+     * Tworzy narzędzie perft z buforami dla podanej maksymalnej głębokości.
+     * @param maxDepth maksymalna głębokość liczenia
+     */
+    public Perft(int maxDepth){
+        lists = new MoveList[maxDepth + 1];
+        for(int i = 0; i <= maxDepth; i++){
+            lists[i] = new MoveList();
+        }
+    }
+    /**
+     * Liczy liście drzewa ruchów z podanej pozycji.
+     * @param position pozycja początkowa (nie jest modyfikowana)
+     * @param depth głębokość (0 lub mniej - sama pozycja, czyli 1 liść)
+     * @return liczba liści
+     */
+    public long count(GameState position, int depth){
+        state.copyFrom(position);
+        return count(0, depth);
+    }
+    private long count(int ply, int depth){
+        if(depth <= 0) return 1;
+        MoveList moves = lists[ply];
+        int size = MoveGenerator.generate(state, moves);
+        if(depth == 1) return size;
+        long nodes = 0;
+        for(int i = 0; i < size; i++){
+            long move = moves.get(i);
+            state.apply(move);
+            nodes += count(ply + 1, depth - 1);
+            state.undo(move);
+        }
+        return nodes;
+    }
+    /**
+     * Wypisuje liczbę liści osobno dla każdego ruchu z korzenia.
+     * @param position pozycja początkowa
+     * @param depth głębokość (co najmniej 1)
+     * @return łączna liczba liści
+     * @throws IllegalArgumentException gdy głębokość jest mniejsza niż 1
+     */
+    public long divide(GameState position, int depth){
+        if(depth < 1) throw new IllegalArgumentException("divide wymaga głębokości co najmniej 1: " + depth);
+        state.copyFrom(position);
+        MoveList root = lists[0];
+        MoveGenerator.generate(state, root);
+        long total = 0;
+        for(int i = 0; i < root.size(); i++){
+            long move = root.get(i);
+            state.apply(move);
+            long nodes = count(1, depth - 1);
+            state.undo(move);
+            System.out.println(root.toNotation(i) + ": " + nodes);
+            total += nodes;
+        }
+        return total;
+    }
+    /**
+     * Uruchamia perft z wiersza poleceń.
+     * @param args głębokość, opcjonalny plik z pozycją i --divide, albo --suite
+     * @throws IOException gdy nie można odczytać pliku z pozycją
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0){
+            System.out.println("Użycie: Perft <głębokość> [plik_z_pozycją] [--divide] | --suite");
+            return;
+        }
+        if(args[0].equals("--suite")){
+            System.exit(runSuite() ? 0 : 1);
+        }
+        int depth = Integer.parseInt(args[0]);
+        GameState state = GameState.fromString(INITIAL);
+        boolean divide = false;
+        for(int i = 1; i < args.length; i++){
+            if(args[i].equals("--divide")){
+                divide = true;
+            }
+            else{
+                String text = new String(Files.readAllBytes(Paths.get(args[i])), StandardCharsets.UTF_8);
+                state = GameState.fromString(text.replace("\r", ""));
+            }
+        }
+        if(depth < (divide ? 1 : 0)){
+            System.out.println("Głębokość musi wynosić co najmniej " + (divide ? "1 dla --divide" : "0") + ".");
+            System.exit(1);
+        }
+        Perft perft = new Perft(depth);
+        long start = System.nanoTime();
+        long nodes = divide ? perft.divide(state, depth) : perft.count(state, depth);
+        report(depth, nodes, System.nanoTime() - start);
+    }
+    /**
+     * Liczy wszystkie pozycje z zestawu testowego i porównuje z oczekiwanymi wynikami.
+     * @return true jeśli wszystkie wyniki się zgadzają
+     */
+    public static boolean runSuite(){
+        boolean ok = true;
+        long totalNodes = 0;
+        long totalTime = 0;
+        for(Object[] test : SUITE){
+            String name = (String) test[0];
+            GameState state = GameState.fromString((String) test[1]);
+            long[] expected = (long[]) test[2];
+            Perft perft = new Perft(expected.length);
+            System.out.println(name);
+            for(int depth = 1; depth <= expected.length; depth++){
+                long start = System.nanoTime();
+                long nodes = perft.count(state, depth);
+                long time = System.nanoTime() - start;
+                totalNodes += nodes;
+                totalTime += time;
+                boolean match = nodes == expected[depth - 1];
+                ok &= match;
+                System.out.printf("  głębokość %d: %d %s%n", depth, nodes,
+                        match ? "OK" : "BŁĄD (oczekiwano " + expected[depth - 1] + ")");
+            }
+        }
+        report(-1, totalNodes, totalTime);
+        System.out.println(ok ? "Wszystkie wyniki poprawne." : "Wykryto różnice!");
+        return ok;
+    }
+    private static void report(int depth, long nodes, long nanos){
+        double seconds = nanos / 1e9;
+        if(depth >= 0) System.out.println("Głębokość " + depth + ": " + nodes + " liści");
+        System.out.printf("Czas: %.3f s, %.0f liści/s%n", seconds, seconds > 0 ? nodes / seconds : 0.0);
+    }
+}
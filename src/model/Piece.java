@@ -1,26 +1,73 @@
-
 package model;
 
 /**
  * Klasa reprezentująca pionek w grze w warcaby.
  * Obsługuje kolor pionka oraz status damki.
+ * <p>
+ * Pionki są niezmienne i istnieją tylko cztery obiekty (biały i czarny
+ * pionek, biała i czarna damka), wspólne dla wszystkich plansz i wątków.
+ * Plansza sama przechowuje pola w bitboardach ({@link GameState}), a pionek
+ * jest tylko widokiem jednego pola; to samo pole opisuje też kod liczbowy
+ * ({@link #EMPTY}, {@link #WHITE_MAN_CODE}...), który nie wymaga obiektu.
  * @author Grzegorz Dżyg
  */
-public class Piece {
+public final class Piece {
     /**
      * Typ wyliczeniowy kolorów pionka.
      */
     public enum Color {WHITE, BLACK}
-    
-    private Color color;
-    private boolean isQueen;
+
+    /** Kod pustego pola. */
+    public static final byte EMPTY = 0;
+    /** Kod pola z białym pionkiem. */
+    public static final byte WHITE_MAN_CODE = 1;
+    /** Kod pola z czarnym pionkiem. */
+    public static final byte BLACK_MAN_CODE = 2;
+    /** Kod pola z białą damką. */
+    public static final byte WHITE_KING_CODE = 3;
+    /** Kod pola z czarną damką. */
+    public static final byte BLACK_KING_CODE = 4;
+
+    /** Biały pionek. */
+    public static final Piece WHITE_MAN = new Piece(Color.WHITE, false, WHITE_MAN_CODE);
+    /** Czarny pionek. */
+    public static final Piece BLACK_MAN = new Piece(Color.BLACK, false, BLACK_MAN_CODE);
+    /** Biała damka. */
+    public static final Piece WHITE_KING = new Piece(Color.WHITE, true, WHITE_KING_CODE);
+    /** Czarna damka. */
+    public static final Piece BLACK_KING = new Piece(Color.BLACK, true, BLACK_KING_CODE);
+
+    /** Pionki według kodu pola (indeks 0 - puste pole). */
+    private static final Piece[] BY_CODE = {null, WHITE_MAN, BLACK_MAN, WHITE_KING, BLACK_KING};
+
+    private final Color color;
+    private final boolean isQueen;
+    private final byte code;
+
+    private Piece(Color color, boolean isQueen, byte code){
+        this.color = color;
+        this.isQueen = isQueen;
+        this.code = code;
+    }
     /**
-     * Tworzy nowy pionek o zadanym kolorze.
+     * Zwraca pionek o zadanym kolorze i rodzaju.
      * @param color kolor pionka (WHITE lub BLACK)
+     * @param queen true - damka
+     * @return wspólny obiekt pionka
      */
-    public Piece(Color color){
-        this.color = color;
-        this.isQueen = false;
+    public static Piece of(Color color, boolean queen){
+        if(color == Color.WHITE){
+            return queen ? WHITE_KING : WHITE_MAN;
+        }
+        return queen ? BLACK_KING : BLACK_MAN;
+    }
+    /**
+     * Zwraca pionek o podanym kodzie pola.
+     * @param code kod pola ({@link #EMPTY} - {@link #BLACK_KING_CODE})
+     * @return wspólny obiekt pionka lub null dla pustego pola
+     */
+    public static Piece fromCode(int code){
+        return BY_CODE[code];
     }
     /**
      * Zwraca kolor pionka.
@@ -37,10 +84,14 @@ public class Piece {
         return isQueen;
     }
     /**
-     * Ustawia pionek jako damkę.
+     * Zwraca kod pola zajętego przez ten pionek.
+     * @return kod pola
      */
-    public void makeQueen(){
-        this.isQueen = true;
+    public byte getCode(){
+        return code;
+    }
+    @Override
+    public String toString(){
+        return color + (isQueen ? " damka" : " pionek");
     }
-    
 }
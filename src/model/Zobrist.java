@@ -0,0 +1,87 @@
+package model;
+
+/**
+ * Losowe klucze do haszowania pozycji metodą Zobrista.
+ * Hasz pozycji to XOR kluczy wszystkich (rodzaj pionka, pole) oraz klucza
+ * strony na ruchu, dlatego po ruchu wystarczy "wyksorować" zmienione pola.
+ * Klucze są generowane ze stałego ziarna, więc hasze są takie same
+ * w każdym uruchomieniu programu (można je zapisywać w plikach).
+ * @author Grzegorz Dżyg
+ */
+final class Zobrist {
+
+    static final int WHITE_MAN = 0;
+    static final int BLACK_MAN = 1;
+    static final int WHITE_KING = 2;
+    static final int BLACK_KING = 3;
+
+    /** Klucze dla rodzaju pionka i pola. */
+    private static final long[][] PIECES = new long[4][Bitboard.SQUARES];
+    /** Klucz dołączany, gdy na ruchu są czarne. */
+    static final long BLACK_TO_MOVE;
+
+    static {
+        long seed = 0x5EED_C0DE_1234_5678L;
+        for(int type = 0; type < 4; type++){
+            for(int square = 0; square < Bitboard.SQUARES; square++){
+                seed += 0x9E3779B97F4A7C15L;
+                PIECES[type][square] = mix(seed);
+            }
+        }
+        seed += 0x9E3779B97F4A7C15L;
+        BLACK_TO_MOVE = mix(seed);
+    }
+
+    private Zobrist(){
+    }
+    /** Funkcja mieszająca SplitMix64. */
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    /**
+     * Zwraca rodzaj pionka używany jako indeks kluczy.
+     * @param white czy pionek jest biały
+     * @param king czy pionek jest damką
+     * @return rodzaj pionka (0-3)
+     */
+    static int type(boolean white, boolean king){
+        return (white ? WHITE_MAN : BLACK_MAN) + (king ? 2 : 0);
+    }
+    /**
+     * Zwraca klucz pionka danego rodzaju na danym polu.
+     * @param type rodzaj pionka
+     * @param square numer pola
+     * @return klucz
+     */
+    static long key(int type, int square){
+        return PIECES[type][square];
+    }
+    /**
+     * Zwraca XOR kluczy pionków danego rodzaju na wszystkich podanych polach.
+     * @param type rodzaj pionka
+     * @param bits zbiór pól
+     * @return XOR kluczy
+     */
+    static long keys(int type, int bits){
+        long hash = 0;
+        for(; bits != 0; bits &= bits - 1){
+            hash ^= PIECES[type][Integer.numberOfTrailingZeros(bits)];
+        }
+        return hash;
+    }
+    /**
+     * Liczy od zera hasz pozycji.
+     * @param white białe pionki
+     * @param black czarne pionki
+     * @param kings damki
+     * @param blackToMove czy na ruchu są czarne
+     * @return hasz pozycji
+     */
+    static long hash(int white, int black, int kings, boolean blackToMove){
+        return keys(WHITE_MAN, white & ~kings) ^ keys(BLACK_MAN, black & ~kings)
+                ^ keys(WHITE_KING, white & kings) ^ keys(BLACK_KING, black & kings)
+                ^ (blackToMove ? BLACK_TO_MOVE : 0L);
+    }
+}
@@ -0,0 +1,148 @@
+package protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dzieli odbierany strumień bajtów na wiadomości: linie tekstu zakończone
+ * {@code \n} (UTF-8, opcjonalne {@code \r}) albo ramki binarne {@link Protocol}.
+ * Tryb można przełączyć w trakcie dekodowania (np. po linii {@link Protocol#ACCEPT}) -
+ * reszta tego samego bufora jest już czytana jako ramki.
+ * Ten sam dekoder obsługuje gniazda blokujące ({@link #readFrom(InputStream, Handler)})
+ * i nieblokujące ({@link #decode(ByteBuffer, Handler)}). Niepełna wiadomość jest
+ * kopiowana do dekodera tylko do czasu jej dokończenia.
+ * @author Grzegorz Dżyg
+ */
+public final class MessageDecoder {
+
+    /** Najdłuższa dopuszczalna linia - dłuższa oznacza błąd nadawcy. */
+    public static final int MAX_LINE = 64 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Odbiorca zdekodowanych wiadomości. Dane ramki są ważne tylko w czasie wywołania.
+     */
+    public interface Handler {
+        /**
+         * Odebrano linię tekstu.
+         * @param line linia bez znaku końca linii
+         */
+        void line(String line);
+        /**
+         * Odebrano ramkę binarną.
+         * @param type typ ramki
+         * @param payload dane ramki
+         */
+        void frame(int type, ByteBuffer payload);
+    }
+
+    private boolean binary;
+    /** Początek wiadomości, której koniec jeszcze nie dotarł (null - brak). */
+    private byte[] partial;
+    private int partialLength;
+
+    /**
+     * Przełącza dekoder między liniami tekstu a ramkami binarnymi.
+     * @param binary true - ramki binarne
+     */
+    public void setBinary(boolean binary){
+        this.binary = binary;
+    }
+    /**
+     * Sprawdza, czy dekoder czyta ramki binarne.
+     * @return true w trybie binarnym
+     */
+    public boolean isBinary(){
+        return binary;
+    }
+    /**
+     * Dekoduje wszystkie pełne wiadomości z bufora (tablicowego), a niepełną końcówkę zapamiętuje.
+     * @param in odebrane dane; bufor jest zużywany w całości
+     * @param handler odbiorca wiadomości
+     * @return false, jeśli niepełna linia przekroczyła {@link #MAX_LINE}
+     */
+    public boolean decode(ByteBuffer in, Handler handler){
+        byte[] bytes;
+        int start;
+        int end;
+        if(partial != null){
+            append(in.array(), in.arrayOffset() + in.position(), in.remaining());
+            bytes = partial;
+            start = 0;
+            end = partialLength;
+        }
+        else{
+            bytes = in.array();
+            start = in.arrayOffset() + in.position();
+            end = in.arrayOffset() + in.limit();
+        }
+        in.position(in.limit());
+        while(start < end){
+            int next;
+            if(binary){
+                if(end - start < Protocol.HEADER_SIZE) break;
+                int length = (bytes[start] & 0xFF) << 8 | bytes[start + 1] & 0xFF;
+                next = start + Protocol.HEADER_SIZE + length;
+                if(next > end) break;
+                handler.frame(bytes[start + 2] & 0xFF, ByteBuffer.wrap(bytes, start + Protocol.HEADER_SIZE, length));
+            }
+            else{
+                int newline = indexOf(bytes, start, end, (byte) '\n');
+                if(newline < 0) break;
+                int length = newline - start;
+                if(length > 0 && bytes[newline - 1] == '\r') length--;
+                next = newline + 1;
+                handler.line(new String(bytes, start, length, StandardCharsets.UTF_8));
+            }
+            start = next;
+        }
+        if(bytes == partial){
+            // w buforze dekodera zostaje tylko niepełna wiadomość
+            partialLength = end - start;
+            if(partialLength == 0){
+                partial = null;
+            }
+            else{
+                System.arraycopy(partial, start, partial, 0, partialLength);
+            }
+        }
+        else if(start < end){
+            append(bytes, start, end - start);
+        }
+        return binary || partialLength <= MAX_LINE;
+    }
+    /**
+     * Czyta wiadomości z gniazda blokującego aż do końca strumienia.
+     * @param in strumień wejściowy
+     * @param handler odbiorca wiadomości
+     * @throws IOException błąd odczytu albo zbyt długa linia
+     */
+    public void readFrom(InputStream in, Handler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int count;
+        while((count = in.read(buffer.array())) >= 0){
+            buffer.clear().limit(count);
+            if(!decode(buffer, handler)) throw new IOException("Zbyt długa linia");
+        }
+    }
+    private void append(byte[] bytes, int offset, int length){
+        if(partial == null){
+            partial = new byte[Math.max(256, length)];
+        }
+        else if(partialLength + length > partial.length){
+            partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+        }
+        System.arraycopy(bytes, offset, partial, partialLength, length);
+        partialLength += length;
+    }
+    private static int indexOf(byte[] bytes, int start, int end, byte value){
+        for(int i = start; i < end; i++){
+            if(bytes[i] == value) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,234 @@
+package protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import model.GameState;
+import model.Move;
+import model.MoveList;
+import model.Piece;
+
+/**
+ * Binarny protokół gry (wersja BIN1) i jego tłumaczenie na protokół tekstowy.
+ * <p>
+ * Połączenie zaczyna się zawsze w trybie tekstowym (linie UTF-8). Klient, który
+ * zna protokół binarny, wysyła jako pierwszą linię {@value #REQUEST}, ale dalej
+ * pisze tekstem. Serwer odpowiada linią {@value #ACCEPT}, po której wysyła już
+ * tylko ramki. Klient po odebraniu potwierdzenia odsyła tę samą linię i dopiero
+ * po niej przechodzi na ramki, więc serwer wie, od którego bajtu je czytać.
+ * Klient, który nie poprosi o protokół binarny albo nie dostanie potwierdzenia
+ * (np. od starszego serwera), do końca rozmawia tekstem.
+ * <p>
+ * Ramka: długość danych (2 bajty, big-endian), typ wiadomości (1 bajt), dane.
+ * Ruch zajmuje 2 bajty plus 1 bajt na każde kolejne pole lądowania bicia:
+ * pierwszy bajt to pole startowe (bit 7 oznacza bicie), następne to pola
+ * lądowania. Stan planszy to trzy 32-bitowe bitboardy (jak w {@link GameState})
+ * i bajt koloru gracza na ruchu.
+ * @author Grzegorz Dżyg
+ */
+public final class Protocol {
+
+    /** Prośba klienta o protokół binarny. */
+    public static final String REQUEST = "PROTO:BIN1";
+    /**
+     * Odpowiedź serwera - kolejne wiadomości serwera są ramkami binarnymi. Klient
+     * odsyła ją jako ostatnią linię tekstu, zanim sam przejdzie na ramki.
+     */
+    public static final String ACCEPT = "PROTO-OK:BIN1";
+    /**
+     * Prośba o grę: serwer sadza połączenie przy rozgrywce (albo zakłada grę z botem).
+     * Do tej chwili połączenie może tylko oglądać gry, przeglądać ich przebieg
+     * i wracać do przerwanych.
+     */
+    public static final String PLAY = "PLAY";
+    /**
+     * Propozycja remisu. Gracz, który dostał propozycję, przyjmuje ją, odsyłając
+     * tę samą wiadomość (albo {@code GAME_OVER:REMIS}); propozycja wygasa, gdy
+     * zamiast tego wykona ruch. Przesyłana jako {@link #TEXT}.
+     */
+    public static final String DRAW_OFFER = "DRAW:OFFER";
+
+    /** Rozmiar nagłówka ramki (długość i typ). */
+    public static final int HEADER_SIZE = 3;
+    /** Największa długość danych ramki. */
+    public static final int MAX_PAYLOAD = 0xFFFF;
+
+    /** Kolor gracza: 0 - białe, 1 - czarne. */
+    public static final int COLOR = 1;
+    /** Ruch: pole startowe (bit 7 - bicie) i pola lądowania. */
+    public static final int MOVE = 2;
+    /** Stan planszy: bitboardy białych, czarnych i damek oraz kolor na ruchu. */
+    public static final int SNAPSHOT = 3;
+    /** Koniec gry: 0 - wygrywają białe, 1 - czarne, 2 - remis. */
+    public static final int GAME_OVER = 4;
+    /** Wiadomość czatu (UTF-8). */
+    public static final int CHAT = 5;
+    /** Komunikat o błędzie (UTF-8). */
+    public static final int ERROR = 6;
+    /** Dowolna inna wiadomość tekstowa (UTF-8). */
+    public static final int TEXT = 7;
+
+    private static final int CAPTURE_FLAG = 0x80;
+    private static final int SQUARE_MASK = 0x1F;
+    private static final int SNAPSHOT_SIZE = 13;
+
+    private Protocol(){
+    }
+    /**
+     * Koduje wiadomość protokołu tekstowego jako ramkę binarną.
+     * Wiadomości bez odpowiednika binarnego są przesyłane jako {@link #TEXT}.
+     * @param message wiadomość tekstowa (plansza może mieć wiele linii)
+     * @return ramka gotowa do wysłania
+     */
+    public static ByteBuffer encode(String message){
+        if(message.startsWith("MOVE:")){
+            ByteBuffer frame = encodeMove(message.substring("MOVE:".length()));
+            if(frame != null) return frame;
+        }
+        else if(message.startsWith("COLOR:")){
+            return frame(COLOR, 1).put((byte) (message.endsWith("BLACK") ? 1 : 0)).flip();
+        }
+        else if(message.startsWith("GAME_OVER:")){
+            String result = message.substring("GAME_OVER:".length());
+            int code = result.equals("WHITE") ? 0 : result.equals("BLACK") ? 1 : 2;
+            return frame(GAME_OVER, 1).put((byte) code).flip();
+        }
+        else if(message.startsWith("CHAT:")){
+            return text(CHAT, message.substring("CHAT:".length()));
+        }
+        else if(message.startsWith("ERROR:")){
+            return text(ERROR, message.substring("ERROR:".length()));
+        }
+        else if(message.contains("TURN:")){
+            return snapshot(GameState.fromString(message));
+        }
+        return text(TEXT, message);
+    }
+    /**
+     * Odtwarza wiadomość protokołu tekstowego z ramki binarnej.
+     * @param type typ ramki
+     * @param payload dane ramki
+     * @return wiadomość tekstowa lub null, jeśli ramka ma niepoprawną długość
+     */
+    public static String decode(int type, ByteBuffer payload){
+        if(payload.remaining() < minimumSize(type)) return null;
+        switch(type){
+            case COLOR:
+                return payload.get(payload.position()) == 1 ? "COLOR:BLACK" : "COLOR:WHITE";
+            case MOVE:
+                return "MOVE:" + moveNotation(payload);
+            case SNAPSHOT:
+                GameState state = new GameState();
+                readSnapshot(payload, state);
+                return state.toString();
+            case GAME_OVER:
+                int code = payload.get(payload.position());
+                return "GAME_OVER:" + (code == 0 ? "WHITE" : code == 1 ? "BLACK" : "REMIS");
+            case CHAT:
+                return "CHAT:" + text(payload);
+            case ERROR:
+                return "ERROR:" + text(payload);
+            default:
+                return text(payload);
+        }
+    }
+    /**
+     * Sprawdza, czy dane ramki mają długość wymaganą przez jej typ
+     * (tylko takie ramki można odczytać metodami tej klasy).
+     * @param type typ ramki
+     * @param payload dane ramki
+     * @return false, jeśli ramka jest za krótka
+     */
+    public static boolean isValid(int type, ByteBuffer payload){
+        return payload.remaining() >= minimumSize(type);
+    }
+    private static int minimumSize(int type){
+        switch(type){
+            case COLOR:
+            case GAME_OVER:
+                return 1;
+            case MOVE:
+                return 2;
+            case SNAPSHOT:
+                return SNAPSHOT_SIZE;
+            default:
+                return 0;
+        }
+    }
+    /**
+     * Koduje ruch w notacji tekstowej ({@code c3-d4}, {@code c3:e5:c7}).
+     * @param notation notacja ruchu
+     * @return ramka lub null, jeśli notacja jest niepoprawna
+     */
+    public static ByteBuffer encodeMove(String notation){
+        String[] parts = notation.trim().split("[-:x]");
+        if(parts.length < 2 || parts.length > MoveList.MAX_PATH + 1) return null;
+        ByteBuffer frame = frame(MOVE, parts.length);
+        for(int i = 0; i < parts.length; i++){
+            int square = Move.parseSquare(parts[i]);
+            if(square < 0) return null;
+            if(i == 0 && notation.indexOf('-') < 0) square |= CAPTURE_FLAG;
+            frame.put((byte) square);
+        }
+        return frame.flip();
+    }
+    /**
+     * Odczytuje pola ruchu z danych ramki {@link #MOVE}.
+     * @param payload dane ramki
+     * @param squares tablica na pola (co najmniej {@link MoveList#MAX_PATH} + 1)
+     * @return liczba pól
+     */
+    public static int readMove(ByteBuffer payload, int[] squares){
+        int count = Math.min(payload.remaining(), squares.length);
+        for(int i = 0; i < count; i++){
+            squares[i] = payload.get(payload.position() + i) & SQUARE_MASK;
+        }
+        return count;
+    }
+    private static String moveNotation(ByteBuffer payload){
+        int position = payload.position();
+        int first = payload.get(position);
+        char separator = (first & CAPTURE_FLAG) != 0 ? ':' : '-';
+        StringBuilder sb = new StringBuilder(Move.squareName(first & SQUARE_MASK));
+        for(int i = 1; i < payload.remaining(); i++){
+            sb.append(separator).append(Move.squareName(payload.get(position + i) & SQUARE_MASK));
+        }
+        return sb.toString();
+    }
+    /**
+     * Koduje pełny stan planszy.
+     * @param state stan gry
+     * @return ramka {@link #SNAPSHOT}
+     */
+    public static ByteBuffer snapshot(GameState state){
+        return frame(SNAPSHOT, SNAPSHOT_SIZE)
+                .putInt(state.getWhitePieces())
+                .putInt(state.getBlackPieces())
+                .putInt(state.getKings())
+                .put((byte) (state.getCurrentTurn() == Piece.Color.WHITE ? 0 : 1))
+                .flip();
+    }
+    /**
+     * Wczytuje stan planszy z danych ramki {@link #SNAPSHOT}, bez parsowania tekstu.
+     * @param payload dane ramki
+     * @param state stan gry do nadpisania
+     */
+    public static void readSnapshot(ByteBuffer payload, GameState state){
+        int position = payload.position();
+        state.setPosition(payload.getInt(position), payload.getInt(position + 4), payload.getInt(position + 8),
+                payload.get(position + 12) == 0 ? Piece.Color.WHITE : Piece.Color.BLACK);
+    }
+    private static ByteBuffer text(int type, String text){
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_PAYLOAD);
+        return frame(type, length).put(bytes, 0, length).flip();
+    }
+    private static String text(ByteBuffer payload){
+        return new String(payload.array(), payload.arrayOffset() + payload.position(),
+                payload.remaining(), StandardCharsets.UTF_8);
+    }
+    private static ByteBuffer frame(int type, int length){
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+        frame.putShort((short) length).put((byte) type);
+        return frame;
+    }
+}
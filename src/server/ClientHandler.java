@@ -3,20 +3,60 @@ package server;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import logging.Level;
+import logging.Logger;
+import model.MoveList;
+import protocol.MessageDecoder;
+import protocol.Protocol;
 
 /**
  * Obsługuje komunikację z pojedynczym klientem gry warcaby.
- * Realizuje odbiór oraz wysyłkę komunikatów do klienta.
+ * Realizuje odbiór oraz wysyłkę komunikatów do klienta - liniami tekstu
+ * albo ramkami binarnymi, jeśli klient poprosi o {@link Protocol#REQUEST}.
+ * Serwer uruchamia go w osobnym wątku (zwykłym albo wirtualnym).
+ * <p>
+ * Wysyłanie nie blokuje nadawcy: wiadomości trafiają do kolejki połączenia,
+ * a wątek z puli zapisującej opróżnia ją, sklejając oczekujące wiadomości
+ * w jeden zapis do gniazda. Klient, który nie odbiera danych, a w jego kolejce
+ * zbierze się więcej niż {@link Server#DEFAULT_OUTBOUND_LIMIT} bajtów (albo
+ * limit podany przy uruchomieniu serwera), jest rozłączany - nie wstrzymuje
+ * więc rozgrywki ani przeciwnika.
  * @author Grzegorz Dżyg
  */
-public class ClientHandler extends Thread {
+public class ClientHandler implements Runnable, Connection {
     
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+    private static final Logger LOG = Logger.get("server");
+
     Server server;
     Socket socket = new Socket();
-    BufferedReader in;
-    PrintWriter out;
+    InputStream in;
+    private OutputStream output;
+    private final MessageDecoder decoder = new MessageDecoder();
+    /** Pola ruchu z ostatniej ramki {@link Protocol#MOVE}. */
+    private final int[] squares = new int[MoveList.MAX_PATH + 1];
+    /** true po przejściu na protokół binarny - wiadomości są wysyłane jako ramki. */
+    private boolean binary;
+
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    /** Liczba bajtów czekających w kolejce. */
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    /** true, gdy opróżnianie kolejki czeka w puli zapisującej albo trwa. */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Executor writers;
+    private final int outboundLimit;
+    /** Bufor, w którym wiadomości z kolejki są sklejane w jeden zapis. */
+    private byte[] writeBuffer;
+    private volatile GameSession session;
      /**
-     * Tworzy nowy wątek do obsługi klienta.
+     * Tworzy obsługę klienta.
      * @param socket gniazdo klienta
      * @param server serwer gry
      */
@@ -24,13 +64,15 @@ public class ClientHandler extends Thread {
         
         this.socket = socket;
         this.server = server;
+        this.writers = server.writers;
+        this.outboundLimit = server.outboundLimit;
         
         try{
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            in = socket.getInputStream();
+            output = socket.getOutputStream();
         }
         catch(IOException e){
-            e.printStackTrace();
+            LOG.error("Błąd gniazda klienta", e);
         }
     }
     /**
@@ -40,24 +82,141 @@ public class ClientHandler extends Thread {
     public void run(){
         
         try{
-            String line;
-            while((line = in.readLine()) != null){
-                System.out.println("Odebrano od gracza: " + line);
-                server.relayMessage(line, this);
-            }
+            decoder.readFrom(in, new MessageDecoder.Handler(){
+                @Override
+                public void line(String line){
+                    if(line.equals(Protocol.REQUEST)){
+                        startBinary();
+                        return;
+                    }
+                    if(line.equals(Protocol.ACCEPT)){
+                        confirmBinary();
+                        return;
+                    }
+                    received(line);
+                }
+                @Override
+                public void frame(int type, ByteBuffer payload){
+                    if(type == Protocol.MOVE && Protocol.isValid(type, payload)){
+                        // ruch trafia do rozgrywki jako pola, bez zamiany na tekst
+                        if(LOG.isEnabled(Level.TRACE)) LOG.trace("Odebrano od gracza: {}", Protocol.decode(type, payload));
+                        server.relayMove(squares, Protocol.readMove(payload, squares), ClientHandler.this);
+                        return;
+                    }
+                    String message = Protocol.decode(type, payload);
+                    if(message == null){
+                        close();
+                        return;
+                    }
+                    received(message);
+                }
+            });
         }
         catch(IOException e ){
-            System.out.println("Gracz rozłaczony.");
+            LOG.info("Gracz rozłączony: {}", socket.getRemoteSocketAddress());
         }
+        server.disconnected(this);
         
+    }
+    private void received(String message){
+        LOG.trace("Odebrano od gracza: {}", message);
+        server.relayMessage(message, this);
+    }
+    /**
+     * Potwierdza protokół binarny; kolejne wiadomości do klienta są ramkami.
+     * Klient pisze tekstem, dopóki nie odeśle potwierdzenia ({@link #confirmBinary()}).
+     */
+    private synchronized void startBinary(){
+        if(binary) return;
+        sendMessage(Protocol.ACCEPT);
+        binary = true;
+    }
+    /**
+     * Klient odesłał potwierdzenie - kolejne wiadomości od niego są ramkami.
+     */
+    private synchronized void confirmBinary(){
+        if(binary) decoder.setBinary(true);
     }
      /**
-     * Wysyła wiadomość do klienta.
+     * Wysyła wiadomość do klienta: dodaje ją do kolejki i zleca jej opróżnienie.
+     * Może być wywołana z dowolnego wątku i nie czeka na gniazdo.
      * @param message wiadomość do wysłania
      */
-    public void sendMessage(String message){
-        System.out.println(message);
-        out.println(message);
+    @Override
+    public void send(SharedMessage message){
+        LOG.trace("Wysłano: {}", message);
+        if(closed.get()) return;
+        int size;
+        synchronized(this){
+            // kolejność w kolejce rozstrzyga, które wiadomości poszły przed przełączeniem protokołu
+            ByteBuffer data = message.encoded(binary);
+            size = data.remaining();
+            outbound.add(data);
+        }
+        if(queuedBytes.addAndGet(size) > outboundLimit){
+            LOG.warn("Klient nie odbiera wiadomości - rozłączam: {}", socket.getRemoteSocketAddress());
+            close();
+            return;
+        }
+        if(flushScheduled.compareAndSet(false, true)){
+            writers.execute(this::flush);
+        }
+    }
+    /**
+     * Opróżnia kolejkę (wątek puli zapisującej). Wiadomości, które zebrały się
+     * w kolejce, są sklejane w buforze i wysyłane jednym zapisem.
+     */
+    private void flush(){
+        try{
+            while(true){
+                if(writeBuffer == null) writeBuffer = new byte[WRITE_BUFFER_SIZE];
+                int length = 0;
+                ByteBuffer data;
+                while((data = outbound.poll()) != null){
+                    int size = data.remaining();
+                    queuedBytes.addAndGet(-size);
+                    if(length + size > writeBuffer.length){
+                        output.write(writeBuffer, 0, length);
+                        length = 0;
+                        if(size > writeBuffer.length){
+                            output.write(data.array(), data.arrayOffset() + data.position(), size);
+                            continue;
+                        }
+                    }
+                    data.get(writeBuffer, length, size);
+                    length += size;
+                }
+                if(length > 0) output.write(writeBuffer, 0, length);
+                flushScheduled.set(false);
+                // wiadomość dodana między opróżnieniem kolejki a zwolnieniem flagi
+                if(outbound.isEmpty() || !flushScheduled.compareAndSet(false, true)) return;
+            }
+        }
+        catch(IOException e){
+            close();
+        }
+    }
+    @Override
+    public GameSession getSession(){
+        return session;
+    }
+    @Override
+    public void setSession(GameSession session){
+        this.session = session;
+    }
+    /**
+     * Zamyka gniazdo klienta; wątek odczytu kończy się i zgłasza rozłączenie.
+     */
+    @Override
+    public void close(){
+        if(!closed.compareAndSet(false, true)) return;
+        outbound.clear();
+        try{
+            socket.close();
+        }
+        catch(IOException e){
+            LOG.error("Błąd zamykania gniazda", e);
+        }
     }
     
     
@@ -0,0 +1,42 @@
+package server;
+
+/**
+ * Połączenie z jednym klientem, niezależne od sposobu obsługi gniazda
+ * (wątek na klienta - {@link ClientHandler}, pętla zdarzeń - {@link NioServer}).
+ * @author Grzegorz Dżyg
+ */
+public interface Connection {
+
+    /**
+     * Wysyła do klienta jedną linię tekstu. Może być wywołana z dowolnego wątku.
+     * @param message wiadomość do wysłania (bez znaku końca linii)
+     */
+    default void sendMessage(String message){
+        send(new SharedMessage(message));
+    }
+
+    /**
+     * Wysyła do klienta wiadomość zakodowaną wspólnie dla wielu odbiorców
+     * (rozsyłanie ruchów graczom i widzom). Może być wywołana z dowolnego wątku.
+     * @param message wiadomość
+     */
+    void send(SharedMessage message);
+
+    /**
+     * Zamyka połączenie. Kolejne wiadomości są pomijane.
+     */
+    void close();
+
+    /**
+     * Zwraca rozgrywkę, do której należy połączenie - dzięki temu wiadomość
+     * trafia do właściwej rozgrywki bez przeszukiwania listy wszystkich graczy.
+     * @return rozgrywka lub null
+     */
+    GameSession getSession();
+
+    /**
+     * Przypisuje połączenie do rozgrywki (wywoływane przez {@link Lobby}).
+     * @param session rozgrywka lub null
+     */
+    void setSession(GameSession session);
+}
@@ -0,0 +1,402 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.zip.CRC32;
+import logging.Logger;
+import model.GameState;
+import model.MoveList;
+import protocol.Protocol;
+
+/**
+ * Dziennik rozgrywek na dysku: zdarzenia są tylko dopisywane, do kolejnych
+ * plików (segmentów) w jednym katalogu.
+ * <p>
+ * Wpis to numer gry, numer ruchu i ramka {@link Protocol} - taka sama, jaką
+ * dostają klienci binarni: dołączenie gracza to {@link Protocol#COLOR}, dalej
+ * {@link Protocol#MOVE}, {@link Protocol#CHAT} i {@link Protocol#GAME_OVER}.
+ * Wpis poprzedza jego długość i suma CRC32, więc urwany koniec pliku po awarii
+ * jest rozpoznawany i pomijany.
+ * <p>
+ * Rozgrywki dopisują wpisy do bufora w pamięci i nie czekają na dysk. Wątek
+ * {@code game-journal} zapisuje zebrane wpisy jednym zapisem (grupowo), a
+ * {@link FileChannel#force(boolean)} wywołuje najwyżej co {@code syncMillis}
+ * milisekund (0 - po każdym zapisie); po awarii można więc stracić tylko
+ * wpisy z tego okresu.
+ * <p>
+ * Nowy segment zaczyna się od stanu planszy ({@link Protocol#SNAPSHOT}) każdej
+ * trwającej gry, dlatego po restarcie wystarczy odczytać ostatni segment, żeby
+ * odtworzyć przerwane gry.
+ * @author Grzegorz Dżyg
+ */
+public final class GameJournal implements Runnable {
+
+    /** Domyślny odstęp między wymuszeniami zapisu na dysk. */
+    public static final long DEFAULT_SYNC_MILLIS = 100;
+    /** Po przekroczeniu tego rozmiaru zaczynany jest nowy segment. */
+    static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final Logger LOG = Logger.get("journal");
+    private static final String PREFIX = "games-";
+    private static final String SUFFIX = ".journal";
+    /** Początek każdego segmentu: "WJ01". */
+    private static final int MAGIC = 0x574A3031;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    /** Długość, CRC32, numer gry i numer ruchu. */
+    private static final int RECORD_HEADER_SIZE = 16;
+    /** Numer gry wpisów dotyczących samego dziennika. */
+    private static final int JOURNAL_RECORD = 0;
+    /** Wpis kończący stany gier na początku segmentu. */
+    private static final String CHECKPOINTS_DONE = "CHECKPOINTS";
+    /** Tyle bajtów może czekać na zapis; dalsze wpisy są pomijane. */
+    private static final int MAX_PENDING = 32 * 1024 * 1024;
+
+    /**
+     * Gra odczytana z dziennika.
+     */
+    static final class RecoveredGame {
+        final int id;
+        final GameState state = new GameState();
+        int plies;
+        boolean finished;
+
+        RecoveredGame(int id){
+            this.id = id;
+        }
+    }
+
+    private final Path directory;
+    private final long syncNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    /** Wpisy czekające na zapis (dopisywane przez rozgrywki). */
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    /** Wpisy zapisywane właśnie przez wątek dziennika. */
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long dropped;
+    private boolean closing;
+    private volatile boolean failed;
+
+    private FileChannel segment;
+    private int segmentNumber;
+    private int nextGameId = 1;
+    private Runnable checkpointer;
+    private IntSupplier nextGameIds;
+    private Thread writer;
+
+    private GameJournal(Path directory, long syncMillis){
+        this.directory = directory;
+        this.syncNanos = TimeUnit.MILLISECONDS.toNanos(syncMillis);
+    }
+    /**
+     * Otwiera dziennik w podanym katalogu (tworzy go, jeśli nie istnieje).
+     * Przed {@link #start} można odczytać przerwane gry ({@link #recover()}).
+     * @param directory katalog segmentów
+     * @param syncMillis co ile milisekund wymuszać zapis na dysk (0 - po każdym zapisie)
+     * @return dziennik
+     * @throws IOException błąd dostępu do katalogu
+     */
+    public static GameJournal open(Path directory, long syncMillis) throws IOException {
+        Files.createDirectories(directory);
+        GameJournal journal = new GameJournal(directory, Math.max(0, syncMillis));
+        journal.segmentNumber = journal.lastSegment();
+        return journal;
+    }
+    /**
+     * Odczytuje gry przerwane przed końcem (z co najmniej jednym ruchem).
+     * Czyta segmenty od ostatniego wstecz, aż do segmentu z kompletem stanów gier na początku.
+     * @return przerwane gry
+     * @throws IOException błąd odczytu
+     */
+    List<RecoveredGame> recover() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for(int number = segmentNumber; number > 0; number--){
+            Path path = path(number);
+            if(!Files.exists(path)) break;
+            segments.add(0, path);
+            if(hasCheckpoints(path)) break;
+        }
+        Map<Integer, RecoveredGame> games = new LinkedHashMap<>();
+        int[] squares = new int[MoveList.MAX_PATH + 1];
+        MoveList moves = new MoveList();
+        for(Path path : segments){
+            replay(path, games, squares, moves);
+        }
+        List<RecoveredGame> recovered = new ArrayList<>();
+        for(RecoveredGame game : games.values()){
+            nextGameId = Math.max(nextGameId, game.id + 1);
+            if(!game.finished && game.plies > 0) recovered.add(game);
+        }
+        return recovered;
+    }
+    /**
+     * Zwraca najmniejszy numer gry, który nie występuje w odczytanej części dziennika.
+     * @return numer gry
+     */
+    int getNextGameId(){
+        return nextGameId;
+    }
+    /**
+     * Zaczyna nowy segment i uruchamia wątek zapisujący.
+     * @param checkpointer zapisuje stany trwających gier ({@link #append}) na początku segmentu
+     * @param nextGameIds zwraca numer, który dostanie następna gra
+     * @throws IOException błąd tworzenia segmentu
+     */
+    void start(Runnable checkpointer, IntSupplier nextGameIds) throws IOException {
+        this.checkpointer = checkpointer;
+        this.nextGameIds = nextGameIds;
+        roll();
+        writer = new Thread(this, "game-journal");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "journal-shutdown"));
+    }
+    /**
+     * Dopisuje wpis do bufora. Nie czeka na dysk.
+     * @param game numer gry
+     * @param ply liczba ruchów wykonanych w grze (dla ruchu - razem z nim)
+     * @param frame ramka {@link Protocol}; bufor nie jest zmieniany
+     */
+    void append(int game, int ply, ByteBuffer frame){
+        if(failed) return;
+        int length = frame.remaining();
+        lock.lock();
+        try{
+            int size = RECORD_HEADER_SIZE + length;
+            if(pending.remaining() < size && !grow(size)){
+                dropped++;
+                return;
+            }
+            int start = pending.position();
+            pending.putInt(size - 8).putInt(0).putInt(game).putInt(ply);
+            pending.put(frame.array(), frame.arrayOffset() + frame.position(), length);
+            crc.reset();
+            crc.update(pending.array(), start + 8, size - 8);
+            pending.putInt(start + 4, (int) crc.getValue());
+            if(start == 0) written.signal();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    private boolean grow(int size){
+        int capacity = pending.capacity();
+        while(capacity - pending.position() < size) capacity *= 2;
+        if(capacity > MAX_PENDING) return false;
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        pending.flip();
+        larger.put(pending);
+        pending = larger;
+        return true;
+    }
+    /**
+     * Pętla wątku zapisującego: zapisuje zebrane wpisy jednym zapisem
+     * i co {@code syncMillis} wymusza ich zapis na dysk.
+     */
+    @Override
+    public void run(){
+        long lastSync = System.nanoTime();
+        boolean unsynced = false;
+        try{
+            while(true){
+                boolean last;
+                long lost;
+                lock.lock();
+                try{
+                    while(pending.position() == 0 && !closing){
+                        if(!unsynced){
+                            written.await();
+                            continue;
+                        }
+                        long wait = syncNanos - (System.nanoTime() - lastSync);
+                        if(wait <= 0) break;
+                        written.awaitNanos(wait);
+                    }
+                    ByteBuffer batch = pending;
+                    pending = writing;
+                    writing = batch;
+                    last = closing;
+                    lost = dropped;
+                    dropped = 0;
+                }
+                finally{
+                    lock.unlock();
+                }
+                if(lost > 0) LOG.warn("Dziennik gier nie nadąża - pominięto wpisy: {}", lost);
+                writing.flip();
+                unsynced |= writing.hasRemaining();
+                while(writing.hasRemaining()) segment.write(writing);
+                writing.clear();
+                long now = System.nanoTime();
+                if(unsynced && (last || now - lastSync >= syncNanos)){
+                    segment.force(false);
+                    lastSync = now;
+                    unsynced = false;
+                }
+                if(last) return;
+                if(segment.position() >= SEGMENT_SIZE) roll();
+            }
+        }
+        catch(IOException e){
+            failed = true;
+            LOG.error("Błąd zapisu dziennika gier - dalsze wpisy są pomijane", e);
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Zamyka bieżący segment i zaczyna następny: nagłówek, stany trwających gier
+     * i wpis oznaczający, że stany są kompletne.
+     */
+    private void roll() throws IOException {
+        if(segment != null){
+            segment.force(false);
+            segment.close();
+        }
+        segmentNumber++;
+        segment = FileChannel.open(path(segmentNumber), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(MAGIC).putInt(nextGameIds.getAsInt()).flip();
+        while(header.hasRemaining()) segment.write(header);
+        checkpointer.run();
+        append(JOURNAL_RECORD, 0, Protocol.encode(CHECKPOINTS_DONE));
+        LOG.debug("Nowy segment dziennika: {}", path(segmentNumber));
+    }
+    /**
+     * Zapisuje oczekujące wpisy na dysk i kończy wątek zapisujący.
+     */
+    void close(){
+        lock.lock();
+        try{
+            closing = true;
+            written.signal();
+        }
+        finally{
+            lock.unlock();
+        }
+        try{
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+            segment.close();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        catch(IOException e){
+            LOG.error("Błąd zamykania dziennika gier", e);
+        }
+    }
+    private static boolean hasCheckpoints(Path path) throws IOException {
+        boolean[] found = new boolean[1];
+        read(path, (game, ply, type, payload) -> {
+            if(game == JOURNAL_RECORD && CHECKPOINTS_DONE.equals(Protocol.decode(type, payload))) found[0] = true;
+            return !found[0];
+        });
+        return found[0];
+    }
+    /**
+     * Odtwarza gry z jednego segmentu. Stan gry wyznacza dołączenie gracza przed
+     * pierwszym ruchem albo zapisany stan planszy; ruch jest wykonywany tylko,
+     * jeśli jest następnym ruchem gry.
+     */
+    private void replay(Path path, Map<Integer, RecoveredGame> games, int[] squares, MoveList moves) throws IOException {
+        int next = read(path, (game, ply, type, payload) -> {
+            if(game == JOURNAL_RECORD) return true;
+            RecoveredGame recovered = games.get(game);
+            if(type == Protocol.COLOR && ply == 0 && recovered == null){
+                games.put(game, new RecoveredGame(game));
+            }
+            else if(type == Protocol.SNAPSHOT){
+                if(recovered == null) games.put(game, recovered = new RecoveredGame(game));
+                Protocol.readSnapshot(payload, recovered.state);
+                recovered.plies = ply;
+            }
+            else if(type == Protocol.MOVE && recovered != null && ply == recovered.plies + 1){
+                int count = Protocol.readMove(payload, squares);
+                if(recovered.state.play(squares, count, moves) != 0) recovered.plies = ply;
+            }
+            else if(type == Protocol.GAME_OVER && recovered != null){
+                recovered.finished = true;
+            }
+            return true;
+        });
+        nextGameId = Math.max(nextGameId, next);
+    }
+
+    private interface RecordHandler {
+        /**
+         * @return false, jeśli dalsze wpisy nie są potrzebne
+         */
+        boolean record(int game, int ply, int type, ByteBuffer payload);
+    }
+
+    /**
+     * Czyta segment (zmapowany w pamięć) aż do końca albo pierwszego
+     * uszkodzonego wpisu.
+     * @return numer następnej gry z nagłówka segmentu
+     */
+    private static int read(Path path, RecordHandler handler) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size() < SEGMENT_HEADER_SIZE) return 1;
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(data.getInt(0) != MAGIC) throw new IOException("To nie jest segment dziennika: " + path);
+            int nextGame = data.getInt(4);
+            int position = SEGMENT_HEADER_SIZE;
+            byte[] record = new byte[256];
+            CRC32 crc = new CRC32();
+            boolean stopped = false;
+            while(!stopped && data.limit() - position >= RECORD_HEADER_SIZE){
+                int length = data.getInt(position);
+                int end = position + 8 + length;
+                if(length < RECORD_HEADER_SIZE - 8 + Protocol.HEADER_SIZE || end > data.limit()) break;
+                if(record.length < length) record = new byte[length];
+                data.get(position + 8, record, 0, length);
+                crc.reset();
+                crc.update(record, 0, length);
+                if((int) crc.getValue() != data.getInt(position + 4)) break;
+                ByteBuffer frame = ByteBuffer.wrap(record, 0, length);
+                int frameLength = frame.getShort(8) & 0xFFFF;
+                if(frameLength != length - 8 - Protocol.HEADER_SIZE) break;
+                ByteBuffer payload = ByteBuffer.wrap(record, 8 + Protocol.HEADER_SIZE, frameLength);
+                stopped = !handler.record(frame.getInt(0), frame.getInt(4), frame.get(10) & 0xFF, payload);
+                position = end;
+            }
+            if(!stopped && position < data.limit()){
+                LOG.warn("Uszkodzony lub urwany koniec segmentu: {}", path);
+            }
+            return nextGame;
+        }
+    }
+    private int lastSegment() throws IOException {
+        int last = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)){
+            for(Path file : files){
+                String name = file.getFileName().toString();
+                try{
+                    last = Math.max(last, Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                }
+                catch(NumberFormatException e){
+                    // inny plik o podobnej nazwie
+                }
+            }
+        }
+        return last;
+    }
+    private Path path(int number){
+        return directory.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX));
+    }
+}
@@ -0,0 +1,534 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import model.GameRecord;
+import model.GameSnapshot;
+import model.GameState;
+import model.GameStatus;
+import model.Move;
+import model.MoveGenerator;
+import model.MoveList;
+import model.Piece;
+import protocol.Protocol;
+
+/**
+ * Jedna rozgrywka na serwerze: dwóch graczy i stan ich planszy.
+ * Wiadomości gracza trafiają tylko do graczy tej rozgrywki.
+ * Stan planszy należy do serwera: gracz wysyła tylko ruch ({@code MOVE:c3-d4}
+ * albo drogę bicia {@code MOVE:c3:e5:c7}), serwer sprawdza go zasadami z pakietu
+ * {@code model}, wykonuje i rozsyła obu graczom pełną notację ruchu, a po
+ * ostatnim ruchu także wynik ({@code GAME_OVER:}). Niedozwolony ruch nie zmienia
+ * stanu - nadawca dostaje {@code ERROR:} i aktualną planszę.
+ * <p>
+ * Gracz może się poddać ({@code GAME_OVER:} z kolorem przeciwnika), ale remis
+ * wymaga zgody obu stron: propozycję ({@link Protocol#DRAW_OFFER}) serwer przekazuje
+ * przeciwnikowi, a gra kończy się remisem dopiero, gdy ten ją przyjmie.
+ * <p>
+ * Grę mogą oglądać widzowie ({@code WATCH:<numer>}): dołączający widz dostaje
+ * bieżącą planszę, a potem te same ruchy, czat i wynik co gracze. Każda
+ * rozsyłana wiadomość jest kodowana raz ({@link SharedMessage}), niezależnie
+ * od liczby odbiorców; plansza dla widzów jest kodowana raz na ruch.
+ * <p>
+ * Rozgrywka zapisuje przebieg partii ({@link GameRecord}), więc można pobrać
+ * jej historię ({@code HISTORY:}) albo planszę po dowolnym ruchu ({@code REPLAY:}),
+ * także przez kilka chwil po jej zakończeniu (patrz {@link Lobby#findGame(int)}).
+ * <p>
+ * Jeśli serwer prowadzi dziennik ({@link GameJournal}), trafiają do niego
+ * dołączenia graczy i wszystko, co rozgrywka rozsyła. Grę odtworzoną z dziennika
+ * po restarcie gracze podejmują poleceniem {@code RESUME:<numer>:<kolor>}.
+ * Blokada gwarantuje, że gracze i widzowie dostają wiadomości w tej samej kolejności.
+ * <p>
+ * Po każdym ruchu rozgrywka publikuje niezmienny obraz pozycji ({@link GameSnapshot})
+ * w polu volatile. Kto chce tylko odczytać planszę ({@link #getSnapshot()},
+ * {@link #getBoard()}) albo sprawdzić koniec gry ({@link #isFinished()}), nie czeka
+ * na blokadę i nie wstrzymuje wątku, który wykonuje ruchy.
+ * @author Grzegorz Dżyg
+ */
+public class GameSession {
+
+    private final int id;
+    /** Gracze: 0 - białe, 1 - czarne. */
+    private final Connection[] players = new Connection[2];
+    private final GameState state = new GameState();
+    private final MoveList moves = new MoveList();
+    private final List<Connection> spectators = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean finished;
+    /** Wiadomość z wynikiem gry (po jej zakończeniu). */
+    private SharedMessage result;
+    /** Plansza dla dołączających widzów; null - zmieniła się od ostatniego użycia. */
+    private SharedMessage snapshot;
+    /** Liczba wykonanych ruchów. */
+    private int plies;
+    /** Miejsce gracza, który zaproponował remis, lub -1. */
+    private int drawOffer = -1;
+    /** Przebieg partii (dla gry odtworzonej z dziennika - od odtworzonej pozycji). */
+    private GameRecord record = new GameRecord();
+    /** Pozycja po ostatnim ruchu dla czytelników spoza blokady. */
+    private volatile GameSnapshot current = GameSnapshot.of(state, 0);
+    /** Dziennik rozgrywek lub null. */
+    private final GameJournal journal;
+
+    /**
+     * Tworzy pustą rozgrywkę.
+     * @param id numer rozgrywki
+     */
+    public GameSession(int id){
+        this(id, null);
+    }
+    /**
+     * Tworzy pustą rozgrywkę zapisywaną w dzienniku.
+     * @param id numer rozgrywki
+     * @param journal dziennik rozgrywek lub null
+     */
+    GameSession(int id, GameJournal journal){
+        this.id = id;
+        this.journal = journal;
+    }
+    /**
+     * Ustawia stan gry odtworzonej z dziennika (przed dołączeniem graczy).
+     * @param position plansza i kolor na ruchu
+     * @param plies liczba wykonanych ruchów
+     */
+    void restore(GameState position, int plies){
+        lock.lock();
+        try{
+            state.copyFrom(position);
+            this.plies = plies;
+            record = new GameRecord(position, GameRecord.DEFAULT_SNAPSHOT_INTERVAL);
+            current = GameSnapshot.of(state, plies);
+            snapshot = null;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Zwraca numer rozgrywki.
+     * @return numer rozgrywki
+     */
+    public int getId(){
+        return id;
+    }
+    /**
+     * Dodaje gracza. Pierwszy gra białymi, drugi czarnymi; gdy dołączy drugi,
+     * obaj dostają swoje kolory i gra się zaczyna.
+     * @param player połączenie gracza
+     * @return false, jeśli rozgrywka ma już dwóch graczy
+     */
+    boolean join(Connection player){
+        lock.lock();
+        try{
+            int seat = players[0] == null ? 0 : players[1] == null ? 1 : -1;
+            if(seat < 0) return false;
+            players[seat] = player;
+            player.setSession(this);
+            record(new SharedMessage(seat == 0 ? "COLOR:WHITE" : "COLOR:BLACK"));
+            if(players[0] != null && players[1] != null){
+                players[0].sendMessage("COLOR:WHITE");
+                players[1].sendMessage("COLOR:BLACK");
+            }
+            return true;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Sadza gracza na wolnym miejscu trwającej gry (np. odtworzonej z dziennika).
+     * Gracz dostaje swój kolor i planszę, a przeciwnik - informację o powrocie.
+     * @param player połączenie gracza
+     * @param color kolor, którym gracz grał
+     * @return false, jeśli miejsce jest zajęte albo gra się zakończyła
+     */
+    boolean resume(Connection player, Piece.Color color){
+        lock.lock();
+        try{
+            int seat = color == Piece.Color.WHITE ? 0 : 1;
+            if(finished || players[seat] != null) return false;
+            players[seat] = player;
+            player.setSession(this);
+            SharedMessage joined = new SharedMessage("COLOR:" + color);
+            record(joined);
+            player.send(joined);
+            player.sendMessage(current.toString());
+            Connection opponent = players[1 - seat];
+            if(opponent != null) opponent.sendMessage("CHAT:Przeciwnik wrócił do gry.");
+            return true;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Zapisuje w dzienniku stan planszy trwającej gry (na początku nowego segmentu dziennika).
+     */
+    void checkpoint(){
+        lock.lock();
+        try{
+            if(journal != null && !finished && (plies > 0 || players[0] != null && players[1] != null)){
+                journal.append(id, plies, Protocol.snapshot(state));
+            }
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Dodaje widza. Widz dostaje bieżącą planszę (i wynik, jeśli gra się
+     * skończyła), a potem wszystkie kolejne wiadomości rozgrywki.
+     * @param spectator połączenie widza
+     */
+    void watch(Connection spectator){
+        lock.lock();
+        try{
+            spectators.add(spectator);
+            spectator.setSession(this);
+            spectator.sendMessage("WATCHING:" + id);
+            if(snapshot == null) snapshot = new SharedMessage(current.toString());
+            spectator.send(snapshot);
+            if(result != null) spectator.send(result);
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Usuwa gracza (albo widza), który się rozłączył; przeciwnik gracza dostaje informację.
+     * @param player połączenie gracza lub widza
+     * @return true, jeśli odszedł ostatni gracz rozgrywki (odejście widza nie
+     *         usuwa rozgrywki, np. odtworzonej gry czekającej na graczy)
+     */
+    boolean leave(Connection player){
+        lock.lock();
+        try{
+            if(spectators.remove(player)) return false;
+            for(int seat = 0; seat < players.length; seat++){
+                if(players[seat] == player) players[seat] = null;
+            }
+            drawOffer = -1;
+            for(Connection other : players){
+                if(other != null && !finished) other.sendMessage("CHAT:Przeciwnik opuścił grę.");
+            }
+            return players[0] == null && players[1] == null;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Zamyka połączenia graczy, którzy zostali w rozgrywce (np. bota, którego
+     * przeciwnik odszedł). Połączenia są zamykane poza blokadą, bo zamknięcie
+     * może od razu zgłosić rozłączenie do lobby.
+     */
+    void closePlayers(){
+        Connection[] remaining;
+        lock.lock();
+        try{
+            remaining = players.clone();
+        }
+        finally{
+            lock.unlock();
+        }
+        for(Connection player : remaining){
+            if(player != null) player.close();
+        }
+    }
+    /**
+     * Kończy odtworzoną z dziennika grę, do której nie wrócił żaden gracz.
+     * Dziennik dostaje wynik, żeby gra nie wróciła po kolejnym restarcie - remis
+     * ({@code GAME_OVER:REMIS}), bo protokół nie ma osobnego wyniku dla gry
+     * porzuconej. Widzowie dostają wiadomość na czacie.
+     * @return false, jeśli gra już się skończyła albo wrócił do niej gracz
+     */
+    boolean abandon(){
+        lock.lock();
+        try{
+            if(finished || players[0] != null || players[1] != null) return false;
+            finished = true;
+            record(new SharedMessage("GAME_OVER:REMIS"));
+            for(int i = 0; i < spectators.size(); i++){
+                spectators.get(i).sendMessage("CHAT:Gra wygasła - gracze do niej nie wrócili.");
+            }
+            return true;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Zabiera jedynego gracza rozgrywki przerwanej przed pierwszym ruchem,
+     * żeby lobby mogło dobrać mu nowego przeciwnika.
+     * @return gracz (rozgrywka zostaje pusta) albo null
+     */
+    Connection takeAbandonedPlayer(){
+        lock.lock();
+        try{
+            if(plies > 0 || finished || (players[0] == null) == (players[1] == null)) return null;
+            int seat = players[0] != null ? 0 : 1;
+            Connection player = players[seat];
+            players[seat] = null;
+            player.setSession(null);
+            return player;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Obsługuje wiadomość gracza: ruch jest sprawdzany i wykonywany na planszy
+     * serwera, wiadomość czatu i zakończenie gry trafiają do obu graczy,
+     * a propozycja remisu - do przeciwnika.
+     * Inne wiadomości (np. cała plansza w dawnym protokole) są pomijane,
+     * podobnie jak wszystkie wiadomości widzów poza ruchem, na który dostają błąd.
+     * @param message wiadomość
+     * @param sender gracz, który ją wysłał
+     */
+    public void relay(String message, Connection sender){
+        lock.lock();
+        try{
+            if(players[0] != sender && players[1] != sender){
+                if(message.startsWith("MOVE:")) sender.sendMessage("ERROR:Widz nie może wykonywać ruchów.");
+                return;
+            }
+            if(message.startsWith("MOVE:")){
+                move(message.substring("MOVE:".length()), null, 0, sender);
+            }
+            else if(message.equals(Protocol.DRAW_OFFER)){
+                offerDraw(sender);
+            }
+            else if(message.startsWith("GAME_OVER:")){
+                if(finished || !canDeclare(message.substring("GAME_OVER:".length()), sender)) return;
+                finish(message);
+            }
+            else if(message.startsWith("CHAT:")){
+                broadcast(message);
+            }
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Obsługuje ruch odebrany w postaci binarnej: ruch jest wyszukiwany
+     * bezpośrednio po polach, bez składania i dzielenia notacji tekstowej.
+     * @param squares pole startowe i pola lądowania
+     * @param count liczba pól
+     * @param sender gracz, który wysłał ruch
+     */
+    public void relayMove(int[] squares, int count, Connection sender){
+        lock.lock();
+        try{
+            if(players[0] != sender && players[1] != sender){
+                sender.sendMessage("ERROR:Widz nie może wykonywać ruchów.");
+                return;
+            }
+            move(null, squares, count, sender);
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Sprawdza i wykonuje ruch gracza (podany notacją albo polami);
+     * po ruchu kończącym grę rozsyła wynik.
+     */
+    private void move(String notation, int[] squares, int count, Connection sender){
+        int index = -1;
+        String error;
+        if(finished){
+            error = "Gra jest zakończona.";
+        }
+        else if(players[0] == null || players[1] == null){
+            error = "Gra jeszcze się nie zaczęła.";
+        }
+        else if(players[state.getCurrentTurn() == Piece.Color.WHITE ? 0 : 1] != sender){
+            error = "Teraz ruch przeciwnika.";
+        }
+        else{
+            MoveGenerator.generate(state, moves);
+            index = notation != null ? moves.find(notation) : moves.find(squares, count);
+            error = index < 0 ? "Niedozwolony ruch: " + (notation != null ? notation : notation(squares, count)) : null;
+        }
+        if(error != null){
+            sender.sendMessage("ERROR:" + error);
+            sender.sendMessage(current.toString());
+            return;
+        }
+        // ruch zamiast przyjęcia odrzuca propozycję remisu przeciwnika
+        if(drawOffer >= 0 && players[drawOffer] != sender) drawOffer = -1;
+        String played = moves.toNotation(index);
+        state.makeMove(moves.get(index));
+        record.add(moves.get(index), played);
+        plies++;
+        GameStatus status = state.getStatus();
+        if(!status.isGameOver()) state.switchTurn();
+        current = GameSnapshot.of(state, plies);
+        snapshot = null;
+        broadcast("MOVE:" + played);
+        if(status.isGameOver()){
+            Piece.Color winner = status.getWinner();
+            finish("GAME_OVER:" + (winner == null ? "REMIS" : winner.toString()));
+        }
+    }
+    /**
+     * Składa notację ruchu z pól (tylko do komunikatu o błędzie).
+     */
+    private static String notation(int[] squares, int count){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            if(i > 0) text.append(count > 2 ? ':' : '-');
+            text.append(Move.squareName(squares[i]));
+        }
+        return text.toString();
+    }
+    /**
+     * Gracz może zakończyć grę tylko poddaniem albo przyjęciem propozycji remisu
+     * przeciwnika - wygraną ogłasza serwer.
+     */
+    private boolean canDeclare(String result, Connection sender){
+        int seat = players[0] == sender ? 0 : 1;
+        if(result.equals("REMIS")) return drawOffer == 1 - seat;
+        Piece.Color opponent = seat == 0 ? Piece.Color.BLACK : Piece.Color.WHITE;
+        return result.equals(opponent.toString());
+    }
+    /**
+     * Przekazuje propozycję remisu przeciwnikowi, a jeśli przeciwnik sam
+     * zaproponował remis, kończy grę remisem.
+     */
+    private void offerDraw(Connection sender){
+        if(finished || players[0] == null || players[1] == null) return;
+        int seat = players[0] == sender ? 0 : 1;
+        if(drawOffer == 1 - seat){
+            finish("GAME_OVER:REMIS");
+            return;
+        }
+        if(drawOffer == seat) return;
+        drawOffer = seat;
+        players[1 - seat].sendMessage(Protocol.DRAW_OFFER);
+    }
+    private void finish(String message){
+        finished = true;
+        result = new SharedMessage(message);
+        broadcast(result);
+    }
+    private void broadcast(String message){
+        broadcast(new SharedMessage(message));
+    }
+    /**
+     * Wysyła wiadomość graczom i widzom i zapisuje ją w dzienniku;
+     * wiadomość jest kodowana raz dla wszystkich.
+     */
+    private void broadcast(SharedMessage message){
+        record(message);
+        for(Connection player : players){
+            if(player != null) player.send(message);
+        }
+        for(int i = 0; i < spectators.size(); i++){
+            spectators.get(i).send(message);
+        }
+    }
+    private void record(SharedMessage message){
+        if(journal != null) journal.append(id, plies, message.encoded(true));
+    }
+    /**
+     * Sprawdza, czy rozgrywka ma komplet graczy.
+     * @return true, jeśli obaj gracze dołączyli
+     */
+    public boolean isFull(){
+        lock.lock();
+        try{
+            return players[0] != null && players[1] != null;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Zwraca wszystkie ruchy partii w notacji, oddzielone spacjami.
+     * @return historia partii
+     */
+    public String getHistory(){
+        lock.lock();
+        try{
+            StringBuilder history = new StringBuilder(record.size() * 6);
+            for(int i = 0; i < record.size(); i++){
+                if(i > 0) history.append(' ');
+                history.append(record.getNotation(i));
+            }
+            return history.toString();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Zwraca liczbę ruchów zapisanych w przebiegu partii.
+     * @return liczba ruchów
+     */
+    public int getRecordedPlies(){
+        lock.lock();
+        try{
+            return record.size();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Zwraca planszę po podanej liczbie ruchów, w formacie {@link GameState#toString()}.
+     * @param ply liczba ruchów zapisu (0 - pozycja, od której zaczyna się zapis:
+     *            początkowa albo, dla gry odtworzonej z dziennika, pozycja z dziennika)
+     * @return plansza lub null, jeśli partia nie ma tylu ruchów
+     */
+    public String getBoard(int ply){
+        GameState position = new GameState();
+        lock.lock();
+        try{
+            if(ply < 0 || ply > record.size()) return null;
+            record.seek(ply, position);
+        }
+        finally{
+            lock.unlock();
+        }
+        return position.toString();
+    }
+    /**
+     * Zwraca liczbę widzów.
+     * @return liczba widzów
+     */
+    public int getSpectatorCount(){
+        lock.lock();
+        try{
+            return spectators.size();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+    /**
+     * Sprawdza, czy gra się zakończyła (ostatni ruch, remis albo poddanie).
+     * @return true, jeśli gra jest zakończona
+     */
+    public boolean isFinished(){
+        return finished;
+    }
+    /**
+     * Zwraca pozycję po ostatnim ruchu. Nie czeka na blokadę rozgrywki;
+     * zwrócony obraz się nie zmienia, nawet gdy gra toczy się dalej.
+     * @return obraz pozycji
+     */
+    public GameSnapshot getSnapshot(){
+        return current;
+    }
+    /**
+     * Zwraca bieżący stan planszy w formacie tekstowym {@link GameState#toString()}.
+     * Nie czeka na blokadę rozgrywki (patrz {@link #getSnapshot()}).
+     * @return stan planszy
+     */
+    public String getBoard(){
+        return current.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import logging.Level;
+import logging.Logger;
+import protocol.Protocol;
+
+/**
+ * Test obciążeniowy serwera w jednym procesie: porównuje pamięć na połączenie
+ * i opóźnienie przekazania wiadomości w trybach obsługi klientów.
+ * <p>
+ * Test uruchamia serwer na wolnym porcie, łączy dwóch graczy, a potem otwiera
+ * zadaną liczbę bezczynnych połączeń. Pamięć na połączenie to przyrost pamięci
+ * procesu (RSS, a gdy jest niedostępny - zajętej sterty) podzielony przez liczbę
+ * połączeń; obejmuje też gniazda klienckie, bo działają w tym samym procesie.
+ * Opóźnienie to czas od wysłania {@code CHAT:} przez gracza do odebrania tej
+ * samej wiadomości odesłanej przez serwer (serwer przekazuje ją obu graczom).
+ * Dziennik serwera jest wyłączony, żeby nie mierzyć szybkości konsoli.
+ * <p>
+ * Użycie: {@code java server.LoadTest [klienci=10000] [platform|virtual|nio] [wiadomości=2000]}.
+ * Przy 10 000 klientów proces potrzebuje ok. 20 000 deskryptorów plików ({@code ulimit -n}).
+ * @author Grzegorz Dżyg
+ */
+public class LoadTest {
+
+    private static final int WARMUP = 200;
+    private static final long CONNECT_TIMEOUT_MILLIS = 120_000;
+
+    /**
+     * Uruchamia test.
+     * @param args liczba bezczynnych klientów, tryb serwera i liczba mierzonych wiadomości
+     * @throws Exception błąd połączenia lub przekroczony czas oczekiwania
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String mode = args.length > 1 ? args[1] : "platform";
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Logger.setLevel(Level.OFF);
+
+        int port = freePort();
+        Server server = new Server(port);
+        Thread serverThread;
+        if (mode.equals("nio")) {
+            serverThread = new Thread(() -> server.startNioServer(NioServer.DEFAULT_LOOPS), "server");
+        }
+        else {
+            server.virtualThreads = mode.equals("virtual");
+            serverThread = new Thread(server::startServer, "server");
+        }
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        Socket white = connect(port);
+        Socket black = connect(port);
+        BufferedReader whiteIn = new BufferedReader(new InputStreamReader(white.getInputStream()));
+        PrintWriter whiteOut = new PrintWriter(white.getOutputStream(), true);
+        whiteOut.println(Protocol.PLAY);
+        new PrintWriter(black.getOutputStream(), true).println(Protocol.PLAY);
+        drain(black);
+        while (!whiteIn.readLine().startsWith("COLOR:")) {
+            // czekamy na początek gry
+        }
+
+        long memoryBefore = usedMemory();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long start = System.nanoTime();
+        List<SocketChannel> idle = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            idle.add(SocketChannel.open(new InetSocketAddress("localhost", port)));
+        }
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (server.getConnectionCount() < clients + 2) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Serwer przyjął tylko " + server.getConnectionCount() + " połączeń");
+            }
+            Thread.sleep(10);
+        }
+        long connectMillis = (System.nanoTime() - start) / 1_000_000;
+        Thread.sleep(500);
+        long memoryAfter = usedMemory();
+        int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long[] latencies = new long[messages];
+        for (int i = -WARMUP; i < messages; i++) {
+            String message = "CHAT:ping " + i;
+            long sent = System.nanoTime();
+            whiteOut.println(message);
+            String line;
+            while ((line = whiteIn.readLine()) != null && !line.equals(message)) {
+                // inne wiadomości
+            }
+            if (i >= 0) latencies[i] = System.nanoTime() - sent;
+        }
+        Arrays.sort(latencies);
+
+        console.println("Tryb: " + mode + " (Java " + Runtime.version().feature() + "), klienci: " + clients);
+        console.printf("Połączenie klientów: %d ms, wątki JVM: %d -> %d%n", connectMillis, threadsBefore, threadsAfter);
+        console.printf("Pamięć: %.1f MB -> %.1f MB, na połączenie: %.1f KB%n",
+                memoryBefore / 1048576.0, memoryAfter / 1048576.0,
+                (memoryAfter - memoryBefore) / 1024.0 / Math.max(1, clients));
+        console.printf("Opóźnienie (%d wiadomości): p50 %.1f µs, p99 %.1f µs, max %.1f µs%n", messages,
+                percentile(latencies, 50) / 1000.0, percentile(latencies, 99) / 1000.0,
+                latencies[messages - 1] / 1000.0);
+        for (SocketChannel channel : idle) {
+            channel.close();
+        }
+        System.exit(0);
+    }
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+    /**
+     * Łączy się z serwerem, czekając aż zacznie nasłuchiwać.
+     */
+    private static Socket connect(int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("localhost", port);
+            }
+            catch (IOException e) {
+                if (attempt > 100) throw e;
+                Thread.sleep(50);
+            }
+        }
+    }
+    /**
+     * Odbiera i pomija wiadomości przychodzące do gracza w tle.
+     */
+    private static void drain(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        Thread thread = new Thread(() -> {
+            try {
+                while (in.readLine() != null) {
+                    // wiadomości nie są potrzebne
+                }
+            }
+            catch (IOException e) {
+                // koniec testu
+            }
+        }, "drain");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    /**
+     * Zwraca pamięć procesu (RSS) po odśmieceniu sterty, a gdy system jej nie podaje - zajętą stertę.
+     */
+    private static long usedMemory() throws IOException, InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+        Path status = Paths.get("/proc/self/status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+}
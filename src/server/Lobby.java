@@ -0,0 +1,264 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import model.Piece;
+
+/**
+ * Rejestr rozgrywek i kojarzenie graczy w pary.
+ * Nowy gracz dołącza do rozgrywki czekającej na przeciwnika, a jeśli takiej
+ * nie ma - zakłada nową. Każde połączenie zna swoją rozgrywkę
+ * ({@link Connection#getSession()}), więc przekazanie wiadomości nie zależy
+ * od liczby rozgrywek na serwerze.
+ * Połączenie może też przejść do oglądania wybranej rozgrywki jako widz;
+ * gracz, którego przeciwnik odszedł przed pierwszym ruchem, wraca do kojarzenia,
+ * a gracz przerwanej gry może zająć w niej swoje dawne miejsce.
+ * @author Grzegorz Dżyg
+ */
+public class Lobby {
+
+    /** Tyle ostatnio zakończonych rozgrywek można jeszcze odtworzyć. */
+    private static final int MAX_ARCHIVED = 256;
+
+    private final Map<Integer, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    /** Rozgrywki, do których nie dołączają losowi gracze, i gracze, którzy je założyli. */
+    private final Map<GameSession, Connection> privateSessions = new ConcurrentHashMap<>();
+    private final ReentrantLock waitingLock = new ReentrantLock();
+    /** Rozgrywka z jednym graczem, czekająca na drugiego (lub null). */
+    private GameSession waiting;
+    /** Ostatnio zakończone rozgrywki z co najmniej jednym ruchem (do odtwarzania). */
+    private final Map<Integer, GameSession> archive = new LinkedHashMap<Integer, GameSession>(){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, GameSession> eldest){
+            return size() > MAX_ARCHIVED;
+        }
+    };
+    /** Dziennik, w którym zapisywane są nowe rozgrywki (lub null). */
+    private volatile GameJournal journal;
+    /** Gry odtworzone z dziennika przy starcie serwera, czekające na powrót graczy. */
+    private final List<GameSession> restored = new ArrayList<>();
+
+    /**
+     * Włącza zapisywanie nowych rozgrywek w dzienniku.
+     * @param journal dziennik rozgrywek
+     */
+    void setJournal(GameJournal journal){
+        this.journal = journal;
+    }
+    /**
+     * Dodaje do rejestru grę odtworzoną z dziennika; czeka ona na powrót graczy
+     * do {@link #expireRestored()}.
+     * @param game gra odczytana z dziennika
+     */
+    void restore(GameJournal.RecoveredGame game){
+        GameSession session = new GameSession(game.id, journal);
+        session.restore(game.state, game.plies);
+        sessions.put(game.id, session);
+        restored.add(session);
+        nextId.accumulateAndGet(game.id + 1, Math::max);
+    }
+    /**
+     * Kończy odtworzone gry, do których nie wrócił żaden gracz, i usuwa je
+     * z rejestru: nie są już zapisywane w nowych segmentach dziennika ani
+     * dostępne dla widzów, a po restarcie nie zostaną odtworzone.
+     */
+    void expireRestored(){
+        waitingLock.lock();
+        try{
+            for(GameSession session : restored){
+                if(sessions.get(session.getId()) == session && session.abandon()) remove(session);
+            }
+            restored.clear();
+        }
+        finally{
+            waitingLock.unlock();
+        }
+    }
+    /**
+     * Zapisuje w dzienniku stany wszystkich trwających rozgrywek.
+     */
+    void checkpoint(){
+        for(GameSession session : sessions.values()){
+            session.checkpoint();
+        }
+    }
+    /**
+     * Zwraca numer, który dostanie następna rozgrywka.
+     * @return numer rozgrywki
+     */
+    int getNextId(){
+        return nextId.get();
+    }
+    /**
+     * Ustawia numer następnej rozgrywki (np. po odczytaniu dziennika), jeśli jest większy od bieżącego.
+     * @param id numer rozgrywki
+     */
+    void reserveIds(int id){
+        nextId.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Dodaje gracza do rozgrywki czekającej na przeciwnika albo zakłada nową.
+     * @param player połączenie gracza
+     * @return rozgrywka gracza
+     */
+    public GameSession join(Connection player){
+        waitingLock.lock();
+        try{
+            if(waiting == null || !waiting.join(player)){
+                waiting = create();
+                waiting.join(player);
+            }
+            GameSession session = waiting;
+            if(session.isFull()) waiting = null;
+            return session;
+        }
+        finally{
+            waitingLock.unlock();
+        }
+    }
+    /**
+     * Zakłada rozgrywkę, do której nie dołączają losowi gracze (np. gra z botem).
+     * Gdy założyciel odejdzie, połączenia pozostałych graczy są zamykane.
+     * @param player pierwszy gracz
+     * @return nowa rozgrywka
+     */
+    public GameSession createPrivate(Connection player){
+        GameSession session = create();
+        privateSessions.put(session, player);
+        session.join(player);
+        return session;
+    }
+    /**
+     * Dodaje gracza do wskazanej rozgrywki.
+     * @param player połączenie gracza
+     * @param session rozgrywka
+     * @return false, jeśli rozgrywka ma już dwóch graczy
+     */
+    public boolean join(Connection player, GameSession session){
+        return session.join(player);
+    }
+    /**
+     * Przenosi połączenie do widzów wskazanej rozgrywki. Jeśli połączenie było
+     * graczem innej rozgrywki, opuszcza ją jak przy rozłączeniu.
+     * @param spectator połączenie
+     * @param id numer rozgrywki
+     * @return rozgrywka albo null, jeśli nie ma takiej rozgrywki lub połączenie już do niej należy
+     */
+    public GameSession watch(Connection spectator, int id){
+        GameSession session = sessions.get(id);
+        if(session == null || session == spectator.getSession()) return null;
+        leave(spectator);
+        session.watch(spectator);
+        return session;
+    }
+    /**
+     * Sadza połączenie na wolnym miejscu wskazanej rozgrywki (powrót do przerwanej gry).
+     * Jeśli miejsce jest zajęte, połączenie zostaje poza rozgrywkami.
+     * @param player połączenie
+     * @param id numer rozgrywki
+     * @param color kolor gracza w tej rozgrywce
+     * @return rozgrywka albo null, jeśli nie udało się do niej wrócić
+     */
+    public GameSession resume(Connection player, int id, Piece.Color color){
+        GameSession session = sessions.get(id);
+        if(session == null || session == player.getSession()) return null;
+        leave(player);
+        return session.resume(player, color) ? session : null;
+    }
+    /**
+     * Usuwa rozłączonego gracza z jego rozgrywki; pusta rozgrywka znika z rejestru.
+     * Jeśli gra nie zdążyła się zacząć, pozostały gracz czeka na nowego przeciwnika.
+     * Gdy odchodzi założyciel rozgrywki prywatnej, pozostali gracze (bot) są rozłączani.
+     * @param player połączenie gracza
+     */
+    public void leave(Connection player){
+        GameSession session = player.getSession();
+        if(session == null) return;
+        player.setSession(null);
+        waitingLock.lock();
+        try{
+            if(session.leave(player)){
+                remove(session);
+                return;
+            }
+            if(privateSessions.get(session) == player){
+                // bot nie ma już z kim grać - jego rozłączenie usunie rozgrywkę
+                session.closePlayers();
+                return;
+            }
+            if(waiting == session || privateSessions.containsKey(session)) return;
+            Connection abandoned = session.takeAbandonedPlayer();
+            if(abandoned != null){
+                remove(session);
+                join(abandoned);
+            }
+        }
+        finally{
+            waitingLock.unlock();
+        }
+    }
+    /**
+     * Zwraca rozgrywkę o podanym numerze.
+     * @param id numer rozgrywki
+     * @return rozgrywka lub null
+     */
+    public GameSession getSession(int id){
+        return sessions.get(id);
+    }
+    /**
+     * Zwraca trwającą albo niedawno zakończoną rozgrywkę (do odtwarzania jej przebiegu).
+     * @param id numer rozgrywki
+     * @return rozgrywka lub null
+     */
+    public GameSession findGame(int id){
+        GameSession session = sessions.get(id);
+        if(session != null) return session;
+        synchronized(archive){
+            return archive.get(id);
+        }
+    }
+    /**
+     * Zwraca numery rozgrywek, które można oglądać (z kompletem graczy, niezakończonych).
+     * @param limit największa liczba zwracanych numerów
+     * @return numery rozgrywek
+     */
+    public List<Integer> getRunningGames(int limit){
+        List<Integer> running = new ArrayList<>();
+        for(GameSession session : sessions.values()){
+            if(running.size() >= limit) break;
+            if(session.isFull() && !session.isFinished()) running.add(session.getId());
+        }
+        Collections.sort(running);
+        return running;
+    }
+    /**
+     * Zwraca liczbę trwających rozgrywek (również czekających na drugiego gracza).
+     * @return liczba rozgrywek
+     */
+    public int getSessionCount(){
+        return sessions.size();
+    }
+    private void remove(GameSession session){
+        sessions.remove(session.getId());
+        if(session.getRecordedPlies() > 0){
+            synchronized(archive){
+                archive.put(session.getId(), session);
+            }
+        }
+        privateSessions.remove(session);
+        if(waiting == session) waiting = null;
+    }
+    private GameSession create(){
+        GameSession session = new GameSession(nextId.getAndIncrement(), journal);
+        sessions.put(session.getId(), session);
+        return session;
+    }
+}
@@ -0,0 +1,224 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import logging.Level;
+import logging.Logger;
+import model.MoveList;
+import protocol.MessageDecoder;
+import protocol.Protocol;
+
+/**
+ * Połączenie obsługiwane przez pętlę zdarzeń {@link NioServer}.
+ * Odczyt dzieli strumień bajtów na linie tekstu albo - gdy klient poprosi
+ * o protokół binarny - na ramki {@link Protocol}; ramki są zamieniane na
+ * wiadomości tekstowe, więc rozgrywka nie zależy od protokołu klienta.
+ * Wiadomości wysyłane z dowolnego wątku trafiają do kolejki, którą opróżnia
+ * wątek pętli; gdy gniazdo nie przyjmuje więcej danych, pętla czeka na OP_WRITE.
+ * Klient, w którego kolejce zbierze się więcej bajtów niż limit serwera, jest rozłączany.
+ * @author Grzegorz Dżyg
+ */
+final class NioConnection implements Connection {
+
+    private static final Logger LOG = Logger.get("server");
+
+    private final SocketChannel channel;
+    private final NioServer.EventLoop loop;
+    private volatile SelectionKey key;
+
+    private final MessageDecoder decoder = new MessageDecoder();
+    /** Pola ruchu z ostatniej ramki {@link Protocol#MOVE}. */
+    private final int[] squares = new int[MoveList.MAX_PATH + 1];
+    private final MessageDecoder.Handler handler = new MessageDecoder.Handler(){
+        @Override
+        public void line(String line){
+            if(closed.get()) return;
+            if(line.equals(Protocol.REQUEST)){
+                startBinary();
+                return;
+            }
+            if(line.equals(Protocol.ACCEPT)){
+                confirmBinary();
+                return;
+            }
+            LOG.trace("Odebrano od gracza: {}", line);
+            loop.received(line, NioConnection.this);
+        }
+        @Override
+        public void frame(int type, ByteBuffer payload){
+            if(closed.get()) return;
+            if(type == Protocol.MOVE && Protocol.isValid(type, payload)){
+                // ruch trafia do rozgrywki jako pola, bez zamiany na tekst
+                if(LOG.isEnabled(Level.TRACE)) LOG.trace("Odebrano od gracza: {}", Protocol.decode(type, payload));
+                loop.receivedMove(squares, Protocol.readMove(payload, squares), NioConnection.this);
+                return;
+            }
+            String message = Protocol.decode(type, payload);
+            if(message == null){
+                close();
+                return;
+            }
+            LOG.trace("Odebrano od gracza: {}", message);
+            loop.received(message, NioConnection.this);
+        }
+    };
+    /** true po przejściu na protokół binarny - wiadomości są wysyłane jako ramki. */
+    private boolean binary;
+
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    /** Liczba bajtów czekających w kolejce. */
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    private final int outboundLimit;
+    /** true, gdy kolejka przekroczyła limit - klient nie odbiera danych. */
+    private volatile boolean overflow;
+    /** true, gdy połączenie czeka w kolejce pętli albo na OP_WRITE. */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile GameSession session;
+
+    NioConnection(SocketChannel channel, NioServer.EventLoop loop, int outboundLimit){
+        this.channel = channel;
+        this.loop = loop;
+        this.outboundLimit = outboundLimit;
+    }
+    /**
+     * Rejestruje kanał w selektorze pętli (wątek pętli) i wysyła wiadomości,
+     * które czekały na rejestrację.
+     */
+    void register(Selector selector){
+        try{
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+        catch(IOException e){
+            close();
+            return;
+        }
+        flush();
+    }
+    /**
+     * Wysyła wiadomość jako linię tekstu albo ramkę binarną. Może być wywołana z dowolnego wątku.
+     * @param message wiadomość
+     */
+    @Override
+    public void send(SharedMessage message){
+        LOG.trace("Wysłano: {}", message);
+        if(closed.get() || overflow) return;
+        int size;
+        synchronized(this){
+            // kolejność w kolejce rozstrzyga, które wiadomości poszły przed przełączeniem protokołu
+            ByteBuffer data = message.encoded(binary);
+            size = data.remaining();
+            outbound.add(data);
+        }
+        if(queuedBytes.addAndGet(size) > outboundLimit && !overflow){
+            // połączenie zamknie wątek pętli przy najbliższym opróżnianiu kolejki
+            overflow = true;
+            loop.scheduleFlush(this);
+            return;
+        }
+        if(flushScheduled.compareAndSet(false, true)){
+            loop.scheduleFlush(this);
+        }
+    }
+    /**
+     * Czyta dostępne dane i przekazuje pełne wiadomości do pętli (wątek pętli).
+     */
+    void read(ByteBuffer buffer){
+        buffer.clear();
+        int count;
+        try{
+            count = channel.read(buffer);
+        }
+        catch(IOException e){
+            count = -1;
+        }
+        if(count < 0){
+            close();
+            return;
+        }
+        buffer.flip();
+        if(!decoder.decode(buffer, handler)) close();
+    }
+    /**
+     * Potwierdza protokół binarny; kolejne wiadomości do klienta są ramkami.
+     * Klient pisze tekstem, dopóki nie odeśle potwierdzenia ({@link #confirmBinary()}).
+     */
+    private synchronized void startBinary(){
+        if(binary) return;
+        sendMessage(Protocol.ACCEPT);
+        binary = true;
+    }
+    /**
+     * Klient odesłał potwierdzenie - kolejne wiadomości od niego są ramkami.
+     */
+    private synchronized void confirmBinary(){
+        if(binary) decoder.setBinary(true);
+    }
+    /**
+     * Zapisuje oczekujące wiadomości (wątek pętli). Jeśli gniazdo nie przyjmie
+     * wszystkiego, włącza OP_WRITE i kończy; pętla wywoła metodę ponownie.
+     */
+    void flush(){
+        if(overflow){
+            LOG.warn("Klient nie odbiera wiadomości - rozłączam: {}", channel.socket().getRemoteSocketAddress());
+            close();
+            return;
+        }
+        if(closed.get() || key == null) return; // po rejestracji flush() zostanie wywołane ponownie
+        try{
+            while(true){
+                ByteBuffer head;
+                while((head = outbound.peek()) != null){
+                    int written = channel.write(head);
+                    queuedBytes.addAndGet(-written);
+                    if(head.hasRemaining()){
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    outbound.poll();
+                }
+                if((key.interestOps() & SelectionKey.OP_WRITE) != 0){
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+                flushScheduled.set(false);
+                // wiadomość dodana między opróżnieniem kolejki a zwolnieniem flagi
+                if(outbound.isEmpty() || !flushScheduled.compareAndSet(false, true)) return;
+            }
+        }
+        catch(IOException | CancelledKeyException e){
+            close();
+        }
+    }
+    @Override
+    public GameSession getSession(){
+        return session;
+    }
+    @Override
+    public void setSession(GameSession session){
+        this.session = session;
+    }
+    /**
+     * Zamyka połączenie.
+     */
+    @Override
+    public void close(){
+        if(!closed.compareAndSet(false, true)) return;
+        outbound.clear();
+        if(key != null) key.cancel();
+        try{
+            channel.close();
+        }
+        catch(IOException e){
+            // połączenie i tak jest już zamykane
+        }
+        loop.closed(this);
+    }
+}
@@ -0,0 +1,184 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import logging.Logger;
+
+/**
+ * Serwer oparty na nieblokujących kanałach ({@link Selector}) zamiast wątku na klienta.
+ * Wątek główny przyjmuje połączenia i rozdziela je po kolei między kilka pętli zdarzeń;
+ * każda pętla ma własny selektor i obsługuje odczyt i zapis wszystkich swoich połączeń.
+ * Bezczynne połączenie nie ma własnego wątku ani bufora - bufor odczytu jest jeden
+ * na pętlę, a niepełna linia jest kopiowana do połączenia tylko do czasu jej dokończenia.
+ * @author Grzegorz Dżyg
+ */
+public class NioServer {
+
+    /** Domyślna liczba pętli zdarzeń. */
+    public static final int DEFAULT_LOOPS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final int BACKLOG = 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final Logger LOG = Logger.get("server");
+
+    private final Server server;
+    private final ServerSocketChannel acceptor;
+    private final EventLoop[] loops;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * Otwiera port serwera i uruchamia pętle zdarzeń.
+     * @param server serwer gry, do którego trafiają nowe połączenia i wiadomości
+     * @param port port nasłuchiwania (0 - dowolny wolny port)
+     * @param loopCount liczba pętli zdarzeń (wątków)
+     * @throws IOException błąd otwarcia portu lub selektora
+     */
+    public NioServer(Server server, int port, int loopCount) throws IOException {
+        this.server = server;
+        acceptor = ServerSocketChannel.open();
+        acceptor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        acceptor.bind(new InetSocketAddress(port), BACKLOG);
+        loops = new EventLoop[Math.max(1, loopCount)];
+        for(int i = 0; i < loops.length; i++){
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "nio-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    /**
+     * Przyjmuje połączenia do czasu zamknięcia serwera.
+     * @throws IOException błąd gniazda nasłuchującego
+     */
+    public void run() throws IOException {
+        int next = 0;
+        while(acceptor.isOpen()){
+            SocketChannel channel;
+            try{
+                channel = acceptor.accept();
+            }
+            catch(IOException e){
+                if(!acceptor.isOpen()) break;
+                throw e;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            // gracze są dodawani w kolejności przyjęcia połączeń, niezależnie od pętli
+            NioConnection connection = new NioConnection(channel, loops[next], server.outboundLimit);
+            // bot musi siedzieć w swojej rozgrywce, zanim pętla odczyta jego pierwsze polecenie
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            server.addPlayer(connection, remote);
+            loops[next].register(connection);
+            connections.incrementAndGet();
+            LOG.info("Nowe połączenie: {}", remote);
+            next = (next + 1) % loops.length;
+        }
+    }
+    /**
+     * Zwraca port, na którym serwer nasłuchuje.
+     * @return numer portu
+     * @throws IOException błąd odczytu adresu
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) acceptor.getLocalAddress()).getPort();
+    }
+    /**
+     * Zwraca liczbę otwartych połączeń.
+     * @return liczba połączeń
+     */
+    public int getConnectionCount(){
+        return connections.get();
+    }
+    /**
+     * Zamyka gniazdo nasłuchujące; {@link #run()} kończy się.
+     * @throws IOException błąd zamykania
+     */
+    public void close() throws IOException {
+        acceptor.close();
+    }
+
+    /**
+     * Pętla zdarzeń: jeden wątek, jeden selektor i wspólny bufor odczytu.
+     * Inne wątki przekazują jej pracę (nowe kanały, połączenia do opróżnienia)
+     * przez kolejki, a potem budzą selektor.
+     */
+    final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<NioConnection> registrations = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> flushes = new ConcurrentLinkedQueue<>();
+
+        EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+        void register(NioConnection connection){
+            registrations.add(connection);
+            selector.wakeup();
+        }
+        void scheduleFlush(NioConnection connection){
+            flushes.add(connection);
+            selector.wakeup();
+        }
+        @Override
+        public void run(){
+            while(true){
+                try{
+                    selector.select();
+                }
+                catch(IOException e){
+                    LOG.error("Błąd selektora", e);
+                    return;
+                }
+                NioConnection connection;
+                while((connection = registrations.poll()) != null){
+                    connection.register(selector);
+                }
+                while((connection = flushes.poll()) != null){
+                    connection.flush();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    connection = (NioConnection) key.attachment();
+                    if(key.isValid() && key.isReadable()){
+                        connection.read(readBuffer);
+                    }
+                    if(key.isValid() && key.isWritable()){
+                        connection.flush();
+                    }
+                }
+            }
+        }
+        /**
+         * Przekazuje odebraną linię do serwera (wywoływane w wątku pętli).
+         */
+        void received(String line, NioConnection connection){
+            server.relayMessage(line, connection);
+        }
+        /**
+         * Przekazuje odebrany ruch binarny do serwera (wywoływane w wątku pętli).
+         */
+        void receivedMove(int[] squares, int count, NioConnection connection){
+            server.relayMove(squares, count, connection);
+        }
+        /**
+         * Odnotowuje zamknięcie połączenia.
+         */
+        void closed(NioConnection connection){
+            connections.decrementAndGet();
+            server.disconnected(connection);
+        }
+    }
+}
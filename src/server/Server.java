@@ -3,64 +3,424 @@ package server;
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import engine.BotClient;
+import engine.OpeningBook;
+import engine.Tablebase;
+import engine.TranspositionTable;
+import logging.Logger;
+import model.Piece;
+import protocol.Protocol;
 
 /**
  * Serwer gry warcaby.
  * Odpowiada za przyjmowanie połączeń od klientów oraz przekazywanie komunikatów między nimi.
+ * Gracze są kojarzeni w pary przez {@link Lobby}, a jeden proces obsługuje wiele rozgrywek naraz.
  * @author Grzegorz Dżyg
  */
 public class Server {
     
+    /** Port, na którym serwer nasłuchuje. */
+    public static final int PORT = 8888;
+    /** Domyślny limit bajtów w kolejce wysyłania klienta, po którego przekroczeniu klient jest rozłączany. */
+    public static final int DEFAULT_OUTBOUND_LIMIT = 256 * 1024;
+    private static final Logger LOG = Logger.get("server");
+    /** Domyślny czas (w sekundach) na powrót graczy do gier odtworzonych z dziennika. */
+    public static final long DEFAULT_RESUME_TIMEOUT_SECONDS = 10 * 60;
+    /** Najwięcej numerów gier w odpowiedzi na {@code GAMES}. */
+    private static final int MAX_LISTED_GAMES = 100;
+    
+    private final int port;
     private ServerSocket serverSocket;
-    private ArrayList<ClientHandler> clients = new ArrayList<>();
+    private final Lobby lobby = new Lobby();
+    /** Rozgrywki czekające na bota, według portu, z którego bot się łączy. */
+    private final Map<Integer, GameSession> botSeats = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private NioServer nioServer;
+    /** Czas bota na ruch w milisekundach lub 0, gdy gra dwóch ludzi. */
+    long botTimeMillis;
+    /** Tablica transpozycji wspólna dla botów wszystkich gier (otwierana z {@link #openBotResources()}). */
+    private TranspositionTable botTable;
+    /** Baza końcówek botów lub null. */
+    private Tablebase tablebase;
+    /** Książka debiutowa botów lub null. */
+    private OpeningBook book;
+    /** Tworzy boty poza wątkiem obsługi połączenia (w trybie NIO - poza pętlą zdarzeń). */
+    private final ExecutorService botStarter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bot-starter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Czy w trybie blokującym obsługiwać klientów wątkami wirtualnymi. */
+    boolean virtualThreads;
+    /** Limit bajtów w kolejce wysyłania jednego klienta. */
+    int outboundLimit = DEFAULT_OUTBOUND_LIMIT;
+    /** Pula wątków opróżniających kolejki wysyłania klientów (tryb blokujący). */
+    ExecutorService writers;
+    /** Katalog dziennika rozgrywek lub null, gdy rozgrywki nie są zapisywane. */
+    Path journalDirectory;
+    /** Co ile milisekund dziennik rozgrywek wymusza zapis na dysk. */
+    long journalSyncMillis = GameJournal.DEFAULT_SYNC_MILLIS;
+    /** Po ilu sekundach od startu kończyć odtworzone gry, do których nikt nie wrócił. */
+    long resumeTimeoutSeconds = DEFAULT_RESUME_TIMEOUT_SECONDS;
+
+    /**
+     * Tworzy serwer nasłuchujący na domyślnym porcie {@link #PORT}.
+     */
+    public Server() {
+        this(PORT);
+    }
+    /**
+     * Tworzy serwer nasłuchujący na podanym porcie.
+     * @param port numer portu
+     */
+    public Server(int port) {
+        this.port = port;
+    }
     /**
      * Metoda uruchamiająca serwer gry.
-     * @param args argumenty wiersza poleceń (nieużywane)
+     * @param args {@code --bot [czas_na_ruch_ms]} uruchamia komputerowego przeciwnika,
+     *             {@code --nio [liczba_pętli]} obsługuje połączenia pętlami zdarzeń zamiast wątku na klienta,
+     *             {@code --virtual} obsługuje każdego klienta wątkiem wirtualnym,
+     *             {@code --max-queue <KB>} zmienia limit kolejki wysyłania, po którym wolny klient jest rozłączany,
+     *             {@code --journal [katalog]} zapisuje rozgrywki w dzienniku i odtwarza z niego przerwane gry,
+     *             {@code --journal-sync <ms>} co ile milisekund wymuszać zapis dziennika na dysk (0 - po każdym zapisie),
+     *             {@code --resume-timeout <s>} po ilu sekundach kończyć odtworzone gry, do których nie wrócił żaden gracz
      */
     public static void main(String[] args) {
-        new Server().startServer();
+        Server server = new Server();
+        int loops = 0;
+        for (int i = 0; i < args.length; i++) {
+            boolean hasNumber = i + 1 < args.length && args[i + 1].matches("\\d+");
+            if (args[i].equals("--bot")) {
+                server.botTimeMillis = hasNumber ? Long.parseLong(args[++i]) : BotClient.DEFAULT_TIME_MILLIS;
+            }
+            else if (args[i].equals("--nio")) {
+                loops = hasNumber ? Integer.parseInt(args[++i]) : NioServer.DEFAULT_LOOPS;
+            }
+            else if (args[i].equals("--virtual")) {
+                server.virtualThreads = true;
+            }
+            else if (args[i].equals("--max-queue") && hasNumber) {
+                server.outboundLimit = Integer.parseInt(args[++i]) * 1024;
+            }
+            else if (args[i].equals("--journal")) {
+                boolean hasDirectory = i + 1 < args.length && !args[i + 1].startsWith("--");
+                server.journalDirectory = Paths.get(hasDirectory ? args[++i] : "journal");
+            }
+            else if (args[i].equals("--journal-sync") && hasNumber) {
+                server.journalSyncMillis = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("--resume-timeout") && hasNumber) {
+                server.resumeTimeoutSeconds = Long.parseLong(args[++i]);
+            }
+        }
+        if (loops > 0) {
+            server.startNioServer(loops);
+        }
+        else {
+            server.startServer();
+        }
     }
     
     /**
      * Rozpoczyna nasłuchiwanie na połączenia od klientów.
-     * Akceptuje dwóch graczy i rozpoczyna grę.
+     * Każdy przyjęty klient trafia do lobby, które łączy graczy w pary.
+     * Każdego klienta obsługuje osobny wątek - zwykły lub wirtualny ({@code --virtual}).
      */
     public void startServer(){
      
+        ExecutorService handlers = createHandlerExecutor(virtualThreads);
+        // zapis do gniazda trwa krótko, więc wątki są współdzielone przez wszystkich klientów
+        writers = Executors.newCachedThreadPool();
         try{
             
-            serverSocket = new ServerSocket(8888);
-            System.out.println("Serwer czeka na graczy...");
+            openJournal();
+            openBotResources();
+            serverSocket = new ServerSocket(port);
+            LOG.info("Serwer czeka na graczy...");
             
-            while(clients.size() < 2){
+            while(true){
                 
                 Socket clientSocket = serverSocket.accept();
-                System.out.println("Nowy gracz: " + clientSocket.getInetAddress());
+                connections.incrementAndGet();
                 
                 ClientHandler client = new ClientHandler(clientSocket, this);
-                clients.add(client);
-                client.start();
-                
+                addPlayer(client, (InetSocketAddress) clientSocket.getRemoteSocketAddress());
+                LOG.info("Nowe połączenie: {}", clientSocket.getInetAddress());
+                handlers.execute(client);
                 
             }
-            clients.get(0).sendMessage("COLOR:WHITE");
-            clients.get(1).sendMessage("COLOR:BLACK");
         }
         catch(IOException e){
-            e.printStackTrace();
+            LOG.error("Błąd gniazda serwera", e);
+        }
+    }
+    /**
+     * Tworzy wykonawcę uruchamiającego jeden wątek na klienta. Wątki wirtualne
+     * wymagają Javy 21 - projekt jest budowany dla Javy 17, więc fabryka jest
+     * wyszukiwana w czasie działania, a na starszej maszynie wirtualnej serwer
+     * wraca do zwykłych wątków.
+     */
+    private static ExecutorService createHandlerExecutor(boolean virtual){
+        if (virtual) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                LOG.info("Klienci obsługiwani wątkami wirtualnymi.");
+                return executor;
+            }
+            catch (ReflectiveOperationException e) {
+                LOG.info("Wątki wirtualne niedostępne w Javie {} - używam zwykłych wątków.",
+                        Runtime.version().feature());
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+    /**
+     * Uruchamia serwer oparty na pętlach zdarzeń ({@link NioServer}).
+     * @param loops liczba pętli zdarzeń
+     */
+    public void startNioServer(int loops){
+        try{
+            openJournal();
+            openBotResources();
+            nioServer = new NioServer(this, port, loops);
+            LOG.info("Serwer (NIO, pętle: {}) czeka na graczy...", loops);
+            nioServer.run();
+        }
+        catch(IOException e){
+            LOG.error("Błąd gniazda serwera", e);
+        }
+    }
+    /**
+     * Otwiera dziennik rozgrywek (jeśli jest włączony) i odtwarza z niego gry
+     * przerwane przez zatrzymanie serwera. Gry, do których w ciągu
+     * {@link #resumeTimeoutSeconds} nie wróci żaden gracz, są kończone.
+     */
+    private void openJournal() throws IOException {
+        if (journalDirectory == null) return;
+        GameJournal journal = GameJournal.open(journalDirectory, journalSyncMillis);
+        lobby.setJournal(journal);
+        List<GameJournal.RecoveredGame> recovered = journal.recover();
+        for (GameJournal.RecoveredGame game : recovered) {
+            lobby.restore(game);
+        }
+        lobby.reserveIds(journal.getNextGameId());
+        journal.start(lobby::checkpoint, lobby::getNextId);
+        if (!recovered.isEmpty()) {
+            CompletableFuture.delayedExecutor(resumeTimeoutSeconds, TimeUnit.SECONDS).execute(lobby::expireRestored);
+        }
+        LOG.info("Dziennik rozgrywek: {}, odtworzone gry: {}", journalDirectory.toAbsolutePath(), recovered.size());
+    }
+    /**
+     * Otwiera raz, dla wszystkich gier z botem, bazę końcówek, książkę debiutową
+     * i tablicę transpozycji - bot każdej gry tylko z nich korzysta.
+     */
+    private void openBotResources() {
+        if (botTimeMillis <= 0) return;
+        botTable = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+        tablebase = BotClient.openTablebase();
+        book = BotClient.openBook();
+    }
+    /**
+     * Zwraca liczbę przyjętych połączeń (w trybie NIO - otwartych).
+     * @return liczba połączeń
+     */
+    public int getConnectionCount(){
+        return nioServer != null ? nioServer.getConnectionCount() : connections.get();
+    }
+    /**
+     * Zwraca lobby serwera.
+     * @return lobby
+     */
+    public Lobby getLobby(){
+        return lobby;
+    }
+    /**
+     * Przyjmuje nowe połączenie. Bot uruchomiony przez serwer jest rozpoznawany
+     * po porcie i od razu siada w zarezerwowanej dla niego rozgrywce. Pozostałe
+     * połączenia trafiają do gry dopiero po {@link Protocol#PLAY} (albo innej
+     * wiadomości spoza poleceń lobby), więc widzowie, powtórki i powroty do
+     * przerwanych gier nie zajmują miejsc ani nie uruchamiają bota.
+     * @param client nowe połączenie
+     * @param remote adres klienta
+     * @return rozgrywka bota albo null, jeśli połączenie czeka na pierwsze polecenie
+     */
+    public GameSession addPlayer(Connection client, InetSocketAddress remote){
+        if (remote != null && remote.getAddress().isLoopbackAddress()) {
+            GameSession reserved = botSeats.remove(remote.getPort());
+            if (reserved != null) {
+                if (lobby.join(client, reserved) && lobby.getSession(reserved.getId()) == reserved) {
+                    return reserved;
+                }
+                // gracz odszedł, zanim bot się połączył - bot nie ma z kim grać
+                lobby.leave(client);
+                client.close();
+            }
+        }
+        return null;
+    }
+    /**
+     * Sadza połączenie w grze. W grze z botem każdy gracz dostaje własną rozgrywkę,
+     * a bot łączący się z serwerem jest rozpoznawany po porcie. Bot jest tworzony
+     * w osobnym wątku, żeby nie zatrzymywać obsługi innych połączeń.
+     * @param client połączenie gracza
+     * @return rozgrywka, do której trafił gracz
+     */
+    private GameSession play(Connection client){
+        if (botTimeMillis <= 0) {
+            GameSession session = lobby.join(client);
+            LOG.debug("Nowy gracz w grze {}", session.getId());
+            return session;
+        }
+        GameSession session = lobby.createPrivate(client);
+        botStarter.execute(() -> startBot(session));
+        LOG.debug("Nowa gra z botem: {}", session.getId());
+        return session;
+    }
+    /**
+     * Tworzy bota rozgrywki i rezerwuje mu w niej miejsce. Bot dołącza jako
+     * drugi gracz, zwykłym połączeniem sieciowym.
+     */
+    private void startBot(GameSession session) {
+        // gracz odszedł, zanim przyszła kolej na jego bota
+        if (lobby.getSession(session.getId()) != session) return;
+        BotClient bot = new BotClient("localhost", port, botTimeMillis, botTable, tablebase, book);
+        if (bot.getLocalPort() > 0) {
+            botSeats.put(bot.getLocalPort(), session);
+            bot.start();
+        }
+    }
+    private void watch(String game, Connection spectator){
+        int id;
+        try {
+            id = Integer.parseInt(game);
+        }
+        catch (NumberFormatException e) {
+            id = -1;
+        }
+        GameSession session = lobby.watch(spectator, id);
+        if (session == null) {
+            spectator.sendMessage("ERROR:Nie ma gry " + game + ".");
+            return;
+        }
+        LOG.debug("Nowy widz gry {}", session.getId());
+    }
+    private void replay(String message, Connection sender){
+        String[] parts = message.split(":");
+        GameSession session = null;
+        int ply = -1;
+        try {
+            session = lobby.findGame(Integer.parseInt(parts[1].trim()));
+            if (parts.length > 2) ply = Integer.parseInt(parts[2].trim());
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            // niepoprawne polecenie - odpowiedź jak dla nieznanej gry
         }
+        if (session == null) {
+            sender.sendMessage("ERROR:Nie ma gry " + message.substring(message.indexOf(':') + 1) + ".");
+            return;
+        }
+        if (message.startsWith("HISTORY:")) {
+            // zapis gry odtworzonej z dziennika nie zaczyna się od pozycji początkowej
+            sender.sendMessage("HISTORY:" + session.getId() + ":" + session.getHistory());
+            sender.sendMessage(session.getBoard(0));
+            return;
+        }
+        String board = session.getBoard(ply);
+        if (board == null) {
+            sender.sendMessage("ERROR:Gra " + session.getId() + " nie ma ruchu " + ply + ".");
+            return;
+        }
+        sender.sendMessage("REPLAY:" + session.getId() + ":" + ply + ":" + session.getRecordedPlies());
+        sender.sendMessage(board);
+    }
+    private void resume(String seat, Connection player){
+        String[] parts = seat.trim().split(":");
+        GameSession session = null;
+        try {
+            session = lobby.resume(player, Integer.parseInt(parts[0]), Piece.Color.valueOf(parts[1]));
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            // niepoprawne polecenie - odpowiedź jak przy zajętym miejscu
+        }
+        if (session == null) {
+            player.sendMessage("ERROR:Nie można wrócić do gry " + seat + ".");
+            return;
+        }
+        LOG.info("Gracz wrócił do gry {}", session.getId());
     }
     /**
-     * Przekazuje wiadomość od jednego klienta do wszystkich klientów.
+     * Usuwa rozłączonego klienta z jego rozgrywki.
+     * @param client połączenie
+     */
+    public void disconnected(Connection client){
+        lobby.leave(client);
+    }
+    /**
+     * Przekazuje wiadomość gracza do graczy jego rozgrywki.
+     * Polecenia lobby obsługuje serwer: {@code GAMES} zwraca numery gier, które
+     * można oglądać ({@code GAMES:1 4 7}), a {@code WATCH:<numer>} przenosi
+     * klienta do widzów wskazanej gry, a {@code RESUME:<numer>:<WHITE|BLACK>}
+     * sadza go z powrotem w przerwanej grze. {@code HISTORY:<numer>} zwraca
+     * ruchy gry ({@code HISTORY:<numer>:c3-d4 f6-g5 ...}) i planszę, od której zaczyna
+     * się ich zapis, a {@code REPLAY:<numer>:<ruch>}
+     * planszę po danym ruchu, poprzedzoną linią {@code REPLAY:<numer>:<ruch>:<liczba_ruchów>}.
+     * Pierwsza inna wiadomość połączenia, które nie należy do żadnej rozgrywki
+     * (zwykle {@link Protocol#PLAY}), sadza je w grze.
      * @param message wiadomość do przekazania
      * @param sender klient, który wysłał wiadomość
      */
-    public synchronized void relayMessage(String message, ClientHandler sender){
-        for(ClientHandler client : clients){
-            
-                client.sendMessage(message);
-            
+    public void relayMessage(String message, Connection sender){
+        if (message.equals("GAMES")) {
+            StringBuilder games = new StringBuilder("GAMES:");
+            for (int id : lobby.getRunningGames(MAX_LISTED_GAMES)) {
+                if (games.length() > "GAMES:".length()) games.append(' ');
+                games.append(id);
+            }
+            sender.sendMessage(games.toString());
+            return;
+        }
+        if (message.startsWith("WATCH:")) {
+            watch(message.substring("WATCH:".length()).trim(), sender);
+            return;
+        }
+        if (message.startsWith("HISTORY:") || message.startsWith("REPLAY:")) {
+            replay(message, sender);
+            return;
+        }
+        if (message.startsWith("RESUME:")) {
+            resume(message.substring("RESUME:".length()), sender);
+            return;
+        }
+        GameSession session = sender.getSession();
+        if (session == null) {
+            session = play(sender);
+        }
+        if (!message.equals(Protocol.PLAY)) {
+            session.relay(message, sender);
+        }
+    }
+    /**
+     * Przekazuje ruch odebrany w ramce binarnej do rozgrywki gracza - jako pola,
+     * bez zamiany na notację tekstową.
+     * @param squares pole startowe i pola lądowania
+     * @param count liczba pól
+     * @param sender klient, który wysłał ruch
+     */
+    public void relayMove(int[] squares, int count, Connection sender){
+        GameSession session = sender.getSession();
+        if (session != null) {
+            session.relayMove(squares, count, sender);
         }
     }
     
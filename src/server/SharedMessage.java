@@ -0,0 +1,62 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import protocol.Protocol;
+
+/**
+ * Wiadomość kodowana raz dla wszystkich odbiorców.
+ * <p>
+ * Rozgrywka obserwowana przez wielu widzów wysyła ten sam ruch do tysięcy
+ * połączeń. Linia tekstu i ramka binarna powstają najwyżej raz (przy pierwszym
+ * odbiorcy danego protokołu) i nie są potem zmieniane; każde połączenie
+ * dostaje tylko własny widok bufora ({@link ByteBuffer#duplicate()}) z osobną
+ * pozycją, więc częściowe zapisy jednego klienta nie przeszkadzają innym.
+ * @author Grzegorz Dżyg
+ */
+public final class SharedMessage {
+
+    private final String text;
+    /** Linia tekstu zakończona {@code \n} (tworzona przy pierwszym użyciu). */
+    private volatile ByteBuffer line;
+    /** Ramka {@link Protocol} (tworzona przy pierwszym użyciu). */
+    private volatile ByteBuffer frame;
+
+    /**
+     * Tworzy wiadomość.
+     * @param text wiadomość protokołu tekstowego (bez znaku końca linii)
+     */
+    public SharedMessage(String text){
+        this.text = text;
+    }
+    /**
+     * Zwraca treść wiadomości w protokole tekstowym.
+     * @return wiadomość
+     */
+    public String getText(){
+        return text;
+    }
+    /**
+     * Zwraca zakodowaną wiadomość do wysłania jednemu klientowi.
+     * Zawartość bufora jest wspólna i nie wolno jej zmieniać.
+     * @param binary true - ramka binarna, false - linia tekstu
+     * @return nowy widok wspólnego bufora
+     */
+    ByteBuffer encoded(boolean binary){
+        // dwa wątki mogą zakodować wiadomość jednocześnie - wynik jest ten sam
+        ByteBuffer data = binary ? frame : line;
+        if(data == null){
+            if(binary){
+                data = frame = Protocol.encode(text);
+            }
+            else{
+                data = line = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return data.duplicate();
+    }
+    @Override
+    public String toString(){
+        return text;
+    }
+}